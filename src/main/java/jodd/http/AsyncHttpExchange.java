@@ -0,0 +1,256 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single request-response exchange over an {@link AsyncHttpConnection}.
+ * Response bytes are collected until the message is complete according
+ * to its framing (content length, chunked encoding or connection close)
+ * and then parsed. Interim (1xx) responses are skipped.
+ */
+class AsyncHttpExchange {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Sends the request bytes and reads the response.
+	 */
+	static CompletableFuture<HttpResponse> exchange(
+			final AsyncHttpConnection connection, final byte[] request, final boolean headRequest) {
+
+		final AsyncHttpExchange exchange = new AsyncHttpExchange(connection, request.length, headRequest);
+
+		connection.write(ByteBuffer.wrap(request)).whenComplete((nothing, throwable) -> {
+			if (throwable != null) {
+				exchange.result.completeExceptionally(throwable);
+			}
+			else {
+				exchange.readNext();
+			}
+		});
+
+		return exchange.result;
+	}
+
+	private final AsyncHttpConnection connection;
+	private final int requestSize;
+	private final boolean headRequest;
+	private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+	private final long start = System.nanoTime();
+	private long firstByte = -1;
+
+	private byte[] data = new byte[BUFFER_SIZE];
+	private int size;
+	private int messageStart;
+	private int headerEnd = -1;
+	private int statusCode;
+	private long contentLength;
+	private boolean chunked;
+	private int chunkPosition;
+
+	private AsyncHttpExchange(final AsyncHttpConnection connection, final int requestSize, final boolean headRequest) {
+		this.connection = connection;
+		this.requestSize = requestSize;
+		this.headRequest = headRequest;
+	}
+
+	private void readNext() {
+		if (data.length - size < BUFFER_SIZE / 2) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+
+		connection.read(ByteBuffer.wrap(data, size, data.length - size)).whenComplete((read, throwable) -> {
+			if (throwable != null) {
+				result.completeExceptionally(throwable);
+				return;
+			}
+			try {
+				if (read < 0) {
+					// connection closed, response ends here
+					complete();
+					return;
+				}
+				if (firstByte == -1 && read > 0) {
+					firstByte = System.nanoTime();
+				}
+				size += read;
+
+				if (isComplete()) {
+					complete();
+				}
+				else {
+					readNext();
+				}
+			}
+			catch (final RuntimeException rex) {
+				result.completeExceptionally(rex);
+			}
+		});
+	}
+
+	private void complete() {
+		final HttpResponse httpResponse = HttpResponse.readFrom(
+			new ByteArrayInputStream(data, messageStart, size - messageStart), headRequest, null);
+		httpResponse.assignMetrics(HttpConnectionMetrics.of(connection, requestSize, size, start, firstByte, System.nanoTime()));
+		result.complete(httpResponse);
+	}
+
+	/**
+	 * Returns <code>true</code> when all bytes of the response are received.
+	 */
+	private boolean isComplete() {
+		while (headerEnd == -1) {
+			headerEnd = findHeaderEnd();
+			if (headerEnd == -1) {
+				return false;
+			}
+			parseHeaders();
+
+			if (statusCode >= 100 && statusCode < 200 && statusCode != 101) {
+				// skip interim response
+				messageStart = headerEnd;
+				headerEnd = -1;
+			}
+		}
+
+		if (headRequest || statusCode == 204 || statusCode == 304) {
+			return true;
+		}
+		if (chunked) {
+			return isChunkedBodyComplete();
+		}
+		if (contentLength >= 0) {
+			return size - headerEnd >= contentLength;
+		}
+
+		// body ends when connection is closed
+		return false;
+	}
+
+	/**
+	 * Finds the empty line after the headers. Returns the index of the body start.
+	 */
+	private int findHeaderEnd() {
+		for (int i = messageStart; i < size; i++) {
+			if (data[i] != '\n') {
+				continue;
+			}
+			if (i + 1 < size && data[i + 1] == '\n') {
+				return i + 2;
+			}
+			if (i + 2 < size && data[i + 1] == '\r' && data[i + 2] == '\n') {
+				return i + 3;
+			}
+		}
+		return -1;
+	}
+
+	private void parseHeaders() {
+		final String header = new String(data, messageStart, headerEnd - messageStart, StandardCharsets.ISO_8859_1);
+		final String[] lines = header.split("\r?\n");
+
+		final String[] statusLine = lines[0].split(" ");
+		statusCode = statusLine.length > 1 ? Integer.parseInt(statusLine[1].trim()) : 0;
+		contentLength = -1;
+		chunked = false;
+
+		for (int i = 1; i < lines.length; i++) {
+			final int colon = lines[i].indexOf(':');
+			if (colon == -1) {
+				continue;
+			}
+			final String name = lines[i].substring(0, colon).trim();
+			final String value = lines[i].substring(colon + 1).trim();
+
+			if (name.equalsIgnoreCase(HttpBase.HEADER_CONTENT_LENGTH)) {
+				contentLength = Long.parseLong(value);
+			}
+			else if (name.equalsIgnoreCase("Transfer-Encoding") && value.toLowerCase().contains("chunked")) {
+				chunked = true;
+			}
+		}
+	}
+
+	/**
+	 * Walks over received chunks, looking for the last chunk and the end of trailers.
+	 */
+	private boolean isChunkedBodyComplete() {
+		if (chunkPosition < headerEnd) {
+			chunkPosition = headerEnd;
+		}
+
+		while (true) {
+			final int lineEnd = indexOfNewLine(chunkPosition);
+			if (lineEnd == -1) {
+				return false;
+			}
+
+			String line = new String(data, chunkPosition, lineEnd - chunkPosition, StandardCharsets.ISO_8859_1);
+			final int semicolon = line.indexOf(';');
+			if (semicolon != -1) {
+				line = line.substring(0, semicolon);
+			}
+			final long chunkSize = Long.parseLong(line.trim(), 16);
+
+			if (chunkSize == 0) {
+				// trailers end with an empty line
+				int position = lineEnd + 1;
+				while (true) {
+					final int end = indexOfNewLine(position);
+					if (end == -1) {
+						return false;
+					}
+					if (end == position || (end == position + 1 && data[position] == '\r')) {
+						return true;
+					}
+					position = end + 1;
+				}
+			}
+
+			// chunk data is followed by CRLF
+			final long nextChunk = lineEnd + 1 + chunkSize + 2;
+			if (nextChunk > size) {
+				return false;
+			}
+			chunkPosition = (int) nextChunk;
+		}
+	}
+
+	private int indexOfNewLine(final int from) {
+		for (int i = from; i < size; i++) {
+			if (data[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
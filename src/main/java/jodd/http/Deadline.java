@@ -0,0 +1,135 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overall deadline of the request, enforced by the {@link HashedWheelTimer#shared() shared timer}.
+ * On expiry, timer closes the attached connection, which breaks any blocking
+ * I/O on it. New connections can not be attached after the expiry.
+ */
+class Deadline {
+
+	private final long milliseconds;
+	private final long expiresAt;
+	private final HashedWheelTimer.Timeout timeout;
+	private HttpConnection httpConnection;
+	private volatile boolean expired;
+	private volatile HttpException exceededException;
+
+	Deadline(final long milliseconds) {
+		this.milliseconds = milliseconds;
+		this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
+		this.timeout = HashedWheelTimer.shared().newTimeout(this::expire, milliseconds);
+	}
+
+	private synchronized void expire() {
+		expired = true;
+		if (httpConnection != null) {
+			httpConnection.close();
+			httpConnection = null;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the deadline has passed.
+	 */
+	boolean isExpired() {
+		return expired || System.nanoTime() - expiresAt >= 0;
+	}
+
+	/**
+	 * Returns remaining time in milliseconds, rounded up and at least 1,
+	 * so timeouts of that length end after the deadline.
+	 */
+	long remaining() {
+		final long remainingNanos = expiresAt - System.nanoTime();
+		return Math.max(TimeUnit.NANOSECONDS.toMillis(remainingNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1), 1);
+	}
+
+	/**
+	 * Returns timeout that ends no later than the deadline.
+	 */
+	int connectionTimeout(final int connectionTimeout) {
+		final int remaining = (int) Math.min(remaining(), Integer.MAX_VALUE);
+		return connectionTimeout > 0 ? Math.min(connectionTimeout, remaining) : remaining;
+	}
+
+	/**
+	 * Throws exception if the deadline has passed.
+	 */
+	void check() {
+		if (isExpired()) {
+			throw exceeded(null);
+		}
+	}
+
+	/**
+	 * Attaches the connection used for the exchange, so it is closed on expiry.
+	 */
+	synchronized void attach(final HttpConnection httpConnection) {
+		if (expired) {
+			httpConnection.close();
+			throw exceeded(null);
+		}
+		this.httpConnection = httpConnection;
+	}
+
+	/**
+	 * Detaches the connection once the response is received.
+	 */
+	synchronized void detach() {
+		this.httpConnection = null;
+	}
+
+	/**
+	 * Stops the deadline timer.
+	 */
+	synchronized void cancel() {
+		timeout.cancel();
+		httpConnection = null;
+	}
+
+	/**
+	 * Returns exception for the exceeded deadline, with the failure it caused.
+	 */
+	HttpException exceeded(final Throwable cause) {
+		if (cause != null && cause == exceededException) {
+			return exceededException;
+		}
+		final HttpException httpException = exceeded(milliseconds, cause);
+		if (cause == null) {
+			exceededException = httpException;
+		}
+		return httpException;
+	}
+
+	static HttpException exceeded(final long milliseconds, final Throwable cause) {
+		final String message = "Deadline of " + milliseconds + "ms exceeded";
+		return cause == null ? new HttpException(message) : new HttpException(message, cause);
+	}
+}
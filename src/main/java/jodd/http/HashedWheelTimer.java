@@ -0,0 +1,316 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed wheel timer: a single thread that expires any number of timeouts.
+ * Timeouts are put in the buckets of the wheel by their deadline; the thread
+ * moves to the next bucket every tick and runs the expired tasks. Adding and
+ * cancelling a timeout is O(1), so timer scales to a large number of outstanding
+ * requests, at the price of the tick precision. Expired tasks are handed off
+ * to the task executor, so the timer thread never blocks, even when the task
+ * does, e.g. closing the connection. Cancelled timeouts are removed from their
+ * bucket on the next tick.
+ */
+class HashedWheelTimer {
+
+	private static final HashedWheelTimer SHARED = new HashedWheelTimer("jodd-http-timer", 10, 512, newTaskExecutor("jodd-http-timer-task"));
+
+	/**
+	 * Returns timer shared by all requests.
+	 */
+	static HashedWheelTimer shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates executor that runs each task in a daemon thread, reusing the idle threads.
+	 */
+	private static Executor newTaskExecutor(final String name) {
+		final AtomicInteger threadsCount = new AtomicInteger();
+
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+			final Thread thread = new Thread(runnable, name + "-" + threadsCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private final String name;
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Executor taskExecutor;
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean started = new AtomicBoolean();
+	private volatile long startTime;
+	private volatile int scheduledCount;
+
+	/**
+	 * Creates timer with the tick duration in milliseconds and the number
+	 * of wheel buckets, rounded up to the power of two. Expired tasks run
+	 * in the task executor.
+	 */
+	HashedWheelTimer(final String name, final long tickMillis, final int ticksPerWheel, final Executor taskExecutor) {
+		this.name = name;
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.taskExecutor = taskExecutor;
+
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Schedules the task to run once after the delay in milliseconds.
+	 */
+	Timeout newTimeout(final Runnable task, final long delayMillis) {
+		start();
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0)) - startTime;
+		final Timeout timeout = new Timeout(this, task, deadline);
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Returns number of timeouts in the wheel buckets.
+	 */
+	int scheduledCount() {
+		return scheduledCount;
+	}
+
+	private void start() {
+		if (started.get() || !started.compareAndSet(false, true)) {
+			while (startTime == 0) {
+				// worker is starting
+				Thread.yield();
+			}
+			return;
+		}
+		final long now = System.nanoTime();
+		// zero marks the timer that is not started
+		startTime = now == 0 ? 1 : now;
+
+		final Thread thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		long tick = 0;
+
+		while (true) {
+			final long deadline = tickDuration * (tick + 1);
+
+			waitUntil(deadline);
+			transferPendingTimeouts(tick);
+			removeCancelledTimeouts();
+			expireTimeouts(wheel[(int) (tick & mask)]);
+
+			tick++;
+		}
+	}
+
+	private void waitUntil(final long deadline) {
+		while (true) {
+			final long sleepTime = deadline - (System.nanoTime() - startTime);
+			if (sleepTime <= 0) {
+				return;
+			}
+			try {
+				Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepTime) + 1);
+			}
+			catch (final InterruptedException ignore) {
+				// shared timer never stops
+			}
+		}
+	}
+
+	private void transferPendingTimeouts(final long tick) {
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.isCancelled()) {
+				continue;
+			}
+			final long calculated = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+			// timeouts already due are expired in the current tick
+			final long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+			scheduledCount++;
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+				scheduledCount--;
+			}
+		}
+	}
+
+	private void expireTimeouts(final Bucket bucket) {
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			final Timeout next = timeout.next;
+			if (timeout.remainingRounds <= 0) {
+				bucket.remove(timeout);
+				scheduledCount--;
+				timeout.expire();
+			}
+			else {
+				timeout.remainingRounds--;
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Bucket of the wheel: doubly linked list of timeouts, so the cancelled
+	 * timeout is removed in constant time. Accessed only by the timer thread.
+	 */
+	private static class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(final Timeout timeout) {
+			timeout.bucket = this;
+			timeout.prev = tail;
+			if (tail == null) {
+				head = timeout;
+			}
+			else {
+				tail.next = timeout;
+			}
+			tail = timeout;
+		}
+
+		void remove(final Timeout timeout) {
+			if (timeout.prev == null) {
+				head = timeout.next;
+			}
+			else {
+				timeout.prev.next = timeout.next;
+			}
+			if (timeout.next == null) {
+				tail = timeout.prev;
+			}
+			else {
+				timeout.next.prev = timeout.prev;
+			}
+			timeout.bucket = null;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+
+	/**
+	 * Scheduled task of the timer.
+	 */
+	static class Timeout {
+		private static final int INIT = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(INIT);
+		private long remainingRounds;
+
+		// accessed only by the timer thread
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(final HashedWheelTimer timer, final Runnable task, final long deadline) {
+			this.timer = timer;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout, which is then removed from its bucket on the
+		 * next tick. Returns <code>false</code> if it already expired.
+		 */
+		boolean cancel() {
+			if (!state.compareAndSet(INIT, CANCELLED)) {
+				return false;
+			}
+			timer.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(INIT, EXPIRED)) {
+				return;
+			}
+			try {
+				timer.taskExecutor.execute(this::run);
+			}
+			catch (final Throwable ignore) {
+				// timer thread must survive rejected tasks
+			}
+		}
+
+		private void run() {
+			try {
+				task.run();
+			}
+			catch (final Throwable ignore) {
+				// failing task is ignored
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.util.Arrays;
+
+/**
+ * Hedging policy of the {@link HttpRequest#hedge(HedgePolicy) request}. When the
+ * response does not start arriving within the hedge delay, the same request is
+ * sent once more on another connection; the first response wins, and the other
+ * connection is closed. This cuts the tail latency caused by a slow backend,
+ * for the cost of some extra requests.
+ * <p>
+ * Hedge delay is either fixed, or is the given percentile of the times to the
+ * first byte of recent responses, so only the slowest requests are hedged.
+ * Fixed delay is used until enough times are recorded. Policy is meant
+ * to be shared between the requests to the same backend.
+ * <p>
+ * Both requests are blocking calls in the executor given to the
+ * {@link HttpRequest#sendAsync(java.util.concurrent.Executor) sendAsync()}, so it must be able
+ * to run them concurrently, like {@link HttpExecutors#virtualThreads() virtual threads} do.
+ */
+public class HedgePolicy {
+
+	private static final int MIN_SAMPLES = 20;
+
+	protected long delay = 100;
+	protected int percentile;
+
+	private long[] samples = new long[100];
+	private int samplesCount;
+	private int samplesNext;
+	private long hedgesCount;
+	private long hedgeWinsCount;
+
+	/**
+	 * Sets the fixed hedge delay in milliseconds.
+	 */
+	public HedgePolicy delay(final long delay) {
+		this.delay = delay;
+		return this;
+	}
+
+	/**
+	 * Enables the adaptive hedge delay: the given percentile (e.g. 95) of
+	 * the times to the first byte of the last <code>window</code> responses.
+	 */
+	public synchronized HedgePolicy percentile(final int percentile, final int window) {
+		if (percentile < 1 || percentile > 100) {
+			throw new HttpException("Invalid percentile: " + percentile);
+		}
+		this.percentile = percentile;
+		this.samples = new long[Math.max(window, MIN_SAMPLES)];
+		this.samplesCount = 0;
+		this.samplesNext = 0;
+		return this;
+	}
+
+	/**
+	 * Returns the number of hedged requests sent.
+	 */
+	public synchronized long hedgesCount() {
+		return hedgesCount;
+	}
+
+	/**
+	 * Returns the number of hedged requests that were faster than the original ones.
+	 */
+	public synchronized long hedgeWinsCount() {
+		return hedgeWinsCount;
+	}
+
+	// ---------------------------------------------------------------- hedging
+
+	/**
+	 * Returns the current hedge delay in milliseconds.
+	 */
+	public synchronized long hedgeDelay() {
+		if (percentile == 0 || samplesCount < MIN_SAMPLES) {
+			return delay;
+		}
+		final long[] sorted = Arrays.copyOf(samples, samplesCount);
+		Arrays.sort(sorted);
+
+		final int index = (int) Math.ceil(percentile / 100.0 * samplesCount) - 1;
+		return sorted[Math.max(index, 0)];
+	}
+
+	/**
+	 * Records the time to the first byte of the winning response, measured from
+	 * the start of the exchange. When the hedge wins, it is the lower bound of the
+	 * original latency, so the hedge wins do not lower the delay.
+	 */
+	synchronized void recordLatency(final long millis) {
+		if (percentile == 0) {
+			return;
+		}
+		samples[samplesNext] = millis;
+		samplesNext = (samplesNext + 1) % samples.length;
+		if (samplesCount < samples.length) {
+			samplesCount++;
+		}
+	}
+
+	synchronized void hedged() {
+		hedgesCount++;
+	}
+
+	synchronized void hedgeWon() {
+		hedgeWinsCount++;
+	}
+}
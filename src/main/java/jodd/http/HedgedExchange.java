@@ -0,0 +1,298 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedged exchange of the idempotent request, as defined by the {@link HedgePolicy}.
+ * Original attempt is sent right away; when it does not receive the first byte of
+ * the response within the hedge delay, the hedge attempt is sent on another connection.
+ * Hedge delay is scheduled on the {@link HashedWheelTimer#shared() shared timer}.
+ * The first received response completes the exchange, and the other attempt is
+ * cancelled by closing its connection. Exchange fails when all sent attempts fail.
+ * <p>
+ * Attempts are blocking exchanges, running in the executor. Each attempt serializes
+ * the request for its own connection, as the request line depends on the connection.
+ */
+class HedgedExchange {
+
+	private final HttpRequest httpRequest;
+	private final HttpConnectionProvider httpConnectionProvider;
+	private final HedgePolicy hedgePolicy;
+	private final Executor executor;
+	private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+	private final Attempt original = new Attempt(false);
+	private Attempt hedge;
+	private HashedWheelTimer.Timeout hedgeTimer;
+	private long startTime;
+	private int running;
+	private boolean done;
+
+	private HedgedExchange(
+			final HttpRequest httpRequest, final HttpConnectionProvider httpConnectionProvider,
+			final HedgePolicy hedgePolicy, final Executor executor) {
+		this.httpRequest = httpRequest;
+		this.httpConnectionProvider = httpConnectionProvider;
+		this.hedgePolicy = hedgePolicy;
+		this.executor = executor;
+	}
+
+	/**
+	 * Sends the request and returns the future of the first received response.
+	 * Cancelling the future cancels all attempts.
+	 */
+	static CompletableFuture<HttpResponse> send(
+			final HttpRequest httpRequest, final HttpConnectionProvider httpConnectionProvider,
+			final HedgePolicy hedgePolicy, final Executor executor) {
+
+		final HedgedExchange exchange = new HedgedExchange(httpRequest, httpConnectionProvider, hedgePolicy, executor);
+		exchange.start();
+		return exchange.result;
+	}
+
+	private void start() {
+		result.whenComplete((httpResponse, throwable) -> {
+			if (throwable != null) {
+				// cancelled, or deadline exceeded
+				cancel();
+			}
+		});
+
+		synchronized (this) {
+			running = 1;
+			startTime = System.nanoTime();
+			hedgeTimer = HashedWheelTimer.shared().newTimeout(this::sendHedge, hedgePolicy.hedgeDelay());
+		}
+		execute(original);
+	}
+
+	private void sendHedge() {
+		synchronized (this) {
+			if (done || original.isReceiving()) {
+				return;
+			}
+			hedge = new Attempt(true);
+			running++;
+		}
+		hedgePolicy.hedged();
+		execute(hedge);
+	}
+
+	private void execute(final Attempt attempt) {
+		try {
+			executor.execute(attempt::run);
+		}
+		catch (final RejectedExecutionException rex) {
+			failed(attempt, rex);
+		}
+	}
+
+	private void cancel() {
+		final Attempt hedgeAttempt;
+		synchronized (this) {
+			done = true;
+			hedgeTimer.cancel();
+			hedgeAttempt = hedge;
+		}
+		original.close();
+		if (hedgeAttempt != null) {
+			hedgeAttempt.close();
+		}
+	}
+
+	/**
+	 * Completes the exchange with the first received response.
+	 */
+	private void completed(final Attempt attempt, final HttpResponse httpResponse) {
+		final Attempt other;
+		synchronized (this) {
+			running--;
+			if (done) {
+				// lost, or cancelled
+				other = attempt;
+			}
+			else {
+				done = true;
+				hedgeTimer.cancel();
+				other = attempt == original ? hedge : original;
+			}
+		}
+		if (other == attempt) {
+			attempt.close();
+			return;
+		}
+		if (other != null) {
+			other.close();
+		}
+
+		final HttpConnection httpConnection = attempt.httpConnection;
+
+		httpResponse.assignHttpRequest(httpRequest);
+		httpResponse.assignMetrics(attempt.recorder.finish(httpConnection));
+
+		// measured from the exchange start, like the hedge delay; when the hedge wins,
+		// this is also the time the original waited without any response
+		final long firstByteTime = attempt.recorder.firstByteTime();
+		final long latency = (firstByteTime == -1 ? System.nanoTime() : firstByteTime) - startTime;
+		hedgePolicy.recordLatency(TimeUnit.NANOSECONDS.toMillis(latency));
+		if (attempt.hedge) {
+			hedgePolicy.hedgeWon();
+		}
+
+		try {
+			synchronized (httpRequest) {
+				httpRequest.httpConnection = httpConnection;
+				httpRequest.httpConnectionProvider = httpConnectionProvider;
+				httpRequest._afterResponse(httpResponse);
+			}
+			result.complete(httpResponse);
+		}
+		catch (final RuntimeException rex) {
+			result.completeExceptionally(rex);
+		}
+	}
+
+	private void failed(final Attempt attempt, final Exception ex) {
+		attempt.close();
+
+		synchronized (this) {
+			running--;
+			if (done || running > 0) {
+				// the other attempt may still succeed
+				return;
+			}
+			done = true;
+			hedgeTimer.cancel();
+		}
+		result.completeExceptionally(ex instanceof HttpException ? ex : new HttpException(ex));
+	}
+
+	/**
+	 * Single attempt of the exchange.
+	 */
+	private class Attempt {
+		private final boolean hedge;
+		private volatile HttpConnection httpConnection;
+		private volatile HttpConnectionMetrics.Recorder recorder;
+		private volatile boolean closed;
+
+		private Attempt(final boolean hedge) {
+			this.hedge = hedge;
+		}
+
+		boolean isReceiving() {
+			final HttpConnectionMetrics.Recorder currentRecorder = recorder;
+			return currentRecorder != null && currentRecorder.isReceiving();
+		}
+
+		void run() {
+			final HttpResponse httpResponse;
+			try {
+				httpResponse = exchange();
+			}
+			catch (final IOException | RuntimeException ex) {
+				failed(this, ex);
+				return;
+			}
+			completed(this, httpResponse);
+		}
+
+		/**
+		 * Sends the request on a new connection. When reused connection turns out
+		 * to be dead, sends the request once more, as the regular send does.
+		 */
+		private HttpResponse exchange() throws IOException {
+			boolean retry = true;
+
+			while (true) {
+				final HttpConnection connection = httpConnectionProvider.createHttpConnection(httpRequest);
+				httpConnection = connection;
+				if (closed) {
+					connection.close();
+					throw new IOException("Hedged request cancelled");
+				}
+
+				try {
+					final HttpResponse httpResponse = exchange(connection);
+					if (httpResponse.statusPhrase() != null || !retry || !connection.isReused()) {
+						return httpResponse;
+					}
+				}
+				catch (final IOException | HttpException ex) {
+					if (!retry || !connection.isReused() || closed) {
+						throw ex;
+					}
+				}
+				connection.close();
+				retry = false;
+			}
+		}
+
+		private HttpResponse exchange(final HttpConnection connection) throws IOException {
+			final ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+
+			synchronized (httpRequest) {
+				// request line depends on the connection
+				final HttpConnection previousConnection = httpRequest.httpConnection;
+				httpRequest.httpConnection = connection;
+				try {
+					httpRequest.sendTo(requestBytes);
+				}
+				finally {
+					httpRequest.httpConnection = previousConnection;
+				}
+			}
+
+			final HttpConnectionMetrics.Recorder attemptRecorder = new HttpConnectionMetrics.Recorder();
+			recorder = attemptRecorder;
+
+			final OutputStream out = attemptRecorder.wrap(connection.getOutputStream());
+			requestBytes.writeTo(out);
+			out.flush();
+
+			final InputStream in = attemptRecorder.wrap(connection.getInputStream());
+
+			return httpRequest._readResponse(connection, in);
+		}
+
+		void close() {
+			closed = true;
+			final HttpConnection connection = httpConnection;
+			if (connection != null) {
+				connection.close();
+			}
+		}
+	}
+}
@@ -53,6 +53,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import static jodd.util.StringPool.CRLF;
 
@@ -93,11 +95,18 @@ public abstract class HttpBase<T> {
 		 * When flag is enabled, header keys will be capitalized.
 		 */
 		public static boolean capitalizeHeaderKeys = true;
+		/**
+		 * Default executor of {@link HttpRequest#sendAsync() asynchronous requests}
+		 * (common fork-join pool). Use {@link HttpExecutors#virtualThreads()} to run
+		 * each blocking request in its own virtual thread.
+		 */
+		public static Executor asyncExecutor = ForkJoinPool.commonPool();
 
 	}
 
 	public static final String HEADER_ACCEPT = "Accept";
 	public static final String HEADER_AUTHORIZATION = "Authorization";
+	public static final String HEADER_PROXY_AUTHORIZATION = "Proxy-Authorization";
 	public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
 	public static final String HEADER_CONTENT_TYPE = "Content-Type";
 	public static final String HEADER_CONTENT_LENGTH = "Content-Length";
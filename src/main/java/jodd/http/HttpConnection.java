@@ -62,4 +62,63 @@ public interface HttpConnection {
 	 */
 	void setTimeout(int milliseconds);
 
+	/**
+	 * Marks connection as used and records keep-alive parameters advertised by
+	 * the server: idle timeout in milliseconds and remaining number of requests.
+	 * Negative values mean that parameter was not specified.
+	 */
+	public default void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+	}
+
+	/**
+	 * Returns <code>true</code> if connection may be used for the next request.
+	 * Connection is not reusable when it is closed, or when the server is about
+	 * to close it as it has been idle for too long or its max is reached.
+	 */
+	public default boolean isReusable() {
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if connection has already been used
+	 * for some previous request.
+	 */
+	public default boolean isReused() {
+		return false;
+	}
+
+	/**
+	 * Checks if the peer has closed the idle connection in the meantime.
+	 * Should be invoked before the idle connection is reused.
+	 */
+	public default boolean isStale() {
+		return false;
+	}
+
+	/**
+	 * Returns the time in nanoseconds spent to open the connection, including
+	 * the proxy negotiation. Returns <code>-1</code> if not known.
+	 */
+	public default long getConnectTime() {
+		return -1;
+	}
+
+	/**
+	 * Returns the time in nanoseconds spent for the TLS handshake, <code>0</code>
+	 * for plain connections. Returns <code>-1</code> if not known.
+	 */
+	public default long getHandshakeTime() {
+		return -1;
+	}
+
+	/**
+	 * Returns the HTTP proxy this connection is made to, when the proxy
+	 * forwards the requests. Requests are then sent with the absolute URI
+	 * and the proxy credentials. Returns <code>null</code> for direct
+	 * connections and proxy tunnels.
+	 */
+	public default ProxyInfo forwardingProxy() {
+		return null;
+	}
+
 }
\ No newline at end of file
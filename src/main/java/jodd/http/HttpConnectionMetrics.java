@@ -0,0 +1,226 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Transfer and timing metrics of a single request-response exchange, as
+ * seen on the connection. All times are in nanoseconds.
+ * <p>
+ * Connect and TLS handshake times are reported only for the exchange that
+ * opened the connection; on reused connections they are <code>0</code>.
+ * Values the connection can not provide are <code>-1</code>.
+ * @see HttpResponse#metrics()
+ */
+public class HttpConnectionMetrics {
+
+	private final long bytesWritten;
+	private final long bytesRead;
+	private final long connectTime;
+	private final long handshakeTime;
+	private final long timeToFirstByte;
+	private final long transferTime;
+	private final boolean connectionReused;
+
+	HttpConnectionMetrics(
+			final long bytesWritten, final long bytesRead,
+			final long connectTime, final long handshakeTime,
+			final long timeToFirstByte, final long transferTime,
+			final boolean connectionReused) {
+		this.bytesWritten = bytesWritten;
+		this.bytesRead = bytesRead;
+		this.connectTime = connectTime;
+		this.handshakeTime = handshakeTime;
+		this.timeToFirstByte = timeToFirstByte;
+		this.transferTime = transferTime;
+		this.connectionReused = connectionReused;
+	}
+
+	/**
+	 * Creates metrics of the exchange on the connection. Times are
+	 * values of {@link System#nanoTime()}; <code>firstByte</code> is
+	 * <code>-1</code> if no response byte was received.
+	 */
+	static HttpConnectionMetrics of(
+			final HttpConnection httpConnection,
+			final long bytesWritten, final long bytesRead,
+			final long start, final long firstByte, final long end) {
+
+		final boolean reused = httpConnection.isReused();
+
+		return new HttpConnectionMetrics(
+			bytesWritten, bytesRead,
+			reused ? 0 : httpConnection.getConnectTime(),
+			reused ? 0 : httpConnection.getHandshakeTime(),
+			firstByte == -1 ? -1 : firstByte - start,
+			firstByte == -1 ? -1 : end - firstByte,
+			reused);
+	}
+
+	/**
+	 * Returns the number of bytes of the request written to the connection.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Returns the number of bytes of the response read from the connection.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Returns the time spent to connect, including the proxy negotiation.
+	 */
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	/**
+	 * Returns the time of the TLS handshake, <code>0</code> for plain connections.
+	 */
+	public long getHandshakeTime() {
+		return handshakeTime;
+	}
+
+	/**
+	 * Returns the time from the start of sending the request until the
+	 * first byte of the response is received. Includes the request upload
+	 * and the server processing time.
+	 */
+	public long getTimeToFirstByte() {
+		return timeToFirstByte;
+	}
+
+	/**
+	 * Returns the time from the first byte of the response until the whole response is read.
+	 */
+	public long getTransferTime() {
+		return transferTime;
+	}
+
+	/**
+	 * Returns <code>true</code> if exchange was made on the reused connection.
+	 */
+	public boolean isConnectionReused() {
+		return connectionReused;
+	}
+
+	@Override
+	public String toString() {
+		return "HttpConnectionMetrics{" +
+			"bytesWritten=" + bytesWritten +
+			", bytesRead=" + bytesRead +
+			", connectTime=" + connectTime +
+			", handshakeTime=" + handshakeTime +
+			", timeToFirstByte=" + timeToFirstByte +
+			", transferTime=" + transferTime +
+			", connectionReused=" + connectionReused +
+			'}';
+	}
+
+	// ---------------------------------------------------------------- recorder
+
+	/**
+	 * Records bytes and times of the exchange by wrapping the connection streams.
+	 */
+	static class Recorder {
+		private final long start = System.nanoTime();
+		private volatile long firstByte = -1;
+		private long bytesWritten;
+		private long bytesRead;
+
+		OutputStream wrap(final OutputStream out) {
+			return new FilterOutputStream(out) {
+				@Override
+				public void write(final int b) throws IOException {
+					out.write(b);
+					bytesWritten++;
+				}
+
+				@Override
+				public void write(final byte[] b, final int off, final int len) throws IOException {
+					out.write(b, off, len);
+					bytesWritten += len;
+				}
+			};
+		}
+
+		InputStream wrap(final InputStream in) {
+			return new FilterInputStream(in) {
+				@Override
+				public int read() throws IOException {
+					final int b = in.read();
+					if (b != -1) {
+						received(1);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len) throws IOException {
+					final int read = in.read(b, off, len);
+					if (read > 0) {
+						received(read);
+					}
+					return read;
+				}
+			};
+		}
+
+		private void received(final int count) {
+			if (firstByte == -1) {
+				firstByte = System.nanoTime();
+			}
+			bytesRead += count;
+		}
+
+		/**
+		 * Returns <code>true</code> once the first byte of the response is received.
+		 */
+		boolean isReceiving() {
+			return firstByte != -1;
+		}
+
+		/**
+		 * Returns <code>System.nanoTime()</code> of the first byte of the response, or -1.
+		 */
+		long firstByteTime() {
+			return firstByte;
+		}
+
+		HttpConnectionMetrics finish(final HttpConnection httpConnection) {
+			return of(httpConnection, bytesWritten, bytesRead, start, firstByte, System.nanoTime());
+		}
+	}
+}
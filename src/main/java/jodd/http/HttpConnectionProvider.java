@@ -61,4 +61,14 @@ public interface HttpConnectionProvider {
 	 */
 	public HttpConnection createHttpConnection(HttpRequest httpRequest) throws IOException;
 
+	/**
+	 * Offers persistent {@link HttpConnection} back to the provider, once the
+	 * response has been completely read. Returns <code>true</code> if provider
+	 * took the connection over; in that case, the request must not use it
+	 * anymore. By default, connections are not shared and remain with the request.
+	 */
+	public default boolean releaseHttpConnection(final HttpConnection httpConnection) {
+		return false;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executors for {@link HttpRequest#sendAsync(Executor) asynchronous sending}.
+ * With a blocking connection provider, each asynchronous request occupies
+ * one thread of the executor until the response is received. Virtual threads
+ * make such threads cheap, so the blocking socket connections may serve
+ * a large number of concurrent requests.
+ * <p>
+ * Virtual threads are looked up at runtime, so this class works on Java 8, too.
+ */
+public class HttpExecutors {
+
+	private static final ExecutorService VIRTUAL_THREADS = lookupVirtualThreadExecutor();
+
+	/**
+	 * Returns <code>true</code> if JVM supports virtual threads.
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return VIRTUAL_THREADS != null;
+	}
+
+	/**
+	 * Returns shared executor that starts a new virtual thread for each task.
+	 * Throws {@link HttpException} when virtual threads are not supported.
+	 */
+	public static Executor virtualThreads() {
+		if (VIRTUAL_THREADS == null) {
+			throw new HttpException("Virtual threads are not supported by JVM: " + System.getProperty("java.version"));
+		}
+		return VIRTUAL_THREADS;
+	}
+
+	/**
+	 * Returns {@link #virtualThreads() virtual threads executor} when supported,
+	 * otherwise the common fork-join pool.
+	 */
+	public static Executor virtualThreadsOrCommonPool() {
+		if (VIRTUAL_THREADS == null) {
+			return ForkJoinPool.commonPool();
+		}
+		return VIRTUAL_THREADS;
+	}
+
+	private static ExecutorService lookupVirtualThreadExecutor() {
+		try {
+			final Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (final Exception | LinkageError ignore) {
+			// older JVM, or virtual threads are disabled
+			return null;
+		}
+	}
+}
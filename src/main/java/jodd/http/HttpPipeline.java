@@ -0,0 +1,215 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTTP/1.1 pipelining: sends several requests back-to-back on a single
+ * connection, without waiting for the responses, and reads the responses
+ * in the order of requests. All requests must target the same host and must
+ * be {@link HttpRequest#isIdempotent() idempotent}.
+ * <p>
+ * Responses are read from a single buffered reader, created by the pipeline
+ * for each connection it uses, so bytes of the next response that are read
+ * ahead are not lost. The reader does not outlive the pipeline: when it holds
+ * unexpected bytes after the last response, the connection is closed. When the server closes the connection before answering all
+ * requests, remaining requests are sent again on a new connection, created
+ * by the connection provider of the first request. Redirects are not followed.
+ * <p>
+ * Connection is opened using the first request, unless it is already
+ * {@link HttpRequest#open() open}. All requests but the last one are sent
+ * with the keep-alive header; after the last response, connection is
+ * handled as with the regular {@link HttpRequest#send() send}.
+ */
+public class HttpPipeline {
+
+	protected final List<HttpRequest> requests = new ArrayList<>();
+	protected int depth = 16;
+
+	/**
+	 * Adds request to the pipeline.
+	 */
+	public HttpPipeline add(final HttpRequest httpRequest) {
+		requests.add(httpRequest);
+		return this;
+	}
+
+	/**
+	 * Sets the max number of requests sent before their responses are received.
+	 */
+	public HttpPipeline depth(final int depth) {
+		if (depth < 1) {
+			throw new HttpException("Invalid pipeline depth: " + depth);
+		}
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Sends all requests and returns the responses, in the order of requests.
+	 */
+	public List<HttpResponse> send() {
+		if (requests.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final HttpRequest firstRequest = requests.get(0);
+		final String hostUrl = firstRequest.hostUrl();
+
+		for (final HttpRequest httpRequest : requests) {
+			if (!httpRequest.isIdempotent()) {
+				throw new HttpException("Only idempotent requests can be pipelined: " + httpRequest.method());
+			}
+			if (!hostUrl.equals(httpRequest.hostUrl())) {
+				throw new HttpException("Pipelined requests must target the same host: " + httpRequest.hostUrl());
+			}
+			if (httpRequest != firstRequest && httpRequest.httpConnection != null) {
+				throw new HttpException("Pipelined request already has a connection");
+			}
+		}
+
+		if (firstRequest.httpConnection == null) {
+			firstRequest.open();
+		}
+		final HttpConnectionProvider httpConnectionProvider = firstRequest.httpConnectionProvider;
+		HttpConnection httpConnection = firstRequest.httpConnection;
+		firstRequest.httpConnection = null;
+
+		final List<HttpResponse> responses = new ArrayList<>(requests.size());
+
+		while (true) {
+			final boolean reused = httpConnection.isReused();
+			final int received = responses.size();
+
+			if (sendAndReceive(httpConnection, httpConnectionProvider, responses)) {
+				return responses;
+			}
+
+			if (responses.size() == received && !reused) {
+				throw new HttpException("Connection closed without response: " + requests.get(received).url());
+			}
+			if (httpConnectionProvider == null) {
+				throw new HttpException("Connection closed with " + (requests.size() - responses.size()) + " responses pending");
+			}
+
+			// remaining requests go to the new connection
+			try {
+				httpConnection = httpConnectionProvider.createHttpConnection(requests.get(responses.size()));
+			}
+			catch (final IOException ioex) {
+				throw new HttpException("Can't connect to: " + hostUrl, ioex);
+			}
+		}
+	}
+
+	/**
+	 * Pipelines the remaining requests on the given connection. Returns <code>true</code>
+	 * when all responses are received; otherwise the connection is closed, and the remaining
+	 * requests should be sent on a new connection.
+	 */
+	private boolean sendAndReceive(
+			final HttpConnection httpConnection, final HttpConnectionProvider httpConnectionProvider,
+			final List<HttpResponse> responses) {
+
+		final int total = requests.size();
+		final int from = responses.size();
+		int sent = from;
+		boolean writable = true;
+
+		try {
+			final OutputStream out = httpConnection.getOutputStream();
+			final BufferedReader reader = new BufferedReader(
+				new InputStreamReader(httpConnection.getInputStream(), StandardCharsets.ISO_8859_1));
+
+			while (responses.size() < total) {
+				while (writable && sent < total && sent - responses.size() < depth) {
+					final HttpRequest httpRequest = requests.get(sent);
+					if (sent < total - 1) {
+						httpRequest.connectionKeepAlive(true);
+					}
+					try {
+						// request line depends on the connection
+						httpRequest.httpConnection = httpConnection;
+						httpRequest.sendTo(out);
+						sent++;
+					}
+					catch (final IOException ioex) {
+						// server may have closed its side; read what was answered
+						writable = false;
+					}
+					finally {
+						httpRequest.httpConnection = null;
+					}
+				}
+				if (sent == responses.size()) {
+					break;
+				}
+
+				final HttpRequest httpRequest = requests.get(responses.size());
+				final HttpResponse httpResponse = HttpResponse.readFrom(reader, httpRequest.method().equals("HEAD"));
+
+				if (httpResponse.statusPhrase() == null) {
+					// closed by the peer
+					break;
+				}
+
+				httpResponse.assignHttpRequest(httpRequest);
+				responses.add(httpResponse);
+
+				final boolean last = responses.size() == total;
+
+				if (last && !reader.ready()) {
+					// the last request keeps the connection, as after the regular send
+					httpRequest.httpConnection = httpConnection;
+					httpRequest.httpConnectionProvider = httpConnectionProvider;
+					httpRequest._afterResponse(httpResponse);
+					return true;
+				}
+				if (last || !httpResponse.isConnectionPersistent()) {
+					break;
+				}
+			}
+		}
+		catch (final IOException | HttpException ex) {
+			if (responses.size() == from && !httpConnection.isReused()) {
+				httpConnection.close();
+				throw ex instanceof HttpException ? (HttpException) ex : new HttpException(ex);
+			}
+		}
+
+		httpConnection.close();
+
+		return responses.size() == total;
+	}
+}
@@ -33,14 +33,22 @@ import jodd.util.StringPool;
 import jodd.util.StringUtil;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -688,11 +696,13 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 
 	/**
 	 * Returns read timeout (SO_TIMEOUT) in milliseconds. Negative value
-	 * means that default value is used.
+	 * means that default value is used. While the connection is opened
+	 * for the request with {@link #deadline(long) deadline}, returned timeout
+	 * ends before the deadline.
 	 * @see #timeout(int)
 	 */
 	public int timeout() {
-		return timeout;
+		return openingDeadline != null ? openingDeadline.connectionTimeout(timeout) : timeout;
 	}
 
 	/**
@@ -708,11 +718,75 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 
 	/**
 	 * Returns socket connection timeout. Negative value means that default
-	 * value is used.
+	 * value is used. While the connection is opened for the request with
+	 * {@link #deadline(long) deadline}, returned timeout ends before the deadline.
 	 * @see #connectionTimeout(int)
 	 */
 	public int connectionTimeout() {
-		return connectTimeout;
+		return openingDeadline != null ? openingDeadline.connectionTimeout(connectTimeout) : connectTimeout;
+	}
+
+	protected int headersTimeout = -1;
+	protected int bodyIdleTimeout = -1;
+
+	/**
+	 * Defines the read timeout in milliseconds while waiting for the status line and
+	 * the headers of the response, i.e. for the server to start responding. When not set,
+	 * the {@link #timeout(int) read timeout} is used. Allows tight limit for the responses
+	 * that do not start in time, without limiting the long body transfers.
+	 */
+	public HttpRequest headersTimeout(final int milliseconds) {
+		this.headersTimeout = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns the headers read timeout. Negative value means that the read timeout is used.
+	 * @see #headersTimeout(int)
+	 */
+	public int headersTimeout() {
+		return headersTimeout;
+	}
+
+	/**
+	 * Defines the max idle time in milliseconds between the two reads of the response body.
+	 * Large downloads may take long, but must keep flowing. When not set,
+	 * the {@link #timeout(int) read timeout} is used.
+	 */
+	public HttpRequest bodyIdleTimeout(final int milliseconds) {
+		this.bodyIdleTimeout = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns the body idle timeout. Negative value means that the read timeout is used.
+	 * @see #bodyIdleTimeout(int)
+	 */
+	public int bodyIdleTimeout() {
+		return bodyIdleTimeout;
+	}
+
+	protected long deadline = -1;
+
+	/**
+	 * Defines the overall deadline of sending in milliseconds: connecting, writing
+	 * the request and reading the whole response, including the redirects and retries.
+	 * Unlike the {@link #timeout(int) read timeout}, it limits the slow responses, too.
+	 * On expiry, connection is closed and {@link HttpException} is thrown. Deadlines of
+	 * all requests are enforced by a single timer thread.
+	 * A value of zero or less means no deadline.
+	 */
+	public HttpRequest deadline(final long milliseconds) {
+		this.deadline = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns overall deadline in milliseconds. Zero or negative value means no deadline.
+	 * @see #deadline(long)
+	 */
+	public long deadline() {
+		return deadline;
 	}
 
 	/**
@@ -746,11 +820,50 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		return this.maxRedirects;
 	}
 
+	protected RetryPolicy retryPolicy;
+
+	/**
+	 * Sets the {@link RetryPolicy retry policy} for sending the request;
+	 * <code>null</code> disables retries.
+	 */
+	public HttpRequest retryPolicy(final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * Returns the retry policy, or <code>null</code> if not set.
+	 */
+	public RetryPolicy retryPolicy() {
+		return retryPolicy;
+	}
+
+	protected HedgePolicy hedgePolicy;
+
+	/**
+	 * Sets the {@link HedgePolicy hedge policy} for {@link #sendAsync(Executor) sending asynchronously};
+	 * <code>null</code> disables hedging. Only idempotent requests are hedged,
+	 * when no connection is open and redirects are not followed.
+	 */
+	public HttpRequest hedge(final HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+		return this;
+	}
+
+	/**
+	 * Returns the hedge policy, or <code>null</code> if not set.
+	 */
+	public HedgePolicy hedgePolicy() {
+		return hedgePolicy;
+	}
+
 
 	// ---------------------------------------------------------------- send
 
 	protected HttpConnection httpConnection;
 	protected HttpConnectionProvider httpConnectionProvider;
+	private Deadline activeDeadline;
+	private Deadline openingDeadline;
 
 	/**
 	 * Uses custom connection provider when {@link #open() opening} the
@@ -800,12 +913,25 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		if (this.httpConnection != null) {
 			throw new HttpException("Connection already opened");
 		}
+		if (activeDeadline != null) {
+			activeDeadline.check();
+		}
 		try {
+			// connecting, proxy negotiation and TLS handshake end before the deadline
+			this.openingDeadline = activeDeadline;
 			this.httpConnectionProvider = httpConnectionProvider;
 			this.httpConnection = httpConnectionProvider.createHttpConnection(this);
 		} catch (final IOException ioex) {
 			throw new HttpException("Can't connect to: " + url(), ioex);
 		}
+		finally {
+			this.openingDeadline = null;
+		}
+
+		if (activeDeadline != null) {
+			// read timeout was limited while opening
+			httpConnection.setTimeout(Math.max(timeout, 0));
+		}
 
 		return this;
 	}
@@ -829,9 +955,11 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	 * continuing the communication!
 	 * First it checks if "Connection" header exist in the response
 	 * and if it is equal to "Keep-Alive" value. Then it
-	 * checks the "Keep-Alive" headers "max" parameter.
-	 * If its value is positive, then the existing {@link jodd.http.HttpConnection}
-	 * from the request will be reused. If max value is 1,
+	 * checks if connection is still {@link HttpConnection#isReusable() reusable},
+	 * i.e. that server's "Keep-Alive" timeout is not about to expire and its
+	 * "max" parameter is not exhausted.
+	 * If so, then the existing {@link jodd.http.HttpConnection}
+	 * from the request will be reused; otherwise a fresh one is opened. If max value is 1,
 	 * connection will be sent with "Connection: Close" header, indicating
 	 * its the last request. When new connection is created, the
 	 * same {@link jodd.http.HttpConnectionProvider} that was used for
@@ -845,9 +973,15 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 			final HttpConnection previousConnection = httpResponse.getHttpRequest().httpConnection;
 
 			if (previousConnection != null) {
-				// keep using the connection!
-				this.httpConnection = previousConnection;
-				this.httpConnectionProvider = httpResponse.getHttpRequest().connectionProvider();
+				if (previousConnection.isReusable() && !previousConnection.isStale()) {
+					// keep using the connection!
+					this.httpConnection = previousConnection;
+					this.httpConnectionProvider = httpResponse.getHttpRequest().connectionProvider();
+				}
+				else {
+					// server is about to close the connection, don't risk reusing it
+					httpResponse.close();
+				}
 			}
 
 			//keepAlive = true; (already set)
@@ -859,6 +993,11 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 			keepAlive = true;
 		}
 
+		// if connection is not opened, open it using previous connection provider
+		if (httpConnection == null) {
+			open(httpResponse.getHttpRequest().connectionProvider());
+		}
+
 		// if we don't want to continue with this persistent session, mark this connection as closed
 		if (!doContinue) {
 			keepAlive = false;
@@ -866,10 +1005,6 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 
 		connectionKeepAlive(keepAlive);
 
-		// if connection is not opened, open it using previous connection provider
-		if (httpConnection == null) {
-			open(httpResponse.getHttpRequest().connectionProvider());
-		}
 		return this;
 	}
 
@@ -879,8 +1014,33 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	 * connection will not be closed.
 	 */
 	public HttpResponse send() {
+		if (deadline <= 0) {
+			return _sendFollowingRedirects();
+		}
+
+		activeDeadline = new Deadline(deadline);
+		try {
+			return _sendFollowingRedirects();
+		}
+		catch (final HttpException httpException) {
+			if (activeDeadline.isExpired()) {
+				if (httpConnection != null) {
+					httpConnection.close();
+					httpConnection = null;
+				}
+				throw activeDeadline.exceeded(httpException);
+			}
+			throw httpException;
+		}
+		finally {
+			activeDeadline.cancel();
+			activeDeadline = null;
+		}
+	}
+
+	private HttpResponse _sendFollowingRedirects() {
 		if (!followRedirects) {
-			return _send();
+			return _sendWithRetry();
 		}
 
 		int redirects = this.maxRedirects;
@@ -888,7 +1048,7 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		while (redirects > 0) {
 			redirects--;
 
-			final HttpResponse httpResponse = _send();
+			final HttpResponse httpResponse = _sendWithRetry();
 
 			final int statusCode = httpResponse.statusCode();
 
@@ -916,38 +1076,250 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 		headers.remove(HEADER_HOST);
 	}
 
+	/**
+	 * Sends the request, retrying the failed attempts as defined by the {@link RetryPolicy}.
+	 * Request is kept in memory, so each attempt sends it again as it is.
+	 */
+	private HttpResponse _sendWithRetry() {
+		if (retryPolicy == null) {
+			return _send();
+		}
+
+		retryPolicy.deposit();
+
+		int attempt = 1;
+
+		while (true) {
+			boolean connected = false;
+			try {
+				if (httpConnection == null) {
+					open();
+				}
+				connected = true;
+
+				return _send();
+			}
+			catch (final HttpException httpException) {
+				if (connected && httpConnectionProvider == null) {
+					// connection was given, there is no way to open a new one
+					throw httpException;
+				}
+				if (activeDeadline != null && activeDeadline.isExpired()) {
+					throw httpException;
+				}
+				if (!retryPolicy.retry(this, attempt, connected, httpException)) {
+					throw httpException;
+				}
+
+				long backoff = retryPolicy.backoff(attempt);
+				if (activeDeadline != null) {
+					backoff = Math.min(backoff, activeDeadline.remaining());
+				}
+				try {
+					Thread.sleep(backoff);
+				}
+				catch (final InterruptedException iex) {
+					Thread.currentThread().interrupt();
+					throw httpException;
+				}
+			}
+			attempt++;
+		}
+	}
+
 	private HttpResponse _send() {
 		if (httpConnection == null) {
 			open();
 		}
 
 		// sends data
-		final HttpResponse httpResponse;
+		HttpResponse httpResponse;
 		try {
-			final OutputStream outputStream = httpConnection.getOutputStream();
-
-			sendTo(outputStream);
+			httpResponse = _sendAndReadResponse();
+		}
+		catch (final IOException ioex) {
+			if (!isPeerClosed(ioex) || !canRetryOnNewConnection()) {
+				_closeConnection();
+				throw new HttpException(ioex);
+			}
+			httpResponse = null;
+		}
+		catch (final HttpException httpException) {
+			if (!isPeerClosed(httpException.getCause()) || !canRetryOnNewConnection()) {
+				_closeConnection();
+				throw httpException;
+			}
+			httpResponse = null;
+		}
 
-			final InputStream inputStream = httpConnection.getInputStream();
+		if (httpResponse == null) {
+			// reused connection was dead, retry once on a new connection
+			_closeConnection();
 
-			httpResponse = HttpResponse.readFrom(inputStream);
+			open(httpConnectionProvider);
 
-			httpResponse.assignHttpRequest(this);
-		} catch (final IOException ioex) {
-			throw new HttpException(ioex);
+			try {
+				httpResponse = _sendAndReadResponse();
+			}
+			catch (final IOException ioex) {
+				_closeConnection();
+				throw new HttpException(ioex);
+			}
+			catch (final HttpException httpException) {
+				_closeConnection();
+				throw httpException;
+			}
 		}
 
-		final boolean keepAlive = httpResponse.isConnectionPersistent();
+		_afterResponse(httpResponse);
+
+		return httpResponse;
+	}
+
+	/**
+	 * Closes the connection of the failed exchange, as it is in unknown state.
+	 */
+	private void _closeConnection() {
+		httpConnection.close();
+		httpConnection = null;
+	}
+
+	/**
+	 * Closes the connection after the response, or keeps it for the next
+	 * request, or releases it to the provider.
+	 */
+	void _afterResponse(final HttpResponse httpResponse) {
+		// connection without any response is closed by the peer
+		final boolean keepAlive = httpResponse.statusPhrase() != null && httpResponse.isConnectionPersistent();
+
+		final int keepAliveTimeout = httpResponse.keepAliveTimeout();
+		httpConnection.markUsed(keepAliveTimeout < 0 ? -1 : keepAliveTimeout * 1000L, httpResponse.keepAliveMax());
 
 		if (!keepAlive) {
 			// closes connection if keep alive is false, or if counter reached 0
 			httpConnection.close();
 			httpConnection = null;
 		}
+		else if (httpConnectionProvider != null && httpConnectionProvider.releaseHttpConnection(httpConnection)) {
+			// connection is now owned by the provider (i.e. returned to the pool)
+			httpConnection = null;
+		}
+	}
+
+	/**
+	 * Sends the request over the current connection and reads the response.
+	 * Returns <code>null</code> when reused connection was closed by the peer
+	 * before sending any response, so the request may be retried.
+	 */
+	private HttpResponse _sendAndReadResponse() throws IOException {
+		if (activeDeadline != null) {
+			activeDeadline.attach(httpConnection);
+		}
+
+		final HttpConnectionMetrics.Recorder recorder = new HttpConnectionMetrics.Recorder();
+
+		final OutputStream outputStream = recorder.wrap(httpConnection.getOutputStream());
+
+		sendTo(outputStream);
+
+		final InputStream inputStream = recorder.wrap(httpConnection.getInputStream());
+
+		final HttpResponse httpResponse = _readResponse(httpConnection, inputStream);
+
+		if (activeDeadline != null) {
+			activeDeadline.detach();
+		}
+
+		if (httpResponse.statusPhrase() == null && canRetryOnNewConnection()) {
+			// no status line at all: peer closed the connection
+			return null;
+		}
+
+		httpResponse.assignHttpRequest(this);
+		httpResponse.assignMetrics(recorder.finish(httpConnection));
 
 		return httpResponse;
 	}
 
+	/**
+	 * Reads the response from the connection. When {@link #headersTimeout(int) headers timeout}
+	 * or {@link #bodyIdleTimeout(int) body idle timeout} is set, the read timeout of the connection
+	 * is switched between the phases, and restored to the read timeout at the end.
+	 */
+	HttpResponse _readResponse(final HttpConnection connection, final InputStream inputStream) {
+		final boolean headRequest = "HEAD".equals(method);
+
+		if (headersTimeout < 0 && bodyIdleTimeout < 0) {
+			return HttpResponse.readFrom(inputStream, headRequest, null);
+		}
+
+		final int readTimeout = Math.max(timeout, 0);
+
+		connection.setTimeout(headersTimeout >= 0 ? headersTimeout : readTimeout);
+
+		final HttpResponse httpResponse = HttpResponse.readFrom(inputStream, headRequest,
+			() -> connection.setTimeout(bodyIdleTimeout >= 0 ? bodyIdleTimeout : readTimeout));
+
+		// connection may be used for the next request
+		connection.setTimeout(readTimeout);
+
+		return httpResponse;
+	}
+
+	/**
+	 * Returns <code>true</code> if request may be resent on a new connection
+	 * after the reused connection turned out to be dead.
+	 */
+	private boolean canRetryOnNewConnection() {
+		return httpConnection.isReused() && httpConnectionProvider != null && isIdempotent();
+	}
+
+	/**
+	 * Returns <code>true</code> if the failure shows that the peer closed the connection:
+	 * end of stream, connection reset or broken pipe. Timeouts are never such signals,
+	 * as the peer may be just slow and the request may be already processed.
+	 */
+	private static boolean isPeerClosed(Throwable throwable) {
+		boolean peerClosed = false;
+
+		while (throwable != null) {
+			if (throwable instanceof InterruptedIOException) {
+				return false;
+			}
+			if (throwable instanceof EOFException || throwable instanceof SocketException) {
+				peerClosed = true;
+			}
+			else if (throwable instanceof IOException && throwable.getMessage() != null) {
+				// channels and TLS report reset and broken pipe as plain I/O exceptions
+				final String message = throwable.getMessage();
+				if (message.contains("Connection reset") || message.contains("Broken pipe")) {
+					peerClosed = true;
+				}
+			}
+			throwable = throwable.getCause();
+		}
+		return peerClosed;
+	}
+
+	/**
+	 * Returns <code>true</code> if request method is idempotent, i.e. if
+	 * sending the same request more than once has the same effect as
+	 * sending it once.
+	 */
+	public boolean isIdempotent() {
+		switch (method) {
+			case "GET":
+			case "HEAD":
+			case "OPTIONS":
+			case "TRACE":
+			case "PUT":
+			case "DELETE":
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	// ---------------------------------------------------------------- buffer
 
 	/**
@@ -988,9 +1360,17 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 
 		final Buffer request = new Buffer();
 
+		final ProxyInfo forwardingProxy = httpConnection != null ? httpConnection.forwardingProxy() : null;
+
 		request.append(method)
-			.append(SPACE)
-			.append(path);
+			.append(SPACE);
+
+		if (forwardingProxy != null) {
+			// absolute form for the proxy
+			request.append(hostUrl());
+		}
+
+		request.append(path);
 
 		if (query != null && !query.isEmpty()) {
 			request.append('?');
@@ -1001,6 +1381,14 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 			.append(httpVersion)
 			.append(CRLF);
 
+		// proxy credentials set on the request take precedence
+		if (forwardingProxy != null && forwardingProxy.getProxyUsername() != null && header(HEADER_PROXY_AUTHORIZATION) == null) {
+			request.append(HEADER_PROXY_AUTHORIZATION)
+				.append(": Basic ")
+				.append(Base64.encodeToString(forwardingProxy.getProxyUsername() + ':' + forwardingProxy.getProxyPassword()))
+				.append(CRLF);
+		}
+
 		populateHeaderAndBody(request, formBuffer, fullRequest);
 
 		return request;
@@ -1069,12 +1457,198 @@ public class HttpRequest extends HttpBase<HttpRequest> {
 	// ---------------------------------------------------------------- functional/async
 
 	/**
-	 * Sends http request asynchronously using common fork-join pool.
-	 * Note that this is not the right non-blocking call (not a NIO), it is just
-	 * a regular call that is operated in a separate thread.
+	 * Sends http request asynchronously using the {@link Defaults#asyncExecutor default executor}.
+	 * @see #sendAsync(Executor)
 	 */
 	public CompletableFuture<HttpResponse> sendAsync() {
-		return CompletableFuture.supplyAsync(this::send);
+		return sendAsync(Defaults.asyncExecutor);
+	}
+
+	/**
+	 * Sends http request asynchronously. When the connection provider is
+	 * {@link AsyncHttpConnectionProvider asynchronous}, request is sent using
+	 * non-blocking I/O, so no thread waits for the response. Cancelling the
+	 * returned future closes the connection. Future is completed in the given
+	 * executor, so dependent actions never run in the I/O thread.
+	 * <p>
+	 * With other providers, this is not the right non-blocking call, it is
+	 * just a regular call that is operated in the given executor.
+	 * See {@link HttpExecutors} for running blocking calls in virtual threads.
+	 * <p>
+	 * The {@link #deadline(long) deadline} fails the future, and closes the connection.
+	 * <p>
+	 * When {@link #hedge(HedgePolicy) hedging} applies, the original and the hedged
+	 * requests are sent as blocking calls in the executor, regardless of the provider.
+	 */
+	public CompletableFuture<HttpResponse> sendAsync(final Executor executor) {
+		final HttpConnectionProvider provider = httpConnectionProvider != null ? httpConnectionProvider : HttpConnectionProvider.get();
+
+		if (hedgePolicy != null && httpConnection == null && !followRedirects && isIdempotent()) {
+			return _deadlineAsync(HedgedExchange.send(this, provider, hedgePolicy, executor), executor);
+		}
+
+		final boolean async = httpConnection != null
+			? httpConnection instanceof AsyncHttpConnection
+			: provider instanceof AsyncHttpConnectionProvider;
+
+		if (!async) {
+			return CompletableFuture.supplyAsync(this::send, executor);
+		}
+
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+		final AtomicReference<HttpConnection> currentConnection = new AtomicReference<>();
+
+		result.whenComplete((httpResponse, throwable) -> {
+			if (throwable != null) {
+				// cancelled, deadline exceeded, or failed
+				final HttpConnection connection = currentConnection.getAndSet(null);
+				if (connection != null) {
+					connection.close();
+				}
+			}
+		});
+
+		_sendAsync(provider, executor, followRedirects ? maxRedirects : 1, true, currentConnection, result);
+
+		return _deadlineAsync(result, executor);
+	}
+
+	/**
+	 * Fails the future when the {@link #deadline(long) deadline} expires. Failure is completed
+	 * in the executor, where the connection of the request is closed.
+	 */
+	private CompletableFuture<HttpResponse> _deadlineAsync(final CompletableFuture<HttpResponse> result, final Executor executor) {
+		if (deadline <= 0) {
+			return result;
+		}
+		final long milliseconds = deadline;
+		final HashedWheelTimer.Timeout timeout = HashedWheelTimer.shared().newTimeout(
+			() -> _completeAsync(executor, result, null, Deadline.exceeded(milliseconds, null)), milliseconds);
+
+		result.whenComplete((httpResponse, throwable) -> timeout.cancel());
+
+		return result;
+	}
+
+	/**
+	 * Sends the request using non-blocking connection and follows redirects.
+	 */
+	private void _sendAsync(
+			final HttpConnectionProvider provider, final Executor executor, final int redirects, final boolean retry,
+			final AtomicReference<HttpConnection> currentConnection, final CompletableFuture<HttpResponse> result) {
+
+		final CompletableFuture<AsyncHttpConnection> connectionFuture;
+		final byte[] requestBytes;
+
+		try {
+			if (httpConnection instanceof AsyncHttpConnection) {
+				connectionFuture = CompletableFuture.completedFuture((AsyncHttpConnection) httpConnection);
+			}
+			else {
+				this.httpConnectionProvider = provider;
+				connectionFuture = ((AsyncHttpConnectionProvider) provider).createHttpConnectionAsync(this);
+			}
+
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			sendTo(out);
+			requestBytes = out.toByteArray();
+		}
+		catch (final IOException | RuntimeException ex) {
+			_completeAsync(executor, result, null, ex);
+			return;
+		}
+
+		connectionFuture
+			.thenCompose(asyncConnection -> {
+				this.httpConnection = asyncConnection;
+				currentConnection.set(asyncConnection);
+
+				if (result.isDone()) {
+					asyncConnection.close();
+				}
+				return AsyncHttpExchange.exchange(asyncConnection, requestBytes, method.equals("HEAD"));
+			})
+			.whenComplete((httpResponse, throwable) -> {
+				try {
+					if (throwable != null || httpResponse.statusPhrase() == null) {
+						final boolean canRetry = retry && httpConnection != null
+							&& (throwable == null || isPeerClosed(throwable)) && canRetryOnNewConnection();
+
+						if (httpConnection != null) {
+							httpConnection.close();
+							httpConnection = null;
+						}
+						if (canRetry) {
+							// reused connection was dead, retry once on a new connection
+							_sendAsync(provider, executor, redirects, false, currentConnection, result);
+							return;
+						}
+						if (throwable != null) {
+							_completeAsync(executor, result, null, throwable);
+							return;
+						}
+					}
+
+					httpResponse.assignHttpRequest(this);
+
+					if (httpConnection != null) {
+						_afterResponse(httpResponse);
+					}
+
+					if (followRedirects && HttpStatus.isRedirect(httpResponse.statusCode())) {
+						final String location = httpResponse.location();
+
+						if (location != null) {
+							if (redirects <= 1) {
+								throw new HttpException("Max number of redirects exceeded: " + this.maxRedirects);
+							}
+							final String previousHostUrl = hostUrl();
+							_reset();
+							set(location);
+
+							if (httpConnection != null && !previousHostUrl.equals(hostUrl())) {
+								// kept connection leads to the previous host
+								httpConnection.close();
+								httpConnection = null;
+							}
+							_sendAsync(provider, executor, redirects - 1, true, currentConnection, result);
+							return;
+						}
+						_reset();
+					}
+
+					_completeAsync(executor, result, httpResponse, null);
+				}
+				catch (final RuntimeException rex) {
+					_completeAsync(executor, result, null, rex);
+				}
+			});
+	}
+
+	/**
+	 * Completes the future in the given executor, outside of the I/O thread.
+	 */
+	private static void _completeAsync(
+			final Executor executor, final CompletableFuture<HttpResponse> result, final HttpResponse httpResponse, final Throwable throwable) {
+
+		final Runnable completion = () -> {
+			if (throwable == null) {
+				result.complete(httpResponse);
+				return;
+			}
+			final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+				? throwable.getCause() : throwable;
+
+			result.completeExceptionally(cause instanceof HttpException ? cause : new HttpException(cause));
+		};
+
+		try {
+			executor.execute(completion);
+		}
+		catch (final RejectedExecutionException rex) {
+			// executor is shut down, the future must not hang
+			completion.run();
+		}
 	}
 
 	/**
@@ -37,6 +37,7 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
 
 import static jodd.util.StringPool.CRLF;
@@ -101,6 +102,41 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 		return location;
 	}
 
+	// ---------------------------------------------------------------- keep-alive
+
+	/**
+	 * Returns "Keep-Alive" timeout in seconds, as advertised by the server,
+	 * or <code>-1</code> if not specified.
+	 */
+	public int keepAliveTimeout() {
+		return keepAliveParameter(HttpUtil::extractKeepAliveTimeout);
+	}
+
+	/**
+	 * Returns "Keep-Alive" max value, i.e. the number of requests the server
+	 * still allows on the connection, or <code>-1</code> if not specified.
+	 */
+	public int keepAliveMax() {
+		return keepAliveParameter(HttpUtil::extractKeepAliveMax);
+	}
+
+	private int keepAliveParameter(final Function<String, String> extractor) {
+		final String keepAlive = header(HEADER_KEEP_ALIVE);
+		if (keepAlive == null) {
+			return -1;
+		}
+		final String value = extractor.apply(keepAlive);
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (final NumberFormatException nfex) {
+			return -1;
+		}
+	}
+
 	// ---------------------------------------------------------------- cookie
 
 	/**
@@ -194,9 +230,31 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 	 * Supports both streamed and chunked response.
 	 */
 	public static HttpResponse readFrom(final InputStream in) {
+		return readFrom(in, false, null);
+	}
+
+	/**
+	 * Reads response input stream. Response to the HEAD request has no body.
+	 * The body phase callback, if set, runs once the headers are read,
+	 * before the body, e.g. to switch the read timeout.
+	 */
+	static HttpResponse readFrom(final InputStream in, final boolean headRequest, final Runnable bodyPhase) {
 		final InputStreamReader inputStreamReader = new InputStreamReader(in, StandardCharsets.ISO_8859_1);
 		final BufferedReader reader = new BufferedReader(inputStreamReader);
 
+		return readFrom(reader, headRequest, bodyPhase);
+	}
+
+	/**
+	 * Reads single response from the reader. Reader may buffer more bytes
+	 * than the response has; they remain in the reader for the next response.
+	 * Response to the HEAD request, as well as 204 and 304 responses, have no body.
+	 */
+	static HttpResponse readFrom(final BufferedReader reader, final boolean headRequest) {
+		return readFrom(reader, headRequest, null);
+	}
+
+	private static HttpResponse readFrom(final BufferedReader reader, final boolean headRequest, final Runnable bodyPhase) {
 		final HttpResponse httpResponse = new HttpResponse();
 
 		// the first line
@@ -240,7 +298,19 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 		}
 
 		httpResponse.readHeaders(reader);
-		httpResponse.readBody(reader);
+
+		if (bodyPhase != null) {
+			bodyPhase.run();
+		}
+
+		final int statusCode = httpResponse.statusCode();
+
+		if (headRequest || statusCode == HttpStatus.HTTP_NO_CONTENT || statusCode == HttpStatus.HTTP_NOT_MODIFIED) {
+			httpResponse.body = StringPool.EMPTY;
+		}
+		else {
+			httpResponse.readBody(reader);
+		}
 
 		return httpResponse;
 	}
@@ -263,6 +333,26 @@ public class HttpResponse extends HttpBase<HttpResponse> {
 		return httpRequest;
 	}
 
+	// ---------------------------------------------------------------- metrics
+
+	protected HttpConnectionMetrics metrics;
+
+	/**
+	 * Binds connection metrics of the exchange to this response.
+	 */
+	void assignMetrics(final HttpConnectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns transfer and timing metrics of the exchange that received
+	 * this response, or <code>null</code> if the response was not received
+	 * by sending the request (e.g. when parsed or pipelined).
+	 */
+	public HttpConnectionMetrics metrics() {
+		return metrics;
+	}
+
 	/**
 	 * Closes requests connection if it was open.
 	 * Should be called when using keep-alive connections.
@@ -194,11 +194,15 @@ public class HttpUtil {
 	 * Extract keep-alive timeout.
 	 */
 	public static String extractKeepAliveTimeout(final String keepAlive) {
-		return extractHeaderParameter(keepAlive, "timeout", ',');
+		// header value starts with a parameter, so prepend the separator
+		return extractHeaderParameter(StringPool.COMMA + keepAlive, "timeout", ',');
 	}
 
+	/**
+	 * Extract keep-alive max.
+	 */
 	public static String extractKeepAliveMax(final String keepAlive) {
-		return extractHeaderParameter(keepAlive, "max", ',');
+		return extractHeaderParameter(StringPool.COMMA + keepAlive, "max", ',');
 	}
 
 	// ---------------------------------------------------------------- header
@@ -239,7 +243,7 @@ public class HttpUtil {
 				continue;
 			}
 
-			final int endIndex = header.indexOf(';', eqNdx);
+			final int endIndex = header.indexOf(separator, eqNdx);
 
 			if (endIndex == -1) {
 				return header.substring(eqNdx);
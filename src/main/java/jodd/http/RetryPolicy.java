@@ -0,0 +1,177 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of the {@link HttpRequest#retryPolicy(RetryPolicy) request}.
+ * Failed request is sent again, up to the max number of attempts, after the
+ * exponential backoff with full jitter. Only I/O failures are retried:
+ * failures to connect always, as nothing was sent yet, and failures after
+ * sending only for the {@link HttpRequest#isIdempotent() idempotent} requests.
+ * Received responses are never retried, regardless of the status code.
+ * <p>
+ * Policy may be shared between requests; then they share the retry budget as well.
+ * Each request deposits a fraction of the token into the budget, and each retry
+ * withdraws one token, so retries are limited to that fraction of the requests,
+ * plus the initial capacity. When the dependency is down, this prevents the
+ * retry storm that multiplies the load by the number of attempts.
+ */
+public class RetryPolicy {
+
+	protected int maxAttempts = 3;
+	protected long initialBackoff = 100;
+	protected long maxBackoff = 10000;
+	protected double multiplier = 2;
+	protected boolean jitter = true;
+	protected boolean retryIdempotent = true;
+
+	protected double budgetRatio = 0.2;
+	protected int budgetCapacity = 10;
+
+	private double budget = budgetCapacity;
+	private long retriesCount;
+	private long budgetExhaustedCount;
+
+	/**
+	 * Sets the max number of attempts, including the first one.
+	 */
+	public RetryPolicy maxAttempts(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new HttpException("Invalid max attempts: " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	/**
+	 * Sets the backoff before the first retry, and the max backoff, in milliseconds.
+	 * Each next backoff is {@link #multiplier(double) multiplied}.
+	 */
+	public RetryPolicy backoff(final long initialBackoff, final long maxBackoff) {
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+
+	/**
+	 * Sets the backoff multiplier.
+	 */
+	public RetryPolicy multiplier(final double multiplier) {
+		this.multiplier = multiplier;
+		return this;
+	}
+
+	/**
+	 * Enables full jitter: actual backoff is random, between zero and the
+	 * calculated backoff, so clients that failed together do not retry together.
+	 */
+	public RetryPolicy jitter(final boolean jitter) {
+		this.jitter = jitter;
+		return this;
+	}
+
+	/**
+	 * Defines if idempotent requests are retried after they were sent.
+	 * When disabled, only failures to connect are retried.
+	 */
+	public RetryPolicy retryIdempotent(final boolean retryIdempotent) {
+		this.retryIdempotent = retryIdempotent;
+		return this;
+	}
+
+	/**
+	 * Sets the retry budget: ratio of retries to requests, and the max number
+	 * of tokens, which is also the initial number of tokens.
+	 */
+	public synchronized RetryPolicy budget(final double ratio, final int capacity) {
+		this.budgetRatio = ratio;
+		this.budgetCapacity = capacity;
+		this.budget = capacity;
+		return this;
+	}
+
+	/**
+	 * Returns the total number of retries.
+	 */
+	public synchronized long retriesCount() {
+		return retriesCount;
+	}
+
+	/**
+	 * Returns the number of retries denied by the exhausted budget.
+	 */
+	public synchronized long budgetExhaustedCount() {
+		return budgetExhaustedCount;
+	}
+
+	// ---------------------------------------------------------------- retry
+
+	/**
+	 * Invoked before the first attempt of the request.
+	 */
+	synchronized void deposit() {
+		budget = Math.min(budget + budgetRatio, budgetCapacity);
+	}
+
+	/**
+	 * Returns <code>true</code> if failed attempt should be retried, and withdraws
+	 * the token from the budget. Flag <code>connected</code> tells if connection
+	 * was opened, i.e. if the request might have been sent.
+	 */
+	synchronized boolean retry(final HttpRequest httpRequest, final int attempt, final boolean connected, final HttpException httpException) {
+		if (attempt >= maxAttempts) {
+			return false;
+		}
+		if (!(httpException.getCause() instanceof IOException)) {
+			return false;
+		}
+		if (connected && !(retryIdempotent && httpRequest.isIdempotent())) {
+			return false;
+		}
+		if (budget < 1) {
+			budgetExhaustedCount++;
+			return false;
+		}
+		budget--;
+		retriesCount++;
+		return true;
+	}
+
+	/**
+	 * Returns the backoff in milliseconds before the given retry, starting with 1.
+	 */
+	long backoff(final int retry) {
+		final double backoff = Math.min(initialBackoff * Math.pow(multiplier, retry - 1), maxBackoff);
+
+		if (!jitter) {
+			return (long) backoff;
+		}
+		return (long) (ThreadLocalRandom.current().nextDouble() * backoff);
+	}
+}
@@ -25,8 +25,11 @@
 
 package jodd.http;
 
+import jodd.http.net.HappyEyeballsConnector;
+import jodd.http.net.HostResolver;
+
+import javax.net.SocketFactory;
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.net.Socket;
 
 /**
@@ -38,22 +41,23 @@ public class Sockets {
 	 * Creates a socket.
 	 */
 	public static Socket connect(final String hostname, final int port) throws IOException {
-		final Socket socket = new Socket();
-		socket.connect(new InetSocketAddress(hostname, port));
-		return socket;
+		return connect(hostname, port, 0);
 	}
 
 	/**
 	 * Creates a socket with a timeout.
 	 */
 	public static Socket connect(final String hostname, final int port, final int connectionTimeout) throws IOException {
-		final Socket socket = new Socket();
-		if (connectionTimeout <= 0) {
-			socket.connect(new InetSocketAddress(hostname, port));
-		}
-		else {
-			socket.connect(new InetSocketAddress(hostname, port), connectionTimeout);
-		}
-		return socket;
+		return connect(HostResolver.SYSTEM, hostname, port, connectionTimeout);
+	}
+
+	/**
+	 * Creates a socket connected to one of the host addresses returned by the resolver.
+	 * All addresses are tried, using the {@link HappyEyeballsConnector}. Connection
+	 * timeout applies to the whole operation; zero or negative value means no timeout.
+	 */
+	public static Socket connect(final HostResolver hostResolver, final String hostname, final int port, final int connectionTimeout) throws IOException {
+		return new HappyEyeballsConnector(SocketFactory.getDefault(), HappyEyeballsConnector.DEFAULT_ATTEMPT_DELAY)
+			.connect(hostResolver.resolve(hostname), port, Math.max(connectionTimeout, 0));
 	}
 }
@@ -0,0 +1,204 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link HostResolver} that caches resolved addresses for the given time-to-live.
+ * Failed lookups are cached too, for a shorter time. When cached addresses are
+ * used close to their expiration, they are refreshed in a background thread, while
+ * the current addresses are still returned. Therefore, frequently used hosts
+ * never block the caller on the name lookup.
+ */
+public class CachingHostResolver implements HostResolver {
+
+	private static class RefreshExecutor {
+		private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "jodd-http-host-resolver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static class Entry {
+		private final InetAddress[] addresses;
+		private final String failure;
+		private final long expirationTime;
+		private final long refreshTime;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private Entry(final InetAddress[] addresses, final String failure, final long expirationTime, final long refreshTime) {
+			this.addresses = addresses;
+			this.failure = failure;
+			this.expirationTime = expirationTime;
+			this.refreshTime = refreshTime;
+		}
+	}
+
+	private final HostResolver hostResolver;
+	private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+	protected long ttl = 60_000;
+	protected long negativeTtl = 5_000;
+	protected long refreshAheadTime = 10_000;
+	protected int maxEntries = 1024;
+
+	public CachingHostResolver() {
+		this(HostResolver.SYSTEM);
+	}
+
+	public CachingHostResolver(final HostResolver hostResolver) {
+		this.hostResolver = hostResolver;
+	}
+
+	/**
+	 * Sets time-to-live of resolved addresses, in milliseconds.
+	 */
+	public CachingHostResolver setTtl(final long milliseconds) {
+		this.ttl = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Sets time-to-live of failed lookups, in milliseconds.
+	 * Set to zero to disable negative caching.
+	 */
+	public CachingHostResolver setNegativeTtl(final long milliseconds) {
+		this.negativeTtl = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Sets the time before the expiration, in milliseconds, from when the used
+	 * addresses are refreshed in the background. Set to zero to disable refresh-ahead.
+	 * Refresh never starts before the half of the time-to-live.
+	 */
+	public CachingHostResolver setRefreshAheadTime(final long milliseconds) {
+		this.refreshAheadTime = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Sets maximal number of cached hosts.
+	 */
+	public CachingHostResolver setMaxEntries(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		return this;
+	}
+
+	@Override
+	public InetAddress[] resolve(final String host) throws UnknownHostException {
+		final String key = host.toLowerCase();
+		final Entry entry = cache.get(key);
+		final long now = System.currentTimeMillis();
+
+		if (entry == null || now >= entry.expirationTime) {
+			return lookup(key, host, false);
+		}
+
+		if (entry.failure != null) {
+			throw new UnknownHostException(entry.failure);
+		}
+
+		if (now >= entry.refreshTime && entry.refreshing.compareAndSet(false, true)) {
+			RefreshExecutor.EXECUTOR.execute(() -> {
+				try {
+					lookup(key, host, true);
+				}
+				catch (final UnknownHostException ignore) {
+					// keep using current addresses until they expire
+				}
+				finally {
+					entry.refreshing.set(false);
+				}
+			});
+		}
+
+		return entry.addresses.clone();
+	}
+
+	/**
+	 * Resolves the host and caches the result.
+	 */
+	private InetAddress[] lookup(final String key, final String host, final boolean refresh) throws UnknownHostException {
+		final InetAddress[] addresses;
+		try {
+			addresses = hostResolver.resolve(host);
+		}
+		catch (final UnknownHostException uhex) {
+			if (!refresh && negativeTtl > 0) {
+				final long now = System.currentTimeMillis();
+				put(key, new Entry(null, uhex.getMessage(), now + negativeTtl, Long.MAX_VALUE));
+			}
+			throw uhex;
+		}
+
+		final long now = System.currentTimeMillis();
+		// refresh-ahead longer than the ttl would refresh the fresh entry right away
+		final long refreshTime = refreshAheadTime > 0 ? now + Math.max(ttl - refreshAheadTime, ttl / 2) : Long.MAX_VALUE;
+
+		put(key, new Entry(addresses, null, now + ttl, refreshTime));
+
+		return addresses.clone();
+	}
+
+	private void put(final String key, final Entry entry) {
+		if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+			evict();
+		}
+		cache.put(key, entry);
+	}
+
+	/**
+	 * Removes expired entries. If there are none, removes any entry.
+	 */
+	private void evict() {
+		final long now = System.currentTimeMillis();
+
+		cache.values().removeIf(entry -> now >= entry.expirationTime);
+
+		final Iterator<String> iterator = cache.keySet().iterator();
+		while (cache.size() >= maxEntries && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+}
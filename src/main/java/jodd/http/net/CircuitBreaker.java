@@ -0,0 +1,218 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+/**
+ * Circuit breaker of a single route of the {@link CircuitBreakerHttpConnectionProvider}.
+ * While {@link State#CLOSED closed}, requests pass and their outcomes are recorded.
+ * Breaker opens when the number of consecutive failures reaches the threshold,
+ * or when the failure rate in the window of last outcomes does. While
+ * {@link State#OPEN open}, requests are rejected immediately. After the open
+ * time, breaker becomes {@link State#HALF_OPEN half-open} and lets a limited
+ * number of probe requests through: when all of them succeed, breaker closes;
+ * when any fails, it opens again.
+ * <p>
+ * Each permit carries the generation of the breaker state, so outcomes of
+ * requests started before the last state change are ignored.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String route;
+	private final int failureThreshold;
+	private final int failureRateThreshold;
+	private final long openTime;
+	private final int halfOpenProbes;
+
+	private final boolean[] window;
+	private int windowNext;
+	private int windowSize;
+	private int windowFailures;
+
+	private State state = State.CLOSED;
+	private int generation;
+	private int consecutiveFailures;
+	private long openedAt;
+	private int probesInFlight;
+	private int probesSucceeded;
+	private long rejectedCount;
+
+	CircuitBreaker(
+			final String route, final int failureThreshold, final int failureRateThreshold,
+			final int windowSize, final long openTime, final int halfOpenProbes) {
+
+		this.route = route;
+		this.failureThreshold = failureThreshold;
+		this.failureRateThreshold = failureRateThreshold;
+		this.window = new boolean[Math.max(windowSize, 1)];
+		this.openTime = openTime;
+		this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+	}
+
+	/**
+	 * Returns the route of this breaker.
+	 */
+	public String getRoute() {
+		return route;
+	}
+
+	/**
+	 * Returns current state. Open breaker is reported as half-open
+	 * once the open time elapses, even before the next request.
+	 */
+	public synchronized State getState() {
+		if (state == State.OPEN && openTimeElapsed()) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the number of requests rejected by this breaker.
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	private boolean openTimeElapsed() {
+		return System.currentTimeMillis() - openedAt >= openTime;
+	}
+
+	/**
+	 * Acquires permit for the request. Returns the permit, or <code>-1</code>
+	 * when request is rejected.
+	 */
+	synchronized int tryAcquire() {
+		if (state == State.OPEN) {
+			if (!openTimeElapsed()) {
+				rejectedCount++;
+				return -1;
+			}
+			transition(State.HALF_OPEN);
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesInFlight >= halfOpenProbes) {
+				rejectedCount++;
+				return -1;
+			}
+			probesInFlight++;
+		}
+		return generation;
+	}
+
+	/**
+	 * Records successful request.
+	 */
+	synchronized void succeeded(final int permit) {
+		if (permit != generation) {
+			return;
+		}
+		if (state == State.HALF_OPEN) {
+			probesInFlight--;
+			probesSucceeded++;
+			if (probesSucceeded >= halfOpenProbes) {
+				transition(State.CLOSED);
+			}
+			return;
+		}
+		consecutiveFailures = 0;
+		record(false);
+	}
+
+	/**
+	 * Records failed request.
+	 */
+	synchronized void failed(final int permit) {
+		if (permit != generation) {
+			return;
+		}
+		if (state == State.HALF_OPEN) {
+			transition(State.OPEN);
+			return;
+		}
+		consecutiveFailures++;
+		record(true);
+
+		if (failureThreshold > 0 && consecutiveFailures >= failureThreshold) {
+			transition(State.OPEN);
+		}
+		else if (failureRateThreshold > 0 && windowSize == window.length
+				&& windowFailures * 100 >= failureRateThreshold * windowSize) {
+			transition(State.OPEN);
+		}
+	}
+
+	/**
+	 * Returns the permit of the request that ended without the outcome,
+	 * e.g. connection released without sending the request.
+	 */
+	synchronized void released(final int permit) {
+		if (permit == generation && state == State.HALF_OPEN) {
+			probesInFlight--;
+		}
+	}
+
+	private void record(final boolean failure) {
+		if (windowSize == window.length) {
+			if (window[windowNext]) {
+				windowFailures--;
+			}
+		}
+		else {
+			windowSize++;
+		}
+		window[windowNext] = failure;
+		if (failure) {
+			windowFailures++;
+		}
+		windowNext = (windowNext + 1) % window.length;
+	}
+
+	private void transition(final State newState) {
+		state = newState;
+		generation++;
+		probesInFlight = 0;
+		probesSucceeded = 0;
+
+		if (newState == State.OPEN) {
+			openedAt = System.currentTimeMillis();
+		}
+		if (newState == State.CLOSED) {
+			consecutiveFailures = 0;
+			windowNext = 0;
+			windowSize = 0;
+			windowFailures = 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return route + " " + getState();
+	}
+}
@@ -0,0 +1,130 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Connection leased through the {@link CircuitBreaker}. Holds the permit
+ * until the outcome of the exchange is known: received response is a success,
+ * while connection closed before the response is a failure. The only exception
+ * is the reused connection closed by the peer before sending any byte, as it was
+ * just stale: it does not show anything about the backend.
+ */
+class CircuitBreakerHttpConnection extends DelegatingHttpConnection {
+
+	private final CircuitBreaker circuitBreaker;
+	private final int permit;
+	private boolean responded;
+	private boolean finished;
+	private volatile boolean received;
+	private volatile boolean timedOut;
+
+	CircuitBreakerHttpConnection(final HttpConnection connection, final CircuitBreaker circuitBreaker, final int permit) {
+		super(connection);
+		this.circuitBreaker = circuitBreaker;
+		this.permit = permit;
+	}
+
+	/**
+	 * Records the outcome of the exchange, once.
+	 */
+	synchronized void finish(final boolean closed) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+
+		if (responded) {
+			circuitBreaker.succeeded(permit);
+		}
+		else if (closed && (!connection.isReused() || received || timedOut)) {
+			circuitBreaker.failed(permit);
+		}
+		else {
+			circuitBreaker.released(permit);
+		}
+	}
+
+	/**
+	 * Tracks if any byte of the response is received and if reading timed out.
+	 */
+	@Override
+	public InputStream getInputStream() throws IOException {
+		final InputStream in = connection.getInputStream();
+
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				try {
+					final int b = in.read();
+					if (b != -1) {
+						received = true;
+					}
+					return b;
+				}
+				catch (final InterruptedIOException iioex) {
+					timedOut = true;
+					throw iioex;
+				}
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) throws IOException {
+				try {
+					final int read = in.read(b, off, len);
+					if (read > 0) {
+						received = true;
+					}
+					return read;
+				}
+				catch (final InterruptedIOException iioex) {
+					timedOut = true;
+					throw iioex;
+				}
+			}
+		};
+	}
+
+	@Override
+	public void close() {
+		finish(true);
+		super.close();
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		synchronized (this) {
+			responded = true;
+		}
+		super.markUsed(keepAliveTimeout, keepAliveMax);
+	}
+}
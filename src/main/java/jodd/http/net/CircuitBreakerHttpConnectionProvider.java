@@ -0,0 +1,195 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.HttpConnectionProvider;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+import jodd.http.ProxyInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connection provider that guards the wrapped provider with a {@link CircuitBreaker}
+ * per route. When the route keeps failing, breaker opens and the requests
+ * fail fast with the {@link CircuitBreakerOpenException}, instead of waiting
+ * for the connection timeout. After the open time, a limited number of probe
+ * requests is let through to check if the route has recovered.
+ * <p>
+ * Failures are failed connects, and new connections closed before the
+ * response is received, e.g. on read timeout. Any received response,
+ * regardless of its status code, is a success.
+ */
+public class CircuitBreakerHttpConnectionProvider implements HttpConnectionProvider {
+
+	protected final HttpConnectionProvider httpConnectionProvider;
+
+	protected int failureThreshold = 5;
+	protected int failureRateThreshold = 50;
+	protected int windowSize = 20;
+	protected long openTime = 30000;
+	protected int halfOpenProbes = 1;
+
+	private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakerHttpConnectionProvider(final HttpConnectionProvider httpConnectionProvider) {
+		this.httpConnectionProvider = httpConnectionProvider;
+	}
+
+	/**
+	 * Sets the number of consecutive failures that opens the breaker,
+	 * 0 to disable this condition.
+	 */
+	public CircuitBreakerHttpConnectionProvider setFailureThreshold(final int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the failure rate, in percents, that opens the breaker,
+	 * 0 to disable this condition. Rate is calculated over the
+	 * {@link #setWindowSize(int) window} of last outcomes, once it is full.
+	 */
+	public CircuitBreakerHttpConnectionProvider setFailureRateThreshold(final int failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of last outcomes used for calculating the failure rate.
+	 */
+	public CircuitBreakerHttpConnectionProvider setWindowSize(final int windowSize) {
+		this.windowSize = windowSize;
+		return this;
+	}
+
+	/**
+	 * Sets the time in milliseconds the breaker stays open before probing the route.
+	 */
+	public CircuitBreakerHttpConnectionProvider setOpenTime(final long openTime) {
+		this.openTime = openTime;
+		return this;
+	}
+
+	/**
+	 * Sets the number of probe requests let through when half-open.
+	 * All of them must succeed for breaker to close.
+	 */
+	public CircuitBreakerHttpConnectionProvider setHalfOpenProbes(final int halfOpenProbes) {
+		this.halfOpenProbes = halfOpenProbes;
+		return this;
+	}
+
+	/**
+	 * Returns circuit breaker of the request route, or <code>null</code>
+	 * if there were no requests on the route.
+	 */
+	public CircuitBreaker getCircuitBreaker(final HttpRequest httpRequest) {
+		return circuitBreakers.get(resolveRoute(httpRequest));
+	}
+
+	/**
+	 * Returns circuit breakers of all routes.
+	 */
+	public Collection<CircuitBreaker> getCircuitBreakers() {
+		return new ArrayList<>(circuitBreakers.values());
+	}
+
+	@Override
+	public void useProxy(final ProxyInfo proxyInfo) {
+		httpConnectionProvider.useProxy(proxyInfo);
+	}
+
+	/**
+	 * Creates connection using the wrapped provider, if allowed by the
+	 * circuit breaker of the route.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		final CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(resolveRoute(httpRequest), this::createCircuitBreaker);
+
+		final int permit = circuitBreaker.tryAcquire();
+		if (permit == -1) {
+			throw new CircuitBreakerOpenException(circuitBreaker);
+		}
+
+		final HttpConnection httpConnection;
+		try {
+			httpConnection = httpConnectionProvider.createHttpConnection(httpRequest);
+		}
+		catch (final IOException ioex) {
+			circuitBreaker.failed(permit);
+			throw ioex;
+		}
+		catch (final RuntimeException rex) {
+			if (rex instanceof HttpException && rex.getCause() instanceof IOException) {
+				circuitBreaker.failed(permit);
+			}
+			else {
+				circuitBreaker.released(permit);
+			}
+			throw rex;
+		}
+
+		return new CircuitBreakerHttpConnection(httpConnection, circuitBreaker, permit);
+	}
+
+	/**
+	 * Creates new circuit breaker for the route.
+	 */
+	protected CircuitBreaker createCircuitBreaker(final String route) {
+		return new CircuitBreaker(route, failureThreshold, failureRateThreshold, windowSize, openTime, halfOpenProbes);
+	}
+
+	/**
+	 * Releases connection to the wrapped provider.
+	 */
+	@Override
+	public boolean releaseHttpConnection(final HttpConnection httpConnection) {
+		if (!(httpConnection instanceof CircuitBreakerHttpConnection)) {
+			return httpConnectionProvider.releaseHttpConnection(httpConnection);
+		}
+
+		final CircuitBreakerHttpConnection connection = (CircuitBreakerHttpConnection) httpConnection;
+		if (!httpConnectionProvider.releaseHttpConnection(connection.getConnection())) {
+			return false;
+		}
+		connection.finish(false);
+		return true;
+	}
+
+	/**
+	 * Resolves the route key of the request: protocol, host and port.
+	 */
+	protected String resolveRoute(final HttpRequest httpRequest) {
+		return httpRequest.protocol().toLowerCase() + "://" + httpRequest.host().toLowerCase() + ':' + httpRequest.port();
+	}
+}
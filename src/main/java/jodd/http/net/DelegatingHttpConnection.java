@@ -0,0 +1,113 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.ProxyInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Connection that delegates to the wrapped connection. Base for connections
+ * that providers hand out in order to track the outcome of the exchange.
+ */
+abstract class DelegatingHttpConnection implements HttpConnection {
+
+	protected final HttpConnection connection;
+
+	protected DelegatingHttpConnection(final HttpConnection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns wrapped connection.
+	 */
+	HttpConnection getConnection() {
+		return connection;
+	}
+
+	@Override
+	public void init() throws IOException {
+		connection.init();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return connection.getOutputStream();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return connection.getInputStream();
+	}
+
+	@Override
+	public void close() {
+		connection.close();
+	}
+
+	@Override
+	public void setTimeout(final int milliseconds) {
+		connection.setTimeout(milliseconds);
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		connection.markUsed(keepAliveTimeout, keepAliveMax);
+	}
+
+	@Override
+	public boolean isReusable() {
+		return connection.isReusable();
+	}
+
+	@Override
+	public boolean isReused() {
+		return connection.isReused();
+	}
+
+	@Override
+	public boolean isStale() {
+		return connection.isStale();
+	}
+
+	@Override
+	public long getConnectTime() {
+		return connection.getConnectTime();
+	}
+
+	@Override
+	public long getHandshakeTime() {
+		return connection.getHandshakeTime();
+	}
+
+	@Override
+	public ProxyInfo forwardingProxy() {
+		return connection.forwardingProxy();
+	}
+}
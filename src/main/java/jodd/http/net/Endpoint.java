@@ -0,0 +1,95 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backend endpoint of the {@link LoadBalancingHttpConnectionProvider}.
+ * Tracks the number of in-flight requests and consecutive failures;
+ * endpoint is ejected for a while when failures reach the limit.
+ */
+public class Endpoint {
+
+	private final InetSocketAddress address;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private int consecutiveFailures;
+	private volatile long ejectedUntil;
+
+	public Endpoint(final InetSocketAddress address) {
+		this.address = address;
+	}
+
+	/**
+	 * Returns endpoint address.
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the number of requests currently served by this endpoint.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns <code>true</code> if endpoint is ejected and should not receive requests.
+	 */
+	public boolean isEjected() {
+		return System.currentTimeMillis() < ejectedUntil;
+	}
+
+	void acquire() {
+		inFlight.incrementAndGet();
+	}
+
+	void release() {
+		inFlight.decrementAndGet();
+	}
+
+	synchronized void succeeded() {
+		consecutiveFailures = 0;
+	}
+
+	/**
+	 * Records a failure. Ejects the endpoint when consecutive failures reach the limit.
+	 */
+	synchronized void failed(final int maxFailures, final long ejectionTime) {
+		consecutiveFailures++;
+		if (consecutiveFailures >= maxFailures) {
+			consecutiveFailures = 0;
+			ejectedUntil = System.currentTimeMillis() + ejectionTime;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Endpoint{" + address + ", inFlight=" + inFlight.get() + (isEjected() ? ", ejected" : "") + '}';
+	}
+}
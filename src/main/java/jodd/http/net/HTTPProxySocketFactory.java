@@ -31,9 +31,8 @@ import jodd.http.Sockets;
 import jodd.util.Base64;
 
 import javax.net.SocketFactory;
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.Socket;
@@ -48,10 +47,19 @@ public class HTTPProxySocketFactory extends SocketFactory {
 
 	private final ProxyInfo proxy;
 	private final int connectionTimeout;
+	private final HostResolver hostResolver;
 
 	public HTTPProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout) {
+		this(proxy, connectionTimeout, HostResolver.SYSTEM);
+	}
+
+	/**
+	 * Creates socket factory that resolves the proxy host with the given resolver.
+	 */
+	public HTTPProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout, final HostResolver hostResolver) {
 		this.proxy = proxy;
 		this.connectionTimeout = connectionTimeout;
+		this.hostResolver = hostResolver;
 	}
 
 	@Override
@@ -85,7 +93,11 @@ public class HTTPProxySocketFactory extends SocketFactory {
 		final int proxyPort = proxy.getProxyPort();
 
 		try {
-			socket = Sockets.connect(proxyAddress, proxyPort, connectionTimeout);
+			socket = Sockets.connect(hostResolver, proxyAddress, proxyPort, connectionTimeout);
+			if (connectionTimeout > 0) {
+				// negotiation with the proxy is part of the connecting
+				socket.setSoTimeout(connectionTimeout);
+			}
 			final String hostport = host + ":" + port;
 			String proxyLine = "";
 			final String username = proxy.getProxyUsername();
@@ -105,38 +117,13 @@ public class HTTPProxySocketFactory extends SocketFactory {
                     ).getBytes(StandardCharsets.UTF_8)
             );
 
-			final InputStream in = socket.getInputStream();
-			final StringBuilder recv = new StringBuilder(100);
-			int nlchars = 0;
-
-            do {
-                final int i = in.read();
-                if (i == -1) {
-                    throw new HttpException(ProxyInfo.ProxyType.HTTP, "Invalid response");
-                }
-
-                final char c = (char) i;
-                recv.append(c);
-                if (recv.length() > 1024) {
-                    throw new HttpException(ProxyInfo.ProxyType.HTTP, "Received header longer then 1024 chars");
-                }
-                if ((nlchars == 0 || nlchars == 2) && c == '\r') {
-                    nlchars++;
-                } else if ((nlchars == 1 || nlchars == 3) && c == '\n') {
-                    nlchars++;
-                } else {
-                    nlchars = 0;
-                }
-            } while (nlchars != 4);
-
-			final String recvStr = recv.toString();
-
-			final BufferedReader br = new BufferedReader(new StringReader(recvStr));
-			final String response = br.readLine();
-
-			if (response == null) {
-				throw new HttpException(ProxyInfo.ProxyType.HTTP, "Empty proxy response");
-			}
+			final byte[] recv = new byte[MAX_RESPONSE_SIZE];
+			final int size = readResponse(socket.getInputStream(), recv);
+			final int headerEnd = indexOfHeaderEnd(recv, 0, size);
+
+			final String recvStr = new String(recv, 0, headerEnd, StandardCharsets.ISO_8859_1);
+			final int lineEnd = recvStr.indexOf('\r');
+			final String response = recvStr.substring(0, lineEnd);
 
 			final Matcher m = RESPONSE_PATTERN.matcher(response);
 			if (!m.matches()) {
@@ -148,7 +135,11 @@ public class HTTPProxySocketFactory extends SocketFactory {
 			if (code != HttpURLConnection.HTTP_OK) {
 				throw new HttpException(ProxyInfo.ProxyType.HTTP, "Invalid return status code: " + code);
 			}
+			if (headerEnd != size) {
+				throw new HttpException(ProxyInfo.ProxyType.HTTP, "Unexpected data after proxy response");
+			}
 
+			socket.setSoTimeout(0);
 			return socket;
 		} catch (final RuntimeException rtex) {
 			closeSocket(socket);
@@ -160,6 +151,45 @@ public class HTTPProxySocketFactory extends SocketFactory {
 
 	}
 
+	/**
+	 * Reads the proxy response header into the buffer, in blocks. Tunnel is silent
+	 * until the client sends its first bytes, so reading stops at the end of
+	 * the response header. Returns the number of bytes read.
+	 */
+	private int readResponse(final InputStream in, final byte[] buffer) throws IOException {
+		int size = 0;
+
+		while (true) {
+			final int read = in.read(buffer, size, buffer.length - size);
+			if (read == -1) {
+				throw new HttpException(ProxyInfo.ProxyType.HTTP, "Invalid response");
+			}
+
+			// continue the search where the previous one stopped
+			final int from = Math.max(0, size - 3);
+			size += read;
+
+			if (indexOfHeaderEnd(buffer, from, size) != -1) {
+				return size;
+			}
+			if (size == buffer.length) {
+				throw new HttpException(ProxyInfo.ProxyType.HTTP, "Received header longer then " + MAX_RESPONSE_SIZE + " bytes");
+			}
+		}
+	}
+
+	/**
+	 * Returns the index after the empty line that ends the header, or <code>-1</code> if not found.
+	 */
+	private static int indexOfHeaderEnd(final byte[] buffer, final int from, final int to) {
+		for (int i = from; i + 3 < to; i++) {
+			if (buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n') {
+				return i + 4;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Closes socket silently.
 	 */
@@ -172,6 +202,8 @@ public class HTTPProxySocketFactory extends SocketFactory {
 		}
 	}
 
+	private static final int MAX_RESPONSE_SIZE = 8192;
+
 	private static final Pattern RESPONSE_PATTERN =
 			Pattern.compile("HTTP/\\S+\\s(\\d+)\\s(.*)\\s*");
 }
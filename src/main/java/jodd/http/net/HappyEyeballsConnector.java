@@ -0,0 +1,256 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to the first responsive address of a host, "Happy Eyeballs" style
+ * (RFC 8305). Addresses are ordered so IPv6 and IPv4 addresses alternate.
+ * Connection attempts are started one after another, with the given delay
+ * between them; a failed attempt starts the next one immediately. The first
+ * connected socket wins, all other attempts are cancelled. A single
+ * unresponsive address therefore does not burn the whole connection timeout.
+ */
+public class HappyEyeballsConnector {
+
+	/**
+	 * Default delay between two connection attempts, as recommended by RFC 8305.
+	 */
+	public static final long DEFAULT_ATTEMPT_DELAY = 250;
+
+	private static class AttemptExecutor {
+		private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+			final Thread thread = new Thread(runnable, "jodd-http-connect");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static class Attempt {
+		private final Socket socket;
+		private final IOException exception;
+
+		private Attempt(final Socket socket, final IOException exception) {
+			this.socket = socket;
+			this.exception = exception;
+		}
+	}
+
+	private final SocketFactory socketFactory;
+	private final long attemptDelay;
+	private final SocketOptions socketOptions;
+
+	/**
+	 * Creates new connector. Sockets are created with the given socket factory.
+	 * Delay between two connection attempts is given in milliseconds.
+	 */
+	public HappyEyeballsConnector(final SocketFactory socketFactory, final long attemptDelay) {
+		this(socketFactory, attemptDelay, null);
+	}
+
+	/**
+	 * Creates new connector that applies socket options before connecting,
+	 * so buffer sizes take part in the TCP window scale negotiation.
+	 */
+	public HappyEyeballsConnector(final SocketFactory socketFactory, final long attemptDelay, final SocketOptions socketOptions) {
+		this.socketFactory = socketFactory;
+		this.attemptDelay = attemptDelay;
+		this.socketOptions = socketOptions;
+	}
+
+	/**
+	 * Connects to one of the addresses. Connection timeout applies to the
+	 * whole operation; zero or negative value means no timeout.
+	 */
+	public Socket connect(final InetAddress[] addresses, final int port, final int connectionTimeout) throws IOException {
+		if (addresses.length == 1) {
+			final Socket socket = socketFactory.createSocket();
+			try {
+				applySocketOptions(socket);
+				socket.connect(new InetSocketAddress(addresses[0], port), Math.max(connectionTimeout, 0));
+			}
+			catch (final IOException ioex) {
+				socket.close();
+				throw ioex;
+			}
+			return socket;
+		}
+
+		final InetAddress[] ordered = interleave(addresses);
+		final long deadline = connectionTimeout > 0 ? System.currentTimeMillis() + connectionTimeout : Long.MAX_VALUE;
+
+		final BlockingQueue<Attempt> attempts = new LinkedBlockingQueue<>();
+		final List<Socket> sockets = new ArrayList<>(ordered.length);
+
+		IOException failure = null;
+		int started = 0;
+		int finished = 0;
+		Socket winner = null;
+
+		try {
+			while (winner == null) {
+				final long now = System.currentTimeMillis();
+				if (now >= deadline) {
+					break;
+				}
+
+				if (started < ordered.length && finished == started) {
+					// nothing pending, start next attempt immediately
+					start(ordered[started++], port, deadline, sockets, attempts);
+					continue;
+				}
+
+				final long wait = started < ordered.length ? Math.min(attemptDelay, deadline - now) : deadline - now;
+				final Attempt attempt = attempts.poll(wait, TimeUnit.MILLISECONDS);
+
+				if (attempt == null) {
+					if (started < ordered.length && System.currentTimeMillis() < deadline) {
+						start(ordered[started++], port, deadline, sockets, attempts);
+					}
+					continue;
+				}
+
+				finished++;
+
+				if (attempt.socket != null) {
+					winner = attempt.socket;
+				}
+				else {
+					if (failure == null) {
+						failure = attempt.exception;
+					}
+					else {
+						failure.addSuppressed(attempt.exception);
+					}
+					if (finished == ordered.length) {
+						throw failure;
+					}
+				}
+			}
+		}
+		catch (final InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			failure = new IOException("Connect interrupted", iex);
+		}
+		finally {
+			// cancel all other attempts
+			for (final Socket socket : sockets) {
+				if (socket != winner) {
+					try {
+						socket.close();
+					}
+					catch (final IOException ignore) {
+					}
+				}
+			}
+		}
+
+		if (winner != null) {
+			return winner;
+		}
+		if (failure != null && started == finished) {
+			throw failure;
+		}
+		final SocketTimeoutException stex = new SocketTimeoutException("Connect timed out");
+		if (failure != null) {
+			stex.addSuppressed(failure);
+		}
+		throw stex;
+	}
+
+	private void start(
+			final InetAddress address, final int port, final long deadline,
+			final List<Socket> sockets, final BlockingQueue<Attempt> attempts) throws IOException {
+
+		final Socket socket = socketFactory.createSocket();
+		sockets.add(socket);
+		applySocketOptions(socket);
+
+		final long timeout = deadline == Long.MAX_VALUE ? 0 : Math.max(deadline - System.currentTimeMillis(), 1);
+
+		AttemptExecutor.EXECUTOR.execute(() -> {
+			try {
+				socket.connect(new InetSocketAddress(address, port), (int) Math.min(timeout, Integer.MAX_VALUE));
+				attempts.add(new Attempt(socket, null));
+			}
+			catch (final IOException ioex) {
+				attempts.add(new Attempt(null, ioex));
+			}
+		});
+	}
+
+	private void applySocketOptions(final Socket socket) throws IOException {
+		if (socketOptions != null) {
+			socketOptions.apply(socket);
+		}
+	}
+
+	/**
+	 * Orders addresses so address families alternate, starting with
+	 * the family of the first address. Order within the family is kept.
+	 */
+	static InetAddress[] interleave(final InetAddress[] addresses) {
+		final List<InetAddress> first = new ArrayList<>();
+		final List<InetAddress> second = new ArrayList<>();
+
+		final boolean ipv6First = addresses[0] instanceof Inet6Address;
+
+		for (final InetAddress address : addresses) {
+			if ((address instanceof Inet6Address) == ipv6First) {
+				first.add(address);
+			}
+			else {
+				second.add(address);
+			}
+		}
+
+		final InetAddress[] result = new InetAddress[addresses.length];
+		int ndx = 0;
+		for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+			if (i < first.size()) {
+				result[ndx++] = first.get(i);
+			}
+			if (i < second.size()) {
+				result[ndx++] = second.get(i);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,324 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * HPACK (RFC 7541) primitives shared by {@link HpackEncoder} and {@link HpackDecoder}:
+ * the static table, integer and string representations and the Huffman code.
+ */
+final class Hpack {
+
+	private Hpack() {
+	}
+
+	/**
+	 * Static table; entry at index <code>i</code> has HPACK index <code>i + 1</code>.
+	 */
+	static final String[][] STATIC_TABLE = {
+		{":authority", ""},
+		{":method", "GET"},
+		{":method", "POST"},
+		{":path", "/"},
+		{":path", "/index.html"},
+		{":scheme", "http"},
+		{":scheme", "https"},
+		{":status", "200"},
+		{":status", "204"},
+		{":status", "206"},
+		{":status", "304"},
+		{":status", "400"},
+		{":status", "404"},
+		{":status", "500"},
+		{"accept-charset", ""},
+		{"accept-encoding", "gzip, deflate"},
+		{"accept-language", ""},
+		{"accept-ranges", ""},
+		{"accept", ""},
+		{"access-control-allow-origin", ""},
+		{"age", ""},
+		{"allow", ""},
+		{"authorization", ""},
+		{"cache-control", ""},
+		{"content-disposition", ""},
+		{"content-encoding", ""},
+		{"content-language", ""},
+		{"content-length", ""},
+		{"content-location", ""},
+		{"content-range", ""},
+		{"content-type", ""},
+		{"cookie", ""},
+		{"date", ""},
+		{"etag", ""},
+		{"expect", ""},
+		{"expires", ""},
+		{"from", ""},
+		{"host", ""},
+		{"if-match", ""},
+		{"if-modified-since", ""},
+		{"if-none-match", ""},
+		{"if-range", ""},
+		{"if-unmodified-since", ""},
+		{"last-modified", ""},
+		{"link", ""},
+		{"location", ""},
+		{"max-forwards", ""},
+		{"proxy-authenticate", ""},
+		{"proxy-authorization", ""},
+		{"range", ""},
+		{"referer", ""},
+		{"refresh", ""},
+		{"retry-after", ""},
+		{"server", ""},
+		{"set-cookie", ""},
+		{"strict-transport-security", ""},
+		{"transfer-encoding", ""},
+		{"user-agent", ""},
+		{"vary", ""},
+		{"via", ""},
+		{"www-authenticate", ""},
+	};
+
+	// ---------------------------------------------------------------- integers
+
+	/**
+	 * Writes integer with N-bit prefix. Flags are the bits of the first byte above the prefix.
+	 */
+	static void writeInt(final ByteArrayOutputStream out, final int flags, final int prefixBits, int value) {
+		final int max = (1 << prefixBits) - 1;
+
+		if (value < max) {
+			out.write(flags | value);
+			return;
+		}
+
+		out.write(flags | max);
+		value -= max;
+
+		while (value >= 0x80) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads integer with N-bit prefix, starting at the given position.
+	 * Returns the value and stores the next position in <code>position[0]</code>.
+	 */
+	static int readInt(final byte[] data, final int[] position, final int limit, final int prefixBits) throws IOException {
+		final int max = (1 << prefixBits) - 1;
+		int value = data[position[0]++] & max;
+
+		if (value < max) {
+			return value;
+		}
+
+		int shift = 0;
+		while (true) {
+			if (position[0] >= limit) {
+				throw new IOException("HPACK: truncated integer");
+			}
+			final int b = data[position[0]++] & 0xFF;
+			if (shift > 21) {
+				throw new IOException("HPACK: integer overflow");
+			}
+			value += (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	// ---------------------------------------------------------------- strings
+
+	/**
+	 * Writes string literal, Huffman encoded when that is shorter.
+	 */
+	static void writeString(final ByteArrayOutputStream out, final String value) {
+		final int length = value.length();
+
+		long bits = 0;
+		for (int i = 0; i < length; i++) {
+			bits += HUFFMAN_LENGTHS[value.charAt(i) & 0xFF];
+		}
+		final int huffmanLength = (int) ((bits + 7) / 8);
+
+		if (huffmanLength >= length) {
+			writeInt(out, 0, 7, length);
+			for (int i = 0; i < length; i++) {
+				out.write(value.charAt(i));
+			}
+			return;
+		}
+
+		writeInt(out, 0x80, 7, huffmanLength);
+
+		long buffer = 0;
+		int buffered = 0;
+
+		for (int i = 0; i < length; i++) {
+			final int symbol = value.charAt(i) & 0xFF;
+			buffer = (buffer << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+			buffered += HUFFMAN_LENGTHS[symbol];
+
+			while (buffered >= 8) {
+				buffered -= 8;
+				out.write((int) (buffer >>> buffered));
+			}
+		}
+		if (buffered > 0) {
+			// padded with the most significant bits of EOS
+			out.write((int) ((buffer << (8 - buffered)) | (0xFF >>> buffered)));
+		}
+	}
+
+	/**
+	 * Reads string literal. Bytes are mapped to characters 1:1.
+	 */
+	static String readString(final byte[] data, final int[] position, final int limit) throws IOException {
+		if (position[0] >= limit) {
+			throw new IOException("HPACK: truncated string");
+		}
+		final boolean huffman = (data[position[0]] & 0x80) != 0;
+		final int length = readInt(data, position, limit, 7);
+
+		if (length > limit - position[0]) {
+			throw new IOException("HPACK: truncated string");
+		}
+
+		final int start = position[0];
+		position[0] += length;
+
+		if (!huffman) {
+			final char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (data[start + i] & 0xFF);
+			}
+			return new String(chars);
+		}
+
+		return huffmanDecode(data, start, length);
+	}
+
+	// ---------------------------------------------------------------- huffman
+
+	/**
+	 * Code lengths of the Huffman code, for symbols 0-255 and EOS. The code is
+	 * canonical, so the codes are assigned from the lengths.
+	 */
+	private static final int[] HUFFMAN_LENGTHS = {
+		13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+		28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+		6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+		5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+		13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+		7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+		15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+		6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+		20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+		24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+		22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+		21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+		26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+		19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+		20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+		26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+		30
+	};
+
+	private static final int EOS = 256;
+	private static final int MAX_LENGTH = 30;
+
+	private static final int[] HUFFMAN_CODES = new int[257];
+	private static final int[] SYMBOLS = new int[257];
+	private static final int[] FIRST_CODE = new int[MAX_LENGTH + 1];
+	private static final int[] FIRST_SYMBOL = new int[MAX_LENGTH + 1];
+	private static final int[] COUNT = new int[MAX_LENGTH + 1];
+
+	static {
+		int index = 0;
+		for (int length = 1; length <= MAX_LENGTH; length++) {
+			FIRST_SYMBOL[length] = index;
+			for (int symbol = 0; symbol <= EOS; symbol++) {
+				if (HUFFMAN_LENGTHS[symbol] == length) {
+					SYMBOLS[index++] = symbol;
+					COUNT[length]++;
+				}
+			}
+		}
+
+		int code = 0;
+		for (int length = 1; length <= MAX_LENGTH; length++) {
+			FIRST_CODE[length] = code;
+			for (int i = 0; i < COUNT[length]; i++) {
+				HUFFMAN_CODES[SYMBOLS[FIRST_SYMBOL[length] + i]] = code++;
+			}
+			code <<= 1;
+		}
+	}
+
+	private static String huffmanDecode(final byte[] data, final int offset, final int length) throws IOException {
+		final StringBuilder sb = new StringBuilder(length * 8 / 5);
+
+		int code = 0;
+		int codeLength = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			final int b = data[i] & 0xFF;
+
+			for (int bit = 7; bit >= 0; bit--) {
+				code = (code << 1) | ((b >>> bit) & 1);
+				codeLength++;
+
+				final int delta = code - FIRST_CODE[codeLength];
+
+				if (delta >= 0 && delta < COUNT[codeLength]) {
+					final int symbol = SYMBOLS[FIRST_SYMBOL[codeLength] + delta];
+					if (symbol == EOS) {
+						throw new IOException("HPACK: EOS in Huffman string");
+					}
+					sb.append((char) symbol);
+					code = 0;
+					codeLength = 0;
+				}
+				else if (codeLength == MAX_LENGTH) {
+					throw new IOException("HPACK: invalid Huffman code");
+				}
+			}
+		}
+
+		// padding must be shorter than a byte and consist of ones
+		if (codeLength > 7 || code != (1 << codeLength) - 1) {
+			throw new IOException("HPACK: invalid Huffman padding");
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,151 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HPACK header block decoder (RFC 7541). Decoder is stateful: it maintains
+ * the dynamic table, so all header blocks received on a connection must be
+ * decoded by the same decoder, in order. Not thread-safe.
+ */
+public class HpackDecoder {
+
+	private static final int ENTRY_OVERHEAD = 32;
+
+	private final LinkedList<String[]> dynamicTable = new LinkedList<>();
+	private final int maxTableSizeLimit;
+	private int maxTableSize;
+	private int tableSize;
+
+	/**
+	 * Creates decoder with the default table size of 4096 bytes.
+	 */
+	public HpackDecoder() {
+		this(4096);
+	}
+
+	/**
+	 * Creates decoder with the table size limit, as advertised to the encoder.
+	 */
+	public HpackDecoder(final int maxTableSize) {
+		this.maxTableSizeLimit = maxTableSize;
+		this.maxTableSize = maxTableSize;
+	}
+
+	/**
+	 * Decodes a complete header block into the list of header fields.
+	 * Throws <code>IOException</code> on compression error; in that case
+	 * the connection must be closed.
+	 */
+	public List<Map.Entry<String, String>> decode(final byte[] data, final int offset, final int length) throws IOException {
+		final List<Map.Entry<String, String>> headers = new ArrayList<>();
+		final int limit = offset + length;
+		final int[] position = {offset};
+
+		while (position[0] < limit) {
+			final int b = data[position[0]] & 0xFF;
+
+			if ((b & 0x80) != 0) {
+				// indexed header field
+				final String[] entry = entry(Hpack.readInt(data, position, limit, 7));
+				headers.add(new AbstractMap.SimpleImmutableEntry<>(entry[0], entry[1]));
+			}
+			else if ((b & 0x40) != 0) {
+				// literal header field with incremental indexing
+				final String[] field = readLiteral(data, position, limit, 6);
+				add(field);
+				headers.add(new AbstractMap.SimpleImmutableEntry<>(field[0], field[1]));
+			}
+			else if ((b & 0x20) != 0) {
+				// dynamic table size update
+				final int size = Hpack.readInt(data, position, limit, 5);
+				if (size > maxTableSizeLimit) {
+					throw new IOException("HPACK: table size update over the limit: " + size);
+				}
+				maxTableSize = size;
+				evict();
+			}
+			else {
+				// literal header field without indexing, or never indexed
+				final String[] field = readLiteral(data, position, limit, 4);
+				headers.add(new AbstractMap.SimpleImmutableEntry<>(field[0], field[1]));
+			}
+		}
+
+		return headers;
+	}
+
+	private String[] readLiteral(final byte[] data, final int[] position, final int limit, final int prefixBits) throws IOException {
+		final int index = Hpack.readInt(data, position, limit, prefixBits);
+
+		final String name = index == 0 ? Hpack.readString(data, position, limit) : entry(index)[0];
+		final String value = Hpack.readString(data, position, limit);
+
+		return new String[] {name, value};
+	}
+
+	private String[] entry(final int index) throws IOException {
+		if (index <= 0) {
+			throw new IOException("HPACK: invalid index: " + index);
+		}
+		if (index <= Hpack.STATIC_TABLE.length) {
+			return Hpack.STATIC_TABLE[index - 1];
+		}
+		final int dynamicIndex = index - Hpack.STATIC_TABLE.length - 1;
+		if (dynamicIndex >= dynamicTable.size()) {
+			throw new IOException("HPACK: invalid index: " + index);
+		}
+		return dynamicTable.get(dynamicIndex);
+	}
+
+	private void add(final String[] field) {
+		final int size = field[0].length() + field[1].length() + ENTRY_OVERHEAD;
+
+		if (size > maxTableSize) {
+			// entry larger than the table empties the table
+			dynamicTable.clear();
+			tableSize = 0;
+			return;
+		}
+
+		dynamicTable.addFirst(field);
+		tableSize += size;
+		evict();
+	}
+
+	private void evict() {
+		while (tableSize > maxTableSize) {
+			final String[] evicted = dynamicTable.removeLast();
+			tableSize -= evicted[0].length() + evicted[1].length() + ENTRY_OVERHEAD;
+		}
+	}
+}
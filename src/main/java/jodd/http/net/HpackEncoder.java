@@ -0,0 +1,97 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HPACK header block encoder (RFC 7541). Header fields are encoded as
+ * literals that are never added to the dynamic table, so the encoder is
+ * stateless and thread-safe. Names and values found in the static table
+ * are referenced by index; strings are Huffman encoded when that is shorter.
+ * Credentials are encoded as never-indexed literals.
+ */
+public class HpackEncoder {
+
+	/**
+	 * Encodes header fields into a header block. Names must be in lowercase.
+	 */
+	public byte[] encode(final List<Map.Entry<String, String>> headers) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(headers.size() * 32);
+
+		for (final Map.Entry<String, String> header : headers) {
+			encode(out, header.getKey(), header.getValue());
+		}
+
+		return out.toByteArray();
+	}
+
+	protected void encode(final ByteArrayOutputStream out, final String name, final String value) {
+		int nameIndex = 0;
+
+		for (int i = 0; i < Hpack.STATIC_TABLE.length; i++) {
+			final String[] entry = Hpack.STATIC_TABLE[i];
+			if (!entry[0].equals(name)) {
+				continue;
+			}
+			if (entry[1].equals(value)) {
+				// indexed header field
+				Hpack.writeInt(out, 0x80, 7, i + 1);
+				return;
+			}
+			if (nameIndex == 0) {
+				nameIndex = i + 1;
+			}
+		}
+
+		// literal header field without indexing, or never indexed
+		final int flags = isSensitive(name) ? 0x10 : 0x00;
+
+		Hpack.writeInt(out, flags, 4, nameIndex);
+		if (nameIndex == 0) {
+			Hpack.writeString(out, name);
+		}
+		Hpack.writeString(out, value);
+	}
+
+	/**
+	 * Returns <code>true</code> for headers that intermediaries must never index.
+	 */
+	protected boolean isSensitive(final String name) {
+		switch (name.toLowerCase(Locale.ROOT)) {
+			case "authorization":
+			case "proxy-authorization":
+			case "cookie":
+			case "set-cookie":
+				return true;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,926 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/2 connection (RFC 7540) over a connected socket. Requests are sent
+ * as streams that are multiplexed over the connection. Frames are read by
+ * a daemon thread that dispatches them to the streams; frames are written
+ * by the threads that use the streams. Flow control is applied in both
+ * directions: stream data is sent only within the windows granted by the
+ * server, and received data is acknowledged once it is consumed.
+ */
+class Http2Connection {
+
+	private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	static final int TYPE_DATA = 0x0;
+	static final int TYPE_HEADERS = 0x1;
+	static final int TYPE_RST_STREAM = 0x3;
+	static final int TYPE_SETTINGS = 0x4;
+	static final int TYPE_PUSH_PROMISE = 0x5;
+	static final int TYPE_PING = 0x6;
+	static final int TYPE_GOAWAY = 0x7;
+	static final int TYPE_WINDOW_UPDATE = 0x8;
+	static final int TYPE_CONTINUATION = 0x9;
+
+	static final int FLAG_END_STREAM = 0x1;
+	static final int FLAG_ACK = 0x1;
+	static final int FLAG_END_HEADERS = 0x4;
+	static final int FLAG_PADDED = 0x8;
+	static final int FLAG_PRIORITY = 0x20;
+
+	static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	static final int SETTINGS_ENABLE_PUSH = 0x2;
+	static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+	static final int ERROR_NO_ERROR = 0x0;
+	static final int ERROR_PROTOCOL_ERROR = 0x1;
+	static final int ERROR_FLOW_CONTROL_ERROR = 0x3;
+	static final int ERROR_FRAME_SIZE_ERROR = 0x6;
+	static final int ERROR_REFUSED_STREAM = 0x7;
+	static final int ERROR_CANCEL = 0x8;
+	static final int ERROR_COMPRESSION_ERROR = 0x9;
+
+	private static final int DEFAULT_WINDOW_SIZE = 65535;
+	private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private final String scheme;
+	private final int streamWindowSize;
+	private final int connectionWindowSize;
+
+	private final HpackEncoder hpackEncoder = new HpackEncoder();
+	private final HpackDecoder hpackDecoder = new HpackDecoder();
+	private final Object writeLock = new Object();
+
+	// state guarded by this
+	private final Map<Integer, Stream> streams = new HashMap<>();
+	private int nextStreamId = 1;
+	private int activeStreams;
+	private int usedStreams;
+	private int maxConcurrentStreams = 100;
+	private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+	private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+	private int connectionUnacknowledged;
+	private final List<int[]> pendingWindowUpdates = new ArrayList<>();
+	private int goAwayErrorCode = -1;
+	private boolean goAway;
+	private IOException failure;
+
+	/**
+	 * Creates HTTP/2 connection over the connected socket and sends the connection preface.
+	 * @param scheme scheme of the requests, "http" or "https"
+	 * @param streamWindowSize receive window of each stream
+	 * @param connectionWindowSize receive window of the connection
+	 */
+	Http2Connection(final Socket socket, final String scheme, final int streamWindowSize, final int connectionWindowSize) throws IOException {
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), DEFAULT_MAX_FRAME_SIZE + 9);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), DEFAULT_MAX_FRAME_SIZE + 9);
+		this.scheme = scheme;
+		this.streamWindowSize = streamWindowSize;
+		this.connectionWindowSize = connectionWindowSize;
+
+		socket.setSoTimeout(0);
+
+		synchronized (writeLock) {
+			out.write(PREFACE);
+
+			final byte[] settings = new byte[12];
+			putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+			putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, streamWindowSize);
+			writeFrame(TYPE_SETTINGS, 0, 0, settings, 0, settings.length);
+
+			if (connectionWindowSize > DEFAULT_WINDOW_SIZE) {
+				writeWindowUpdate(0, connectionWindowSize - DEFAULT_WINDOW_SIZE);
+			}
+			out.flush();
+		}
+
+		final Thread thread = new Thread(this::readLoop, "jodd-http2-" + THREAD_COUNTER.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the scheme of the requests sent over this connection.
+	 */
+	String scheme() {
+		return scheme;
+	}
+
+	/**
+	 * Reserves a new stream. Returns <code>null</code> if connection is closed,
+	 * going away, or the max number of concurrent streams is reached.
+	 */
+	synchronized Stream reserveStream() {
+		if (failure != null || goAway || activeStreams >= maxConcurrentStreams || nextStreamId < 0) {
+			return null;
+		}
+		activeStreams++;
+		return new Stream(usedStreams++ > 0);
+	}
+
+	/**
+	 * Returns <code>true</code> if connection can not be used for new streams.
+	 */
+	synchronized boolean isClosing() {
+		return failure != null || goAway || nextStreamId < 0;
+	}
+
+	/**
+	 * Returns the number of streams that are not closed yet.
+	 */
+	synchronized int activeStreams() {
+		return activeStreams;
+	}
+
+	/**
+	 * Closes the connection and fails all the streams.
+	 */
+	void close() {
+		synchronized (this) {
+			if (failure == null) {
+				goAway = true;
+			}
+		}
+		writeGoAway(ERROR_NO_ERROR);
+		fail(new IOException("HTTP/2 connection closed"));
+	}
+
+	// ---------------------------------------------------------------- stream
+
+	/**
+	 * Single HTTP/2 stream. Received headers and data are queued
+	 * until they are taken by the stream consumer.
+	 */
+	class Stream {
+		private final boolean reused;
+		private int id;
+		private long sendWindow;
+		private final ArrayDeque<Object> incoming = new ArrayDeque<>();
+		private boolean remoteClosed;
+		private boolean localClosed;
+		private boolean reset;
+		private boolean removed;
+		private IOException error;
+		private int unacknowledged;
+		private int buffered;
+
+		private Stream(final boolean reused) {
+			this.reused = reused;
+		}
+
+		/**
+		 * Returns <code>true</code> if the connection was used by some previous stream.
+		 */
+		boolean isReused() {
+			return reused;
+		}
+
+		/**
+		 * Returns the max size of the data frame.
+		 */
+		int maxFrameSize() {
+			synchronized (Http2Connection.this) {
+				return peerMaxFrameSize;
+			}
+		}
+
+		/**
+		 * Sends the request headers and opens the stream.
+		 */
+		void sendHeaders(final List<Map.Entry<String, String>> headers, final boolean endStream) throws IOException {
+			final byte[] block = hpackEncoder.encode(headers);
+
+			synchronized (writeLock) {
+				synchronized (Http2Connection.this) {
+					checkOpen();
+					if (nextStreamId < 0) {
+						throw new IOException("HTTP/2 stream identifiers exhausted");
+					}
+					id = nextStreamId;
+					nextStreamId += 2;
+					sendWindow = peerInitialWindowSize;
+					streams.put(id, this);
+				}
+
+				final int maxFrameSize = maxFrameSize();
+				int offset = 0;
+				int type = TYPE_HEADERS;
+
+				do {
+					final int length = Math.min(maxFrameSize, block.length - offset);
+					int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+					if (endStream && type == TYPE_HEADERS) {
+						flags |= FLAG_END_STREAM;
+					}
+					writeFrame(type, flags, id, block, offset, length);
+					offset += length;
+					type = TYPE_CONTINUATION;
+				}
+				while (offset < block.length);
+
+				out.flush();
+			}
+			if (endStream) {
+				endLocal();
+			}
+		}
+
+		/**
+		 * Sends the data, waiting for the flow control windows. Data is split into frames.
+		 */
+		void sendData(final byte[] data, int offset, int length, final boolean endStream, final int timeout) throws IOException {
+			do {
+				final int chunk;
+
+				synchronized (Http2Connection.this) {
+					final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+					while (length > 0 && (connectionSendWindow <= 0 || sendWindow <= 0)) {
+						checkOpen();
+						waitUntil(deadline, "Timeout waiting for HTTP/2 flow control window");
+					}
+					checkOpen();
+
+					chunk = (int) Math.min(length, Math.min(peerMaxFrameSize, Math.min(connectionSendWindow, sendWindow)));
+					connectionSendWindow -= chunk;
+					sendWindow -= chunk;
+				}
+
+				final boolean last = chunk == length && endStream;
+
+				synchronized (writeLock) {
+					writeFrame(TYPE_DATA, last ? FLAG_END_STREAM : 0, id, data, offset, chunk);
+					out.flush();
+				}
+
+				offset += chunk;
+				length -= chunk;
+			}
+			while (length > 0);
+
+			if (endStream) {
+				endLocal();
+			}
+		}
+
+		/**
+		 * Takes the next received item: headers, as a list of fields, or data, as a byte array.
+		 * Returns <code>null</code> when stream is ended by the server.
+		 */
+		Object take(final int timeout) throws IOException {
+			final Object item = nextItem(timeout);
+			flushWindowUpdates();
+			return item;
+		}
+
+		private Object nextItem(final int timeout) throws IOException {
+			synchronized (Http2Connection.this) {
+				final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+				while (incoming.isEmpty()) {
+					if (error != null) {
+						throw error;
+					}
+					if (remoteClosed) {
+						return null;
+					}
+					waitUntil(deadline, "Read timed out");
+				}
+
+				final Object item = incoming.removeFirst();
+
+				if (item instanceof byte[]) {
+					final int length = ((byte[]) item).length;
+					buffered -= length;
+					consumed(length);
+				}
+				return item;
+			}
+		}
+
+		/**
+		 * Acknowledges consumed data. Invoked under connection lock.
+		 */
+		private void consumed(final int length) {
+			unacknowledged += length;
+			connectionUnacknowledged += length;
+
+			final int streamIncrement = !remoteClosed && unacknowledged >= streamWindowSize / 2 ? unacknowledged : 0;
+			if (streamIncrement > 0) {
+				unacknowledged = 0;
+			}
+
+			final int connectionIncrement = connectionUnacknowledged >= connectionWindowSize / 2 ? connectionUnacknowledged : 0;
+			if (connectionIncrement > 0) {
+				connectionUnacknowledged = 0;
+			}
+
+			if (streamIncrement > 0 || connectionIncrement > 0) {
+				writeWindowUpdatesLater(streamIncrement > 0 ? id : 0, streamIncrement, connectionIncrement);
+			}
+		}
+
+		/**
+		 * Closes the stream. Stream that is not complete is reset.
+		 */
+		void close() {
+			final boolean cancel;
+
+			synchronized (Http2Connection.this) {
+				if (reset) {
+					return;
+				}
+				reset = true;
+				cancel = id > 0 && error == null && (!remoteClosed || !localClosed);
+
+				if (buffered > 0) {
+					// discarded data is acknowledged to the connection
+					consumed(buffered);
+					buffered = 0;
+				}
+				incoming.clear();
+				remove();
+			}
+
+			flushWindowUpdates();
+
+			if (cancel) {
+				try {
+					writeRstStream(id, ERROR_CANCEL);
+				}
+				catch (final IOException ignore) {
+				}
+			}
+		}
+
+		/**
+		 * Removes the stream from the connection. Invoked under connection lock.
+		 */
+		private void remove() {
+			if (removed) {
+				return;
+			}
+			removed = true;
+			if (id != 0) {
+				streams.remove(id);
+			}
+			activeStreams--;
+			Http2Connection.this.notifyAll();
+		}
+
+		/**
+		 * Marks the local side as closed, after the end of the stream is sent.
+		 */
+		private void endLocal() {
+			synchronized (Http2Connection.this) {
+				localClosed = true;
+				if (remoteClosed) {
+					remove();
+				}
+			}
+		}
+
+		private void checkOpen() throws IOException {
+			if (error != null) {
+				throw error;
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			if (reset) {
+				throw new IOException("HTTP/2 stream closed");
+			}
+		}
+	}
+
+	/**
+	 * Waits on connection lock, until the deadline.
+	 */
+	private void waitUntil(final long deadline, final String timeoutMessage) throws IOException {
+		try {
+			if (deadline == 0) {
+				wait();
+				return;
+			}
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new SocketTimeoutException(timeoutMessage);
+			}
+			wait(remaining);
+		}
+		catch (final InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", iex);
+		}
+	}
+
+	// ---------------------------------------------------------------- read
+
+	private void readLoop() {
+		final byte[] header = new byte[9];
+
+		try {
+			while (true) {
+				readFully(header, 9);
+
+				final int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+				final int type = header[3] & 0xFF;
+				final int flags = header[4] & 0xFF;
+				final int streamId = getInt(header, 5) & 0x7FFFFFFF;
+
+				if (length > DEFAULT_MAX_FRAME_SIZE) {
+					throw protocolError(ERROR_FRAME_SIZE_ERROR, "Frame too large: " + length);
+				}
+
+				final byte[] payload = new byte[length];
+				readFully(payload, length);
+
+				switch (type) {
+					case TYPE_DATA:
+						onData(streamId, flags, payload);
+						break;
+					case TYPE_HEADERS:
+						onHeaders(streamId, flags, payload, header);
+						break;
+					case TYPE_RST_STREAM:
+						onRstStream(streamId, payload);
+						break;
+					case TYPE_SETTINGS:
+						onSettings(flags, payload);
+						break;
+					case TYPE_PUSH_PROMISE:
+						throw protocolError(ERROR_PROTOCOL_ERROR, "Push is disabled");
+					case TYPE_PING:
+						onPing(flags, payload);
+						break;
+					case TYPE_GOAWAY:
+						onGoAway(payload);
+						break;
+					case TYPE_WINDOW_UPDATE:
+						onWindowUpdate(streamId, payload);
+						break;
+					case TYPE_CONTINUATION:
+						throw protocolError(ERROR_PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+					default:
+						// priority frames and unknown frame types are ignored
+				}
+
+				flushWindowUpdates();
+			}
+		}
+		catch (final IOException ioex) {
+			final int errorCode;
+			synchronized (this) {
+				errorCode = goAwayErrorCode;
+			}
+			if (errorCode != -1) {
+				writeGoAway(errorCode);
+			}
+			fail(ioex);
+		}
+		catch (final RuntimeException rex) {
+			fail(new IOException(rex));
+		}
+	}
+
+	private void onData(final int streamId, final int flags, final byte[] payload) throws IOException {
+		final int padding = padding(flags, payload, 0);
+		final int offset = (flags & FLAG_PADDED) != 0 ? 1 : 0;
+		final int length = payload.length - offset - padding;
+
+		synchronized (this) {
+			final Stream stream = streams.get(streamId);
+
+			if (stream == null || stream.remoteClosed) {
+				// stream is gone, but the connection window is consumed
+				unacknowledgedForConnection(payload.length);
+				return;
+			}
+
+			// padding is acknowledged right away
+			if (payload.length > length) {
+				stream.consumed(payload.length - length);
+			}
+			if (length > 0) {
+				final byte[] data = new byte[length];
+				System.arraycopy(payload, offset, data, 0, length);
+				stream.incoming.addLast(data);
+				stream.buffered += length;
+			}
+			if ((flags & FLAG_END_STREAM) != 0) {
+				endRemote(stream);
+			}
+			notifyAll();
+		}
+	}
+
+	private void onHeaders(final int streamId, int flags, final byte[] payload, final byte[] header) throws IOException {
+		int offset = (flags & FLAG_PADDED) != 0 ? 1 : 0;
+		final int padding = padding(flags, payload, 0);
+		if ((flags & FLAG_PRIORITY) != 0) {
+			offset += 5;
+		}
+		if (offset + padding > payload.length) {
+			throw protocolError(ERROR_PROTOCOL_ERROR, "Invalid HEADERS frame");
+		}
+
+		final ByteArrayOutputStream block = new ByteArrayOutputStream(payload.length);
+		block.write(payload, offset, payload.length - offset - padding);
+
+		final boolean endStream = (flags & FLAG_END_STREAM) != 0;
+
+		while ((flags & FLAG_END_HEADERS) == 0) {
+			readFully(header, 9);
+			final int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+			if ((header[3] & 0xFF) != TYPE_CONTINUATION || (getInt(header, 5) & 0x7FFFFFFF) != streamId) {
+				throw protocolError(ERROR_PROTOCOL_ERROR, "Expected CONTINUATION frame");
+			}
+			if (length > DEFAULT_MAX_FRAME_SIZE) {
+				throw protocolError(ERROR_FRAME_SIZE_ERROR, "Frame too large: " + length);
+			}
+			flags = header[4] & 0xFF;
+			final byte[] continuation = new byte[length];
+			readFully(continuation, length);
+			block.write(continuation, 0, length);
+		}
+
+		// header block is always decoded, to keep the dynamic table in sync
+		final byte[] bytes = block.toByteArray();
+		final List<Map.Entry<String, String>> fields;
+		try {
+			fields = hpackDecoder.decode(bytes, 0, bytes.length);
+		}
+		catch (final IOException ioex) {
+			throw protocolError(ERROR_COMPRESSION_ERROR, ioex.getMessage());
+		}
+
+		synchronized (this) {
+			final Stream stream = streams.get(streamId);
+			if (stream == null || stream.remoteClosed) {
+				return;
+			}
+			stream.incoming.addLast(new ArrayList<>(fields));
+			if (endStream) {
+				endRemote(stream);
+			}
+			notifyAll();
+		}
+	}
+
+	private void onRstStream(final int streamId, final byte[] payload) throws IOException {
+		if (payload.length != 4) {
+			throw protocolError(ERROR_FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+		}
+		final int errorCode = getInt(payload, 0);
+
+		synchronized (this) {
+			final Stream stream = streams.get(streamId);
+			if (stream == null) {
+				return;
+			}
+			stream.error = errorCode == ERROR_REFUSED_STREAM
+				? new IOException("HTTP/2 stream refused")
+				: new IOException("HTTP/2 stream reset, error code: " + errorCode);
+			stream.reset = true;
+			if (stream.buffered > 0) {
+				stream.consumed(stream.buffered);
+				stream.buffered = 0;
+			}
+			stream.incoming.clear();
+			stream.remove();
+		}
+	}
+
+	private void onSettings(final int flags, final byte[] payload) throws IOException {
+		if ((flags & FLAG_ACK) != 0) {
+			return;
+		}
+		if (payload.length % 6 != 0) {
+			throw protocolError(ERROR_FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+		}
+
+		synchronized (this) {
+			for (int i = 0; i < payload.length; i += 6) {
+				final int id = ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+				final int value = getInt(payload, i + 2);
+
+				switch (id) {
+					case SETTINGS_MAX_CONCURRENT_STREAMS:
+						maxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+						break;
+					case SETTINGS_INITIAL_WINDOW_SIZE:
+						if (value < 0) {
+							throw protocolError(ERROR_FLOW_CONTROL_ERROR, "Invalid initial window size");
+						}
+						final int delta = value - peerInitialWindowSize;
+						peerInitialWindowSize = value;
+						for (final Stream stream : streams.values()) {
+							stream.sendWindow += delta;
+						}
+						break;
+					case SETTINGS_MAX_FRAME_SIZE:
+						if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xFFFFFF) {
+							throw protocolError(ERROR_PROTOCOL_ERROR, "Invalid max frame size");
+						}
+						peerMaxFrameSize = value;
+						break;
+					default:
+						// header table size is not used, as encoder does not index
+				}
+			}
+			notifyAll();
+		}
+
+		synchronized (writeLock) {
+			writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+			out.flush();
+		}
+	}
+
+	private void onPing(final int flags, final byte[] payload) throws IOException {
+		if (payload.length != 8) {
+			throw protocolError(ERROR_FRAME_SIZE_ERROR, "Invalid PING frame");
+		}
+		if ((flags & FLAG_ACK) != 0) {
+			return;
+		}
+		synchronized (writeLock) {
+			writeFrame(TYPE_PING, FLAG_ACK, 0, payload, 0, payload.length);
+			out.flush();
+		}
+	}
+
+	private void onGoAway(final byte[] payload) throws IOException {
+		if (payload.length < 8) {
+			throw protocolError(ERROR_FRAME_SIZE_ERROR, "Invalid GOAWAY frame");
+		}
+		final int lastStreamId = getInt(payload, 0) & 0x7FFFFFFF;
+
+		synchronized (this) {
+			goAway = true;
+
+			// streams not processed by the server may be retried on a new connection
+			for (final Stream stream : new ArrayList<>(streams.values())) {
+				if (stream.id > lastStreamId) {
+					stream.error = new IOException("HTTP/2 stream refused by GOAWAY");
+					stream.reset = true;
+					stream.incoming.clear();
+					stream.remove();
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	private void onWindowUpdate(final int streamId, final byte[] payload) throws IOException {
+		if (payload.length != 4) {
+			throw protocolError(ERROR_FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+		}
+		final int increment = getInt(payload, 0) & 0x7FFFFFFF;
+
+		synchronized (this) {
+			if (streamId == 0) {
+				connectionSendWindow += increment;
+			}
+			else {
+				final Stream stream = streams.get(streamId);
+				if (stream != null) {
+					stream.sendWindow += increment;
+				}
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Marks the stream as ended by the server. Invoked under connection lock.
+	 */
+	private void endRemote(final Stream stream) {
+		stream.remoteClosed = true;
+		if (stream.localClosed) {
+			// stream is complete, received items stay available to the consumer
+			stream.remove();
+		}
+	}
+
+	private void unacknowledgedForConnection(final int length) {
+		connectionUnacknowledged += length;
+		if (connectionUnacknowledged >= connectionWindowSize / 2) {
+			final int increment = connectionUnacknowledged;
+			connectionUnacknowledged = 0;
+			writeWindowUpdatesLater(0, 0, increment);
+		}
+	}
+
+	/**
+	 * Fails the connection and all its streams.
+	 */
+	private void fail(final IOException ioex) {
+		synchronized (this) {
+			if (failure == null) {
+				failure = ioex;
+			}
+			for (final Stream stream : streams.values()) {
+				if (stream.error == null && !stream.remoteClosed) {
+					stream.error = ioex;
+				}
+			}
+			notifyAll();
+		}
+		try {
+			socket.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+
+	/**
+	 * Creates an exception for the connection error. GOAWAY frame with
+	 * the error code is sent when the read loop ends.
+	 */
+	private IOException protocolError(final int errorCode, final String message) {
+		synchronized (this) {
+			goAwayErrorCode = errorCode;
+		}
+		return new IOException("HTTP/2 protocol error: " + message);
+	}
+
+	private static int padding(final int flags, final byte[] payload, final int offset) throws IOException {
+		if ((flags & FLAG_PADDED) == 0) {
+			return 0;
+		}
+		if (payload.length <= offset) {
+			throw new IOException("HTTP/2 protocol error: invalid padding");
+		}
+		final int padding = payload[offset] & 0xFF;
+		if (padding >= payload.length) {
+			throw new IOException("HTTP/2 protocol error: invalid padding");
+		}
+		return padding;
+	}
+
+	private void readFully(final byte[] buffer, final int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			final int read = in.read(buffer, offset, length - offset);
+			if (read == -1) {
+				throw new EOFException("HTTP/2 connection closed by peer");
+			}
+			offset += read;
+		}
+	}
+
+	// ---------------------------------------------------------------- write
+
+	/**
+	 * Writes frame; must be invoked under write lock.
+	 */
+	private void writeFrame(final int type, final int flags, final int streamId, final byte[] payload, final int offset, final int length) throws IOException {
+		out.write(length >>> 16);
+		out.write(length >>> 8);
+		out.write(length);
+		out.write(type);
+		out.write(flags);
+		out.write(streamId >>> 24);
+		out.write(streamId >>> 16);
+		out.write(streamId >>> 8);
+		out.write(streamId);
+		out.write(payload, offset, length);
+	}
+
+	private void writeWindowUpdate(final int streamId, final int increment) throws IOException {
+		final byte[] payload = new byte[4];
+		putInt(payload, 0, increment);
+		writeFrame(TYPE_WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+	}
+
+	/**
+	 * Sends GOAWAY frame; server-initiated streams are never accepted.
+	 */
+	private void writeGoAway(final int errorCode) {
+		try {
+			synchronized (writeLock) {
+				final byte[] payload = new byte[8];
+				putInt(payload, 4, errorCode);
+				writeFrame(TYPE_GOAWAY, 0, 0, payload, 0, payload.length);
+				out.flush();
+			}
+		}
+		catch (final IOException ignore) {
+		}
+	}
+
+	private void writeRstStream(final int streamId, final int errorCode) throws IOException {
+		synchronized (writeLock) {
+			final byte[] payload = new byte[4];
+			putInt(payload, 0, errorCode);
+			writeFrame(TYPE_RST_STREAM, 0, streamId, payload, 0, 4);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Sends window updates without holding the connection lock, as writing may block.
+	 */
+	private void writeWindowUpdatesLater(final int streamId, final int streamIncrement, final int connectionIncrement) {
+		pendingWindowUpdates.add(new int[] {streamId, streamIncrement, connectionIncrement});
+	}
+
+	/**
+	 * Writes window updates collected under the connection lock.
+	 */
+	private void flushWindowUpdates() {
+		final List<int[]> updates;
+		synchronized (this) {
+			if (pendingWindowUpdates.isEmpty()) {
+				return;
+			}
+			updates = new ArrayList<>(pendingWindowUpdates);
+			pendingWindowUpdates.clear();
+		}
+		try {
+			synchronized (writeLock) {
+				for (final int[] update : updates) {
+					if (update[1] > 0) {
+						writeWindowUpdate(update[0], update[1]);
+					}
+					if (update[2] > 0) {
+						writeWindowUpdate(0, update[2]);
+					}
+				}
+				out.flush();
+			}
+		}
+		catch (final IOException ioex) {
+			fail(ioex);
+		}
+	}
+
+	private static void putSetting(final byte[] buffer, final int offset, final int id, final int value) {
+		buffer[offset] = (byte) (id >>> 8);
+		buffer[offset + 1] = (byte) id;
+		putInt(buffer, offset + 2, value);
+	}
+
+	private static void putInt(final byte[] buffer, final int offset, final int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	private static int getInt(final byte[] buffer, final int offset) {
+		return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+			| ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+	}
+}
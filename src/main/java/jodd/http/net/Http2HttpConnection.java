@@ -0,0 +1,399 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link HttpConnection} over a single HTTP/2 stream. Request written to the
+ * output stream in HTTP/1.1 format is sent as HEADERS and DATA frames; the
+ * response is presented on the input stream in HTTP/1.1 format, so the
+ * existing request writer and response parser work unchanged. Response
+ * without content length is presented with chunked transfer encoding.
+ * <p>
+ * Connection serves a single request; closing it closes the stream,
+ * while the underlying HTTP/2 connection remains open.
+ * @see Http2HttpConnectionProvider
+ */
+public class Http2HttpConnection implements HttpConnection {
+
+	private final Http2Connection.Stream stream;
+	private final String scheme;
+	private final OutputStream outputStream = new RequestOutputStream();
+	private final InputStream inputStream = new ResponseInputStream();
+	private int timeout;
+	private boolean headRequest;
+	private volatile boolean used;
+
+	Http2HttpConnection(final Http2Connection.Stream stream, final String scheme) {
+		this.stream = stream;
+		this.scheme = scheme;
+	}
+
+	@Override
+	public void init() {
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	@Override
+	public void close() {
+		stream.close();
+	}
+
+	@Override
+	public void setTimeout(final int milliseconds) {
+		this.timeout = milliseconds;
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		used = true;
+	}
+
+	/**
+	 * Stream serves a single request.
+	 */
+	@Override
+	public boolean isReusable() {
+		return !used;
+	}
+
+	/**
+	 * Returns <code>true</code> if the underlying HTTP/2 connection was used by some previous stream.
+	 */
+	@Override
+	public boolean isReused() {
+		return stream.isReused();
+	}
+
+	// ---------------------------------------------------------------- request
+
+	/**
+	 * Collects the request head, converts it to HTTP/2 header fields, and sends
+	 * the body as it is written, up to the content length.
+	 */
+	private class RequestOutputStream extends OutputStream {
+		private final ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+		private boolean headSent;
+		private long remaining;
+		private byte[] data;
+		private int dataSize;
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, int off, int len) throws IOException {
+			if (!headSent) {
+				final int headLength = head.size();
+				head.write(b, off, len);
+
+				final byte[] bytes = head.toByteArray();
+				final int headEnd = headEnd(bytes);
+				if (headEnd == -1) {
+					return;
+				}
+				sendHead(bytes, headEnd);
+
+				final int consumed = headEnd - headLength;
+				off += consumed;
+				len -= consumed;
+			}
+
+			if (len > remaining) {
+				throw new IOException("Request body is longer than its content length");
+			}
+
+			while (len > 0) {
+				final int chunk = Math.min(len, data.length - dataSize);
+				System.arraycopy(b, off, data, dataSize, chunk);
+				dataSize += chunk;
+				remaining -= chunk;
+				off += chunk;
+				len -= chunk;
+
+				if (dataSize == data.length || remaining == 0) {
+					flushData();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (dataSize > 0) {
+				flushData();
+			}
+		}
+
+		private void flushData() throws IOException {
+			stream.sendData(data, 0, dataSize, remaining == 0, timeout);
+			dataSize = 0;
+		}
+
+		private void sendHead(final byte[] bytes, final int headEnd) throws IOException {
+			final String[] lines = new String(bytes, 0, headEnd, StandardCharsets.ISO_8859_1).split("\r?\n");
+			final String[] requestLine = lines[0].split(" ");
+			if (requestLine.length < 2) {
+				throw new IOException("Invalid request line: " + lines[0]);
+			}
+
+			final List<Map.Entry<String, String>> fields = new ArrayList<>();
+			fields.add(field(":method", requestLine[0]));
+			fields.add(field(":scheme", scheme));
+			fields.add(field(":path", requestLine[1]));
+
+			long contentLength = 0;
+
+			for (int i = 1; i < lines.length; i++) {
+				final String line = lines[i];
+				final int colon = line.indexOf(':');
+				if (colon <= 0) {
+					continue;
+				}
+				final String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+				final String value = line.substring(colon + 1).trim();
+
+				switch (name) {
+					case "host":
+						fields.add(2, field(":authority", value));
+						break;
+					case "content-length":
+						contentLength = Long.parseLong(value);
+						fields.add(field(name, value));
+						break;
+					case "transfer-encoding":
+						if (!value.equalsIgnoreCase("identity")) {
+							throw new IOException("Transfer encoding is not supported over HTTP/2: " + value);
+						}
+						break;
+					case "connection":
+					case "keep-alive":
+					case "proxy-connection":
+					case "upgrade":
+						// connection-specific headers are not allowed
+						break;
+					case "te":
+						if (value.equalsIgnoreCase("trailers")) {
+							fields.add(field(name, value));
+						}
+						break;
+					default:
+						fields.add(field(name, value));
+				}
+			}
+
+			headRequest = requestLine[0].equals("HEAD");
+			remaining = contentLength;
+			data = new byte[(int) Math.max(1, Math.min(contentLength, stream.maxFrameSize()))];
+			headSent = true;
+
+			stream.sendHeaders(fields, contentLength == 0);
+		}
+	}
+
+	/**
+	 * Returns the index after the empty line that ends the head, or <code>-1</code>.
+	 */
+	private static int headEnd(final byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != '\n') {
+				continue;
+			}
+			if (i + 1 < bytes.length && bytes[i + 1] == '\n') {
+				return i + 2;
+			}
+			if (i + 2 < bytes.length && bytes[i + 1] == '\r' && bytes[i + 2] == '\n') {
+				return i + 3;
+			}
+		}
+		return -1;
+	}
+
+	private static Map.Entry<String, String> field(final String name, final String value) {
+		return new AbstractMap.SimpleImmutableEntry<>(name, value);
+	}
+
+	// ---------------------------------------------------------------- response
+
+	/**
+	 * Presents the response in HTTP/1.1 format.
+	 */
+	private class ResponseInputStream extends InputStream {
+		private byte[] chunk;
+		private int position;
+		private boolean headRead;
+		private boolean chunked;
+		private boolean noBody;
+		private boolean ended;
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			final int read = read(b, 0, 1);
+			return read == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (chunk == null || position == chunk.length) {
+				if (ended) {
+					return -1;
+				}
+				chunk = next();
+				position = 0;
+			}
+
+			final int count = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return chunk == null ? 0 : chunk.length - position;
+		}
+
+		/**
+		 * Returns next part of the response in HTTP/1.1 format.
+		 */
+		@SuppressWarnings("unchecked")
+		private byte[] next() throws IOException {
+			final Object item = stream.take(timeout);
+
+			if (!headRead) {
+				if (!(item instanceof List)) {
+					throw new IOException("HTTP/2 stream ended without response headers");
+				}
+				return head((List<Map.Entry<String, String>>) item);
+			}
+
+			if (item instanceof byte[]) {
+				final byte[] data = (byte[]) item;
+				if (noBody) {
+					return new byte[0];
+				}
+				return chunked ? chunk(data) : data;
+			}
+
+			ended = true;
+
+			if (!chunked) {
+				return new byte[0];
+			}
+
+			final StringBuilder sb = new StringBuilder("0\r\n");
+			if (item != null) {
+				// trailers
+				for (final Map.Entry<String, String> field : (List<Map.Entry<String, String>>) item) {
+					sb.append(field.getKey()).append(": ").append(field.getValue()).append("\r\n");
+				}
+			}
+			sb.append("\r\n");
+			return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		private byte[] chunk(final byte[] data) {
+			final byte[] size = (Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			final byte[] result = new byte[size.length + data.length + 2];
+			System.arraycopy(size, 0, result, 0, size.length);
+			System.arraycopy(data, 0, result, size.length, data.length);
+			result[result.length - 2] = '\r';
+			result[result.length - 1] = '\n';
+			return result;
+		}
+
+		/**
+		 * Converts the response headers to the HTTP/1.1 status line and headers.
+		 * Interim responses are skipped.
+		 */
+		private byte[] head(final List<Map.Entry<String, String>> fields) throws IOException {
+			String status = null;
+			boolean hasContentLength = false;
+
+			final StringBuilder sb = new StringBuilder();
+
+			for (final Map.Entry<String, String> field : fields) {
+				final String name = field.getKey();
+				if (name.equals(":status")) {
+					status = field.getValue();
+					continue;
+				}
+				if (name.startsWith(":")) {
+					continue;
+				}
+				if (name.equals("content-length")) {
+					hasContentLength = true;
+				}
+				sb.append(name).append(": ").append(field.getValue()).append("\r\n");
+			}
+
+			if (status == null) {
+				throw new IOException("HTTP/2 response without status");
+			}
+			if (status.startsWith("1")) {
+				return new byte[0];
+			}
+			headRead = true;
+
+			noBody = headRequest || status.equals("204") || status.equals("304");
+			chunked = !noBody && !hasContentLength;
+
+			if (chunked) {
+				sb.append("transfer-encoding: chunked\r\n");
+			}
+			sb.insert(0, "HTTP/2 " + status + "\r\n");
+			sb.append("\r\n");
+
+			return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+}
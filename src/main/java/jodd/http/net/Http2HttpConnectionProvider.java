@@ -0,0 +1,353 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connection provider that multiplexes requests as streams over shared
+ * HTTP/2 connections, one connection per route while the server allows
+ * more concurrent streams. Plain connections use HTTP/2 with prior
+ * knowledge (h2c), so the server must support it. Secure connections
+ * negotiate HTTP/2 using ALPN; if the server or the JVM does not support
+ * it, requests for that route are sent over HTTP/1.1 instead. The connection
+ * that negotiated HTTP/1.1 is used for the request that opened it.
+ * Routes are resolved as in the pooled provider, so connections opened
+ * with relaxed TLS checks are not shared with requests that verify them.
+ * HTTP/2 connections are never forwarded by a proxy, only tunneled.
+ * <p>
+ * Each {@link Http2HttpConnection} serves a single request; it is closed
+ * once the response is read, or when the request is closed. HTTP/2
+ * connections stay open until they are closed by the server, or
+ * until the provider is {@link #close() closed}.
+ * <p>
+ * Provider is thread-safe and is meant to be shared.
+ */
+public class Http2HttpConnectionProvider extends SocketHttpConnectionProvider {
+
+	private static final Method SET_APPLICATION_PROTOCOLS = lookup(SSLParameters.class, "setApplicationProtocols", String[].class);
+	private static final Method GET_APPLICATION_PROTOCOL = lookup(SSLSocket.class, "getApplicationProtocol");
+
+	protected int streamWindowSize = 1024 * 1024;
+	protected int connectionWindowSize = 16 * 1024 * 1024;
+
+	private final Map<String, Route> routes = new HashMap<>();
+	private volatile boolean closed;
+
+	/**
+	 * Connections of a single route. Only one connection of the route
+	 * is opened at a time, outside the route lock.
+	 */
+	private static class Route {
+		private final List<Http2Connection> connections = new ArrayList<>();
+		private boolean connecting;
+		private volatile boolean http11;
+	}
+
+	public Http2HttpConnectionProvider() {
+		// HTTP/2 requires TLS 1.2 or newer
+		this.sslProtocol = "TLS";
+	}
+
+	/**
+	 * Sets the receive window of each stream, i.e. how much response data
+	 * the server may send before it is consumed.
+	 */
+	public Http2HttpConnectionProvider setStreamWindowSize(final int streamWindowSize) {
+		this.streamWindowSize = streamWindowSize;
+		return this;
+	}
+
+	/**
+	 * Sets the receive window of each connection, shared by all its streams.
+	 */
+	public Http2HttpConnectionProvider setConnectionWindowSize(final int connectionWindowSize) {
+		this.connectionWindowSize = connectionWindowSize;
+		return this;
+	}
+
+	/**
+	 * Returns the number of open HTTP/2 connections.
+	 */
+	public synchronized int getConnectionsCount() {
+		int count = 0;
+		for (final Route route : routes.values()) {
+			synchronized (route) {
+				for (final Http2Connection connection : route.connections) {
+					if (!connection.isClosing()) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns new stream on an existing HTTP/2 connection of the route. New connection is
+	 * opened when there is no connection, or all of them reached the max number of streams.
+	 * While the connection is being opened, other requests of the route wait for it.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		final Route route;
+
+		synchronized (this) {
+			if (closed) {
+				throw new HttpException("HTTP/2 connection provider is closed");
+			}
+			route = routes.computeIfAbsent(resolveRoute(httpRequest), key -> new Route());
+		}
+
+		while (!route.http11) {
+			synchronized (route) {
+				final Http2HttpConnection httpConnection = reserveStream(httpRequest, route);
+				if (httpConnection != null) {
+					return httpConnection;
+				}
+				if (route.http11) {
+					break;
+				}
+				if (route.connecting) {
+					try {
+						route.wait();
+					}
+					catch (final InterruptedException iex) {
+						Thread.currentThread().interrupt();
+						throw new HttpException("Interrupted while waiting for HTTP/2 connection", iex);
+					}
+					continue;
+				}
+				route.connecting = true;
+			}
+
+			final HttpConnection http11Connection = openConnection(httpRequest, route);
+			if (http11Connection != null) {
+				return http11Connection;
+			}
+		}
+
+		return super.createHttpConnection(httpRequest);
+	}
+
+	/**
+	 * Reserves a stream on one of the route connections. Invoked under the route lock.
+	 * Returns <code>null</code> when there is no connection with a free stream.
+	 */
+	private Http2HttpConnection reserveStream(final HttpRequest httpRequest, final Route route) {
+		final Iterator<Http2Connection> iterator = route.connections.iterator();
+
+		while (iterator.hasNext()) {
+			final Http2Connection connection = iterator.next();
+
+			if (connection.isClosing()) {
+				iterator.remove();
+				if (connection.activeStreams() == 0) {
+					connection.close();
+				}
+				continue;
+			}
+
+			final Http2Connection.Stream stream = connection.reserveStream();
+			if (stream != null) {
+				return createHttpConnection(httpRequest, connection, stream);
+			}
+		}
+		return null;
+	}
+
+	private Http2HttpConnection createHttpConnection(
+			final HttpRequest httpRequest, final Http2Connection connection, final Http2Connection.Stream stream) {
+
+		final Http2HttpConnection httpConnection = new Http2HttpConnection(stream, connection.scheme());
+		httpConnection.setTimeout(httpRequest.timeout());
+		return httpConnection;
+	}
+
+	/**
+	 * Opens new connection of the route, in the connecting slot of the route.
+	 * HTTP/2 connection is added to the route and <code>null</code> is returned.
+	 * When the secure connection negotiates HTTP/1.1 instead, route is marked
+	 * as HTTP/1.1 and the connection is returned, to be used for the request.
+	 */
+	private HttpConnection openConnection(final HttpRequest httpRequest, final Route route) throws IOException {
+		Http2Connection http2Connection = null;
+		boolean http11 = false;
+
+		try {
+			final boolean https = httpRequest.protocol().equalsIgnoreCase("https");
+
+			if (https && SET_APPLICATION_PROTOCOLS == null) {
+				// ALPN is not available in this JVM
+				http11 = true;
+				return null;
+			}
+
+			final long start = System.nanoTime();
+			final Socket socket;
+
+			if (https) {
+				socket = createSSLSocket(
+					httpRequest.host(),
+					httpRequest.port(),
+					httpRequest.connectionTimeout(),
+					httpRequest.trustAllCertificates(),
+					httpRequest.verifyHttpsHost());
+			}
+			else {
+				socket = createSocket(httpRequest.host(), httpRequest.port(), httpRequest.connectionTimeout());
+			}
+
+			final long connected = System.nanoTime();
+
+			try {
+				if (socketOptions != null) {
+					socketOptions.apply(socket);
+				}
+
+				if (https) {
+					final SSLSocket sslSocket = (SSLSocket) socket;
+					final boolean sessionResumed = handshake(sslSocket, httpRequest.connectionTimeout());
+
+					if (!"h2".equals(invoke(GET_APPLICATION_PROTOCOL, sslSocket))) {
+						http11 = true;
+						return initHttpConnection(new SocketHttpSecureConnection(sslSocket, sessionResumed), httpRequest, start, connected);
+					}
+				}
+
+				http2Connection = new Http2Connection(socket, https ? "https" : "http", streamWindowSize, connectionWindowSize);
+				return null;
+			}
+			catch (final IOException | RuntimeException ex) {
+				socket.close();
+				throw ex;
+			}
+		}
+		finally {
+			synchronized (route) {
+				route.connecting = false;
+				if (http11) {
+					route.http11 = true;
+				}
+				if (http2Connection != null && !closed) {
+					route.connections.add(http2Connection);
+				}
+				route.notifyAll();
+			}
+			if (http2Connection != null && closed) {
+				http2Connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Offers HTTP/2 and HTTP/1.1 using ALPN and performs the handshake.
+	 * Returns <code>true</code> if the previous TLS session was resumed.
+	 */
+	private static boolean handshake(final SSLSocket sslSocket, final int connectionTimeout) throws IOException {
+		final SSLParameters sslParameters = sslSocket.getSSLParameters();
+		invoke(SET_APPLICATION_PROTOCOLS, sslParameters, (Object) new String[] {"h2", "http/1.1"});
+		sslSocket.setSSLParameters(sslParameters);
+
+		if (connectionTimeout > 0) {
+			sslSocket.setSoTimeout(connectionTimeout);
+		}
+		return SocketHttpSecureConnection.handshake(sslSocket);
+	}
+
+	/**
+	 * HTTP/2 connections are tunneled through the proxy, never forwarded.
+	 */
+	@Override
+	protected boolean isProxyForwarded(final HttpRequest httpRequest) {
+		return false;
+	}
+
+	/**
+	 * Closes the streams once the response is read.
+	 */
+	@Override
+	public boolean releaseHttpConnection(final HttpConnection httpConnection) {
+		if (httpConnection instanceof Http2HttpConnection) {
+			httpConnection.close();
+			return true;
+		}
+		return super.releaseHttpConnection(httpConnection);
+	}
+
+	/**
+	 * Closes all HTTP/2 connections.
+	 */
+	public void close() {
+		final List<Http2Connection> connections = new ArrayList<>();
+
+		synchronized (this) {
+			closed = true;
+			for (final Route route : routes.values()) {
+				synchronized (route) {
+					connections.addAll(route.connections);
+					route.connections.clear();
+				}
+			}
+			routes.clear();
+		}
+
+		for (final Http2Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	private static Object invoke(final Method method, final Object target, final Object... args) throws IOException {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (final ReflectiveOperationException roex) {
+			throw new IOException(roex);
+		}
+	}
+
+	private static Method lookup(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		}
+		catch (final NoSuchMethodException ignore) {
+			return null;
+		}
+	}
+}
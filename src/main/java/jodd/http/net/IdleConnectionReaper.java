@@ -0,0 +1,85 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes expired idle connections of all {@link PooledSocketHttpConnectionProvider pools}.
+ * Uses a single daemon thread, shared by all pools. Pools are referenced weakly,
+ * so a pool that is not closed explicitly does not leak.
+ */
+class IdleConnectionReaper {
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "jodd-http-idle-connection-reaper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Registers the pool for periodical reaping. Returns the future
+	 * that should be cancelled when pool is closed.
+	 */
+	static ScheduledFuture<?> register(final PooledSocketHttpConnectionProvider pool, final long interval) {
+		final ReaperTask task = new ReaperTask(pool);
+		task.future = SCHEDULER.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+		return task.future;
+	}
+
+	private static class ReaperTask implements Runnable {
+		private final WeakReference<PooledSocketHttpConnectionProvider> poolRef;
+		private volatile ScheduledFuture<?> future;
+
+		private ReaperTask(final PooledSocketHttpConnectionProvider pool) {
+			this.poolRef = new WeakReference<>(pool);
+		}
+
+		@Override
+		public void run() {
+			final PooledSocketHttpConnectionProvider pool = poolRef.get();
+
+			if (pool == null) {
+				final ScheduledFuture<?> future = this.future;
+				if (future != null) {
+					future.cancel(false);
+				}
+				return;
+			}
+
+			try {
+				pool.closeExpiredConnections();
+			}
+			catch (final RuntimeException ignore) {
+				// keep the reaper running
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+
+/**
+ * Connection to an {@link Endpoint} leased from the {@link LoadBalancingHttpConnectionProvider}.
+ * Counts as in-flight request of the endpoint until it is released or closed.
+ * New connection closed before any response was received counts as endpoint failure;
+ * reused connection may have been just closed by the peer, so it does not.
+ */
+class LoadBalancedHttpConnection extends DelegatingHttpConnection {
+
+	private final LoadBalancingHttpConnectionProvider provider;
+	private final Endpoint endpoint;
+	private boolean responded;
+	private boolean finished;
+
+	LoadBalancedHttpConnection(final LoadBalancingHttpConnectionProvider provider, final HttpConnection connection, final Endpoint endpoint) {
+		super(connection);
+		this.provider = provider;
+		this.endpoint = endpoint;
+		endpoint.acquire();
+	}
+
+	/**
+	 * Returns the endpoint of this connection.
+	 */
+	Endpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Ends the in-flight request on the endpoint, once.
+	 */
+	synchronized void finish(final boolean closed) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		endpoint.release();
+
+		if (responded) {
+			endpoint.succeeded();
+		}
+		else if (closed && !connection.isReused()) {
+			provider.failed(endpoint);
+		}
+	}
+
+	@Override
+	public void close() {
+		finish(true);
+		super.close();
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		synchronized (this) {
+			responded = true;
+		}
+		super.markUsed(keepAliveTimeout, keepAliveMax);
+	}
+}
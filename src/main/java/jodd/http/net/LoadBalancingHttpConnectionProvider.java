@@ -0,0 +1,267 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+import jodd.http.ProxyInfo;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pooled connection provider that spreads requests across multiple backend
+ * endpoints of a host. Endpoints are either {@link #setEndpoints(String, List) configured}
+ * for the host, or are all the addresses returned by the {@link HostResolver}.
+ * For each request, the {@link LoadBalancingStrategy strategy} selects an endpoint,
+ * and the connection is leased from the pool of that endpoint. Requests still
+ * use the host name, for the "Host" header and for TLS.
+ * <p>
+ * Endpoint that fails to connect, or whose connection is closed before
+ * the response is received, records a failure. When the number of consecutive
+ * failures reaches the {@link #setMaxFailures(int) limit}, endpoint is ejected
+ * for the {@link #setEjectionTime(long) ejection time}. Failed connect is retried
+ * on other endpoints. When all endpoints are ejected, all are used.
+ * <p>
+ * Load balancing is not applied when proxy is used.
+ */
+public class LoadBalancingHttpConnectionProvider extends PooledSocketHttpConnectionProvider {
+
+	protected LoadBalancingStrategy strategy = LoadBalancingStrategy.roundRobin();
+	protected int maxFailures = 3;
+	protected long ejectionTime = 30000;
+
+	private final Map<String, List<InetSocketAddress>> configuredEndpoints = new ConcurrentHashMap<>();
+	private final Map<InetSocketAddress, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	/**
+	 * Endpoint selected for the connection being created in the current thread.
+	 */
+	private final ThreadLocal<Endpoint> selectedEndpoint = new ThreadLocal<>();
+
+	/**
+	 * Sets the strategy for selecting endpoints. Default is round-robin.
+	 */
+	public LoadBalancingHttpConnectionProvider setStrategy(final LoadBalancingStrategy strategy) {
+		this.strategy = strategy;
+		return this;
+	}
+
+	/**
+	 * Sets the number of consecutive failures after which the endpoint is ejected.
+	 */
+	public LoadBalancingHttpConnectionProvider setMaxFailures(final int maxFailures) {
+		this.maxFailures = maxFailures;
+		return this;
+	}
+
+	/**
+	 * Sets the time in milliseconds for which failing endpoint is ejected.
+	 */
+	public LoadBalancingHttpConnectionProvider setEjectionTime(final long ejectionTime) {
+		this.ejectionTime = ejectionTime;
+		return this;
+	}
+
+	/**
+	 * Defines endpoints of the host, regardless of its port. Endpoints are
+	 * used instead of the addresses resolved by the {@link HostResolver}.
+	 * At least one endpoint is required; all of them must be resolved.
+	 */
+	public LoadBalancingHttpConnectionProvider setEndpoints(final String host, final List<InetSocketAddress> endpoints) {
+		if (endpoints.isEmpty()) {
+			throw new HttpException("No endpoints for host: " + host);
+		}
+		for (final InetSocketAddress endpoint : endpoints) {
+			if (endpoint.isUnresolved()) {
+				throw new HttpException("Unresolved endpoint for host " + host + ": " + endpoint);
+			}
+		}
+		configuredEndpoints.put(host.toLowerCase(), new ArrayList<>(endpoints));
+		return this;
+	}
+
+	/**
+	 * Returns all endpoints that received requests so far.
+	 */
+	public Collection<Endpoint> getEndpoints() {
+		return new ArrayList<>(endpoints.values());
+	}
+
+	/**
+	 * Returns the endpoint of the address, if it received requests so far.
+	 */
+	public Endpoint getEndpoint(final InetSocketAddress address) {
+		return endpoints.get(address);
+	}
+
+	/**
+	 * Selects the endpoint for the request and returns connection to it.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		if (proxy.getProxyType() != ProxyInfo.ProxyType.NONE) {
+			return super.createHttpConnection(httpRequest);
+		}
+
+		final List<Endpoint> candidates = availableEndpoints(resolveEndpoints(httpRequest));
+
+		if (candidates.isEmpty()) {
+			throw new HttpException("No endpoints for host: " + httpRequest.host());
+		}
+
+		Exception failure = null;
+
+		while (!candidates.isEmpty()) {
+			final Endpoint endpoint = strategy.select(candidates);
+
+			selectedEndpoint.set(endpoint);
+			try {
+				return new LoadBalancedHttpConnection(this, super.createHttpConnection(httpRequest), endpoint);
+			}
+			catch (final IOException | HttpException ex) {
+				if (!isConnectFailure(ex)) {
+					throw ex;
+				}
+				failed(endpoint);
+				candidates.remove(endpoint);
+
+				if (failure == null) {
+					failure = ex;
+				}
+				else {
+					failure.addSuppressed(ex);
+				}
+			}
+			finally {
+				selectedEndpoint.remove();
+			}
+		}
+
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		throw (HttpException) failure;
+	}
+
+	/**
+	 * Returns <code>true</code> if exception is caused by the endpoint, and not,
+	 * for example, by the pool limits.
+	 */
+	private static boolean isConnectFailure(final Exception ex) {
+		return ex instanceof IOException || ex.getCause() instanceof IOException;
+	}
+
+	/**
+	 * Returns endpoints of the request host.
+	 */
+	protected List<Endpoint> resolveEndpoints(final HttpRequest httpRequest) throws IOException {
+		List<InetSocketAddress> addresses = configuredEndpoints.get(httpRequest.host().toLowerCase());
+
+		if (addresses == null) {
+			addresses = new ArrayList<>();
+			for (final InetAddress address : hostResolver.resolve(httpRequest.host())) {
+				addresses.add(new InetSocketAddress(address, httpRequest.port()));
+			}
+		}
+
+		final List<Endpoint> result = new ArrayList<>(addresses.size());
+		for (final InetSocketAddress address : addresses) {
+			result.add(endpoints.computeIfAbsent(address, Endpoint::new));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns endpoints that are not ejected, or all when all are ejected.
+	 */
+	private static List<Endpoint> availableEndpoints(final List<Endpoint> endpoints) {
+		final List<Endpoint> available = new ArrayList<>(endpoints.size());
+		for (final Endpoint endpoint : endpoints) {
+			if (!endpoint.isEjected()) {
+				available.add(endpoint);
+			}
+		}
+		return available.isEmpty() ? endpoints : available;
+	}
+
+	void failed(final Endpoint endpoint) {
+		endpoint.failed(maxFailures, ejectionTime);
+	}
+
+	/**
+	 * Releases the wrapped connection to the pool.
+	 */
+	@Override
+	public boolean releaseHttpConnection(final HttpConnection httpConnection) {
+		if (!(httpConnection instanceof LoadBalancedHttpConnection)) {
+			return super.releaseHttpConnection(httpConnection);
+		}
+
+		final LoadBalancedHttpConnection connection = (LoadBalancedHttpConnection) httpConnection;
+		connection.finish(false);
+
+		return super.releaseHttpConnection(connection.getConnection());
+	}
+
+	/**
+	 * Connections to different endpoints are pooled separately.
+	 */
+	@Override
+	protected String resolveRoute(final HttpRequest httpRequest) {
+		final String route = super.resolveRoute(httpRequest);
+		final Endpoint endpoint = selectedEndpoint.get();
+
+		return endpoint == null ? route : route + " @" + endpoint.getAddress();
+	}
+
+	/**
+	 * Connects to the selected endpoint.
+	 */
+	@Override
+	protected Socket connectSocket(
+			final SocketFactory socketFactory, final String host,
+			final int port, final int connectionTimeout) throws IOException {
+
+		final Endpoint endpoint = selectedEndpoint.get();
+		if (endpoint == null) {
+			return super.connectSocket(socketFactory, host, port, connectionTimeout);
+		}
+
+		final InetSocketAddress address = endpoint.getAddress();
+		return new HappyEyeballsConnector(socketFactory, connectionAttemptDelay)
+			.connect(new InetAddress[] {address.getAddress()}, address.getPort(), connectionTimeout);
+	}
+}
@@ -0,0 +1,96 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the endpoint for the next request of the {@link LoadBalancingHttpConnectionProvider}.
+ * Given list is never empty; it contains endpoints that are not ejected,
+ * or all endpoints when all of them are ejected.
+ */
+@FunctionalInterface
+public interface LoadBalancingStrategy {
+
+	/**
+	 * Selects one of the endpoints.
+	 */
+	public Endpoint select(List<Endpoint> endpoints);
+
+	/**
+	 * Returns strategy that selects endpoints in turn.
+	 */
+	public static LoadBalancingStrategy roundRobin() {
+		final AtomicInteger counter = new AtomicInteger();
+
+		return endpoints -> endpoints.get(Math.floorMod(counter.getAndIncrement(), endpoints.size()));
+	}
+
+	/**
+	 * Returns strategy that selects the endpoint with the least in-flight
+	 * requests. Ties are broken by starting the search at a random endpoint.
+	 */
+	public static LoadBalancingStrategy leastInFlight() {
+		return endpoints -> {
+			final int size = endpoints.size();
+			final int offset = ThreadLocalRandom.current().nextInt(size);
+
+			Endpoint selected = null;
+			for (int i = 0; i < size; i++) {
+				final Endpoint endpoint = endpoints.get((offset + i) % size);
+				if (selected == null || endpoint.getInFlight() < selected.getInFlight()) {
+					selected = endpoint;
+				}
+			}
+			return selected;
+		};
+	}
+
+	/**
+	 * Returns strategy that picks two random endpoints and selects the one
+	 * with less in-flight requests. It is close to the least in-flight
+	 * strategy, but avoids herding on the single least loaded endpoint.
+	 */
+	public static LoadBalancingStrategy powerOfTwoChoices() {
+		return endpoints -> {
+			final int size = endpoints.size();
+			if (size == 1) {
+				return endpoints.get(0);
+			}
+
+			final ThreadLocalRandom random = ThreadLocalRandom.current();
+			final int first = random.nextInt(size);
+			final int second = (first + 1 + random.nextInt(size - 1)) % size;
+
+			final Endpoint endpoint1 = endpoints.get(first);
+			final Endpoint endpoint2 = endpoints.get(second);
+
+			return endpoint2.getInFlight() < endpoint1.getInFlight() ? endpoint2 : endpoint1;
+		};
+	}
+}
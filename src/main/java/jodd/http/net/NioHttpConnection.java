@@ -0,0 +1,703 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.AsyncHttpConnection;
+import jodd.http.HttpConnection;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non-blocking {@link HttpConnection} over a <code>SocketChannel</code>, optionally
+ * secured with an <code>SSLEngine</code>. All I/O is performed by the selector loop
+ * of the {@link NioHttpConnectionProvider provider}; {@link #read(ByteBuffer)} and
+ * {@link #write(ByteBuffer)} return futures completed from the readiness events,
+ * without blocking any thread. Futures are completed in the loop thread, so
+ * dependent actions must not block.
+ * <p>
+ * Timeouts are applied by the loop timers. Timed out read is abandoned and
+ * the connection may still be used, while any other timed out operation
+ * closes the connection.
+ * <p>
+ * Streams returned by {@link #getInputStream()} and {@link #getOutputStream()}
+ * block the caller until the operation completes, so the connection may be
+ * used as any other {@link HttpConnection}.
+ */
+public class NioHttpConnection implements AsyncHttpConnection, NioSelectorLoop.Handler {
+
+	private static final int WAIT = -2;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final SocketChannel channel;
+	private final NioSelectorLoop loop;
+	private final SSLEngine sslEngine;
+
+	private ByteBuffer netIn;
+	private ByteBuffer netOut;
+	private ByteBuffer appIn;
+	private boolean sslClosed;
+	private volatile boolean handshakeDone;
+
+	private CompletableFuture<Void> connectFuture;
+	private CompletableFuture<Void> handshakeFuture;
+	private CompletableFuture<Void> writeFuture;
+	private ByteBuffer writeSrc;
+	private CompletableFuture<Integer> readFuture;
+	private ByteBuffer readDst;
+	private volatile Throwable failure;
+
+	private int timeout;
+	private volatile boolean used;
+	private long connectStart;
+	private long handshakeStart;
+	private volatile long connectTime = -1;
+	private volatile long handshakeTime;
+	private InputStream inputStream;
+	private OutputStream outputStream;
+
+	NioHttpConnection(final SocketChannel channel, final NioSelectorLoop loop, final SSLEngine sslEngine) {
+		this.channel = channel;
+		this.loop = loop;
+		this.sslEngine = sslEngine;
+
+		if (sslEngine != null) {
+			this.handshakeTime = -1;
+			final int packetBufferSize = sslEngine.getSession().getPacketBufferSize();
+			this.netIn = ByteBuffer.allocate(packetBufferSize);
+			this.netOut = ByteBuffer.allocate(packetBufferSize);
+			this.appIn = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+		}
+	}
+
+	/**
+	 * Returns the channel of this connection.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the SSL engine or <code>null</code> if connection is not secure.
+	 */
+	public SSLEngine getSslEngine() {
+		return sslEngine;
+	}
+
+	// ---------------------------------------------------------------- async
+
+	/**
+	 * Starts connecting the channel to the address.
+	 */
+	CompletableFuture<Void> connect(final SocketAddress address, final int connectionTimeout) {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		submit(future, () -> {
+			connectStart = System.nanoTime();
+			if (channel.connect(address)) {
+				connectTime = System.nanoTime() - connectStart;
+				future.complete(null);
+				return;
+			}
+			connectFuture = future;
+			scheduleTimeout(future, connectionTimeout, "Connect");
+			pump();
+		});
+
+		return future;
+	}
+
+	/**
+	 * Performs the SSL handshake. Completes immediately if connection is not
+	 * secure or if the handshake is already done.
+	 */
+	public CompletableFuture<Void> handshake() {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		if (sslEngine == null || handshakeDone) {
+			future.complete(null);
+			return future;
+		}
+
+		submit(future, () -> {
+			handshakeStart = System.nanoTime();
+			sslEngine.beginHandshake();
+			handshakeFuture = future;
+			scheduleTimeout(future, timeout, "Handshake");
+			pump();
+		});
+
+		return future;
+	}
+
+	/**
+	 * Writes all remaining bytes of the buffer. Only one write may be pending at a time.
+	 */
+	@Override
+	public CompletableFuture<Void> write(final ByteBuffer src) {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		submit(future, () -> {
+			if (writeFuture != null) {
+				throw new IllegalStateException("Write already pending");
+			}
+			writeFuture = future;
+			writeSrc = src;
+			pump();
+			if (!future.isDone()) {
+				scheduleTimeout(future, timeout, "Write");
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Reads available bytes into the buffer, waiting until at least one byte is read.
+	 * Future completes with the number of read bytes, or with <code>-1</code> when
+	 * the peer has closed the connection. Only one read may be pending at a time.
+	 */
+	@Override
+	public CompletableFuture<Integer> read(final ByteBuffer dst) {
+		final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+		submit(future, () -> {
+			if (readFuture != null) {
+				throw new IllegalStateException("Read already pending");
+			}
+			readFuture = future;
+			readDst = dst;
+			pump();
+			if (!future.isDone()) {
+				scheduleTimeout(future, timeout, "Read");
+			}
+		});
+
+		return future;
+	}
+
+	@FunctionalInterface
+	private interface IOTask {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Runs the task in the loop thread. Failures complete the future.
+	 */
+	private void submit(final CompletableFuture<?> future, final IOTask task) {
+		try {
+			loop.execute(() -> {
+				if (failure != null) {
+					future.completeExceptionally(failure);
+					return;
+				}
+				try {
+					task.run();
+				}
+				catch (final IOException | RuntimeException ex) {
+					future.completeExceptionally(ex);
+					fail(ex);
+				}
+			});
+		}
+		catch (final RejectedExecutionException rejected) {
+			future.completeExceptionally(new ClosedChannelException());
+		}
+	}
+
+	// ---------------------------------------------------------------- loop
+
+	@Override
+	public void ready(final int readyOps) {
+		pump();
+	}
+
+	@Override
+	public void failed(final Throwable throwable) {
+		fail(throwable);
+	}
+
+	/**
+	 * Progresses all pending operations, as far as the channel allows.
+	 */
+	private void pump() {
+		try {
+			if (connectFuture != null) {
+				if (!channel.finishConnect()) {
+					interest(SelectionKey.OP_CONNECT);
+					return;
+				}
+				final CompletableFuture<Void> future = connectFuture;
+				connectFuture = null;
+				connectTime = System.nanoTime() - connectStart;
+				future.complete(null);
+			}
+
+			if (handshakeFuture != null) {
+				if (!stepHandshake()) {
+					return;
+				}
+				final CompletableFuture<Void> future = handshakeFuture;
+				handshakeFuture = null;
+				handshakeDone = true;
+				handshakeTime = System.nanoTime() - handshakeStart;
+				future.complete(null);
+			}
+
+			if (writeFuture != null && (sslEngine != null ? stepSslWrite() : stepWrite())) {
+				final CompletableFuture<Void> future = writeFuture;
+				writeFuture = null;
+				writeSrc = null;
+				future.complete(null);
+			}
+
+			if (readFuture != null) {
+				final int read = sslEngine != null ? stepSslRead() : stepRead();
+				if (read != WAIT) {
+					final CompletableFuture<Integer> future = readFuture;
+					readFuture = null;
+					readDst = null;
+					future.complete(read);
+				}
+			}
+		}
+		catch (final IOException | RuntimeException ex) {
+			fail(ex);
+		}
+	}
+
+	/**
+	 * Closes the channel and fails all pending operations.
+	 */
+	private void fail(final Throwable throwable) {
+		if (failure == null) {
+			failure = throwable;
+		}
+		try {
+			channel.close();
+		}
+		catch (final IOException ignore) {
+		}
+
+		if (connectFuture != null) {
+			connectFuture.completeExceptionally(throwable);
+			connectFuture = null;
+		}
+		if (handshakeFuture != null) {
+			handshakeFuture.completeExceptionally(throwable);
+			handshakeFuture = null;
+		}
+		if (writeFuture != null) {
+			writeFuture.completeExceptionally(throwable);
+			writeFuture = null;
+			writeSrc = null;
+		}
+		if (readFuture != null) {
+			readFuture.completeExceptionally(throwable);
+			readFuture = null;
+			readDst = null;
+		}
+	}
+
+	private void interest(final int ops) throws ClosedChannelException {
+		loop.interest(channel, ops, this);
+	}
+
+	// ---------------------------------------------------------------- plain
+
+	private boolean stepWrite() throws IOException {
+		channel.write(writeSrc);
+
+		if (writeSrc.hasRemaining()) {
+			interest(SelectionKey.OP_WRITE);
+			return false;
+		}
+		return true;
+	}
+
+	private int stepRead() throws IOException {
+		if (!readDst.hasRemaining()) {
+			return 0;
+		}
+		final int read = channel.read(readDst);
+
+		if (read == 0) {
+			interest(SelectionKey.OP_READ);
+			return WAIT;
+		}
+		return read;
+	}
+
+	// ---------------------------------------------------------------- ssl
+
+	private boolean stepHandshake() throws IOException {
+		while (true) {
+			switch (sslEngine.getHandshakeStatus()) {
+				case NEED_TASK:
+					runDelegatedTasks();
+					break;
+				case NEED_WRAP:
+					if (!flushNetOut()) {
+						return false;
+					}
+					final SSLEngineResult wrapResult = sslEngine.wrap(EMPTY, netOut);
+
+					if (wrapResult.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+					}
+					else if (wrapResult.getStatus() == SSLEngineResult.Status.CLOSED) {
+						flushNetOut();
+						throw new SSLException("SSL engine closed during handshake");
+					}
+					break;
+				case FINISHED:
+				case NOT_HANDSHAKING:
+					return flushNetOut();
+				default:
+					// NEED_UNWRAP, or NEED_UNWRAP_AGAIN on newer JDKs
+					if (!flushNetOut() || !unwrap()) {
+						return false;
+					}
+					if (sslClosed) {
+						throw new SSLException("SSL engine closed during handshake");
+					}
+			}
+		}
+	}
+
+	private boolean stepSslWrite() throws IOException {
+		while (true) {
+			if (!flushNetOut()) {
+				return false;
+			}
+			if (!writeSrc.hasRemaining()) {
+				return true;
+			}
+			final SSLEngineResult result = sslEngine.wrap(writeSrc, netOut);
+
+			switch (result.getStatus()) {
+				case BUFFER_OVERFLOW:
+					netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+					break;
+				case CLOSED:
+					throw new SSLException("SSL engine closed");
+				default:
+					runDelegatedTasks();
+			}
+		}
+	}
+
+	private int stepSslRead() throws IOException {
+		while (true) {
+			if (appIn.position() > 0) {
+				return transfer(appIn, readDst);
+			}
+			if (sslClosed) {
+				return -1;
+			}
+			if (!readDst.hasRemaining()) {
+				return 0;
+			}
+
+			final SSLEngineResult.HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+
+			if (handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+				&& handshakeStatus != SSLEngineResult.HandshakeStatus.FINISHED
+				&& handshakeStatus != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+
+				// post-handshake messages, e.g. key update
+				if (!stepHandshake()) {
+					return WAIT;
+				}
+				continue;
+			}
+
+			if (!unwrap()) {
+				return WAIT;
+			}
+		}
+	}
+
+	/**
+	 * Unwraps the received data into the application buffer, reading from the
+	 * channel when more data is needed. Returns <code>false</code> when
+	 * waiting for the channel to become readable.
+	 */
+	private boolean unwrap() throws IOException {
+		netIn.flip();
+		final SSLEngineResult result;
+		try {
+			result = sslEngine.unwrap(netIn, appIn);
+		}
+		finally {
+			netIn.compact();
+		}
+
+		switch (result.getStatus()) {
+			case BUFFER_UNDERFLOW:
+				if (!netIn.hasRemaining()) {
+					netIn = enlarge(netIn, sslEngine.getSession().getPacketBufferSize());
+				}
+				final int read = channel.read(netIn);
+				if (read < 0) {
+					throw new EOFException("Connection closed by peer");
+				}
+				if (read == 0) {
+					interest(SelectionKey.OP_READ);
+					return false;
+				}
+				return true;
+			case BUFFER_OVERFLOW:
+				appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize());
+				return true;
+			case CLOSED:
+				sslClosed = true;
+				return true;
+			default:
+				runDelegatedTasks();
+				return true;
+		}
+	}
+
+	/**
+	 * Writes encrypted data to the channel. Returns <code>false</code>
+	 * when waiting for the channel to become writable.
+	 */
+	private boolean flushNetOut() throws IOException {
+		if (netOut.position() == 0) {
+			return true;
+		}
+		netOut.flip();
+		try {
+			channel.write(netOut);
+		}
+		finally {
+			netOut.compact();
+		}
+		if (netOut.position() > 0) {
+			interest(SelectionKey.OP_WRITE);
+			return false;
+		}
+		return true;
+	}
+
+	private void runDelegatedTasks() {
+		Runnable task;
+		while ((task = sslEngine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	private static ByteBuffer enlarge(final ByteBuffer buffer, final int minSize) {
+		final ByteBuffer enlarged = ByteBuffer.allocate(Math.max(minSize, buffer.capacity() * 2));
+		buffer.flip();
+		enlarged.put(buffer);
+		return enlarged;
+	}
+
+	/**
+	 * Moves bytes from the buffer in write mode into the destination.
+	 */
+	private static int transfer(final ByteBuffer src, final ByteBuffer dst) {
+		src.flip();
+		final int count = Math.min(src.remaining(), dst.remaining());
+		final ByteBuffer slice = src.duplicate();
+		slice.limit(slice.position() + count);
+		dst.put(slice);
+		src.position(src.position() + count);
+		src.compact();
+		return count;
+	}
+
+	// ---------------------------------------------------------------- blocking
+
+	/**
+	 * Fails the operation if it is not completed within the timeout.
+	 * Must be called in the loop thread.
+	 */
+	private void scheduleTimeout(final CompletableFuture<?> future, final int timeout, final String operation) {
+		if (timeout <= 0) {
+			return;
+		}
+		final NioSelectorLoop.Timer timer = loop.schedule(timeout, () -> {
+			if (future.isDone()) {
+				return;
+			}
+			final SocketTimeoutException stex = new SocketTimeoutException(operation + " timed out");
+
+			if (future == readFuture) {
+				// read may be repeated
+				readFuture = null;
+				readDst = null;
+				future.completeExceptionally(stex);
+			}
+			else {
+				fail(stex);
+			}
+		});
+		future.whenComplete((result, throwable) -> timer.cancel());
+	}
+
+	/**
+	 * Waits for the operation to complete.
+	 */
+	<T> T await(final CompletableFuture<T> future, final String operation) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (final ExecutionException eex) {
+			final Throwable cause = eex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+		catch (final InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new InterruptedIOException(operation + " interrupted");
+		}
+	}
+
+	@Override
+	public void init() throws IOException {
+		await(handshake(), "Handshake");
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		if (outputStream == null) {
+			outputStream = new BufferedOutputStream(new OutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					write(new byte[] {(byte) b}, 0, 1);
+				}
+
+				@Override
+				public void write(final byte[] b, final int off, final int len) throws IOException {
+					await(NioHttpConnection.this.write(ByteBuffer.wrap(b, off, len)), "Write");
+				}
+
+				@Override
+				public void close() {
+					NioHttpConnection.this.close();
+				}
+			}, 8192);
+		}
+		return outputStream;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		if (inputStream == null) {
+			inputStream = new InputStream() {
+				@Override
+				public int read() throws IOException {
+					final byte[] b = new byte[1];
+					final int read = read(b, 0, 1);
+					return read == -1 ? -1 : b[0] & 0xFF;
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len) throws IOException {
+					if (len == 0) {
+						return 0;
+					}
+					return await(NioHttpConnection.this.read(ByteBuffer.wrap(b, off, len)), "Read");
+				}
+
+				@Override
+				public void close() {
+					NioHttpConnection.this.close();
+				}
+			};
+		}
+		return inputStream;
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		}
+		catch (final IOException ignore) {
+		}
+		try {
+			loop.execute(() -> fail(new AsynchronousCloseException()));
+		}
+		catch (final RejectedExecutionException ignore) {
+		}
+	}
+
+	@Override
+	public void setTimeout(final int milliseconds) {
+		this.timeout = milliseconds;
+	}
+
+	// ---------------------------------------------------------------- keep-alive
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		this.used = true;
+	}
+
+	@Override
+	public boolean isReusable() {
+		return channel.isOpen() && failure == null;
+	}
+
+	@Override
+	public boolean isReused() {
+		return used;
+	}
+
+	@Override
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	@Override
+	public long getHandshakeTime() {
+		return handshakeTime;
+	}
+}
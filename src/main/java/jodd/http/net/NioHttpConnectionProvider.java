@@ -0,0 +1,318 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.AsyncHttpConnection;
+import jodd.http.AsyncHttpConnectionProvider;
+import jodd.http.HttpConnection;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+import jodd.http.ProxyInfo;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection provider of non-blocking {@link NioHttpConnection NIO connections}.
+ * All connections are served by a small number of selector loops, each running
+ * in its own daemon thread, so the number of in-flight requests is not bound
+ * to the number of threads. Secure connections use the <code>SSLEngine</code>.
+ * Requests using this provider are {@link HttpRequest#sendAsync() sent asynchronously}
+ * without blocking. Proxies are not supported.
+ * <p>
+ * Provider is thread-safe and is meant to be shared. Call {@link #close()}
+ * when provider is not needed anymore.
+ */
+public class NioHttpConnectionProvider implements AsyncHttpConnectionProvider {
+
+	private static final AtomicInteger LOOP_COUNTER = new AtomicInteger();
+
+	protected int ioThreads = 1;
+	protected HostResolver hostResolver = HostResolver.SYSTEM;
+	protected SocketOptions socketOptions = new SocketOptions().tcpNoDelay(true);
+	protected String sslProtocol = "TLS";
+	protected SSLContext sslContext;
+
+	private NioSelectorLoop[] loops;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private SSLContext trustAllSslContext;
+	private boolean closed;
+
+	/**
+	 * Sets the number of selector loop threads. Must be set before the first connection is created.
+	 */
+	public NioHttpConnectionProvider setIoThreads(final int ioThreads) {
+		this.ioThreads = ioThreads;
+		return this;
+	}
+
+	/**
+	 * Sets the resolver of host names.
+	 */
+	public NioHttpConnectionProvider setHostResolver(final HostResolver hostResolver) {
+		this.hostResolver = hostResolver;
+		return this;
+	}
+
+	/**
+	 * Sets socket options applied to all channels. By default,
+	 * only <code>TCP_NODELAY</code> is enabled.
+	 */
+	public NioHttpConnectionProvider setSocketOptions(final SocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+		return this;
+	}
+
+	/**
+	 * Sets SSL protocol used for connections that trust all certificates.
+	 */
+	public NioHttpConnectionProvider setSslProtocol(final String sslProtocol) {
+		this.sslProtocol = sslProtocol;
+		synchronized (this) {
+			this.trustAllSslContext = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Uses pre-built SSL context for all secure connections. Trust defined by
+	 * the context takes precedence over requests {@link HttpRequest#trustAllCerts(boolean) trust-all} flag.
+	 * Set to <code>null</code> to use default SSL context.
+	 */
+	public NioHttpConnectionProvider setSslContext(final SSLContext sslContext) {
+		this.sslContext = sslContext;
+		return this;
+	}
+
+	/**
+	 * Proxies are not supported.
+	 */
+	@Override
+	public void useProxy(final ProxyInfo proxyInfo) {
+		if (proxyInfo.getProxyType() != ProxyInfo.ProxyType.NONE) {
+			throw new HttpException("Proxy is not supported by NIO connection provider");
+		}
+	}
+
+	/**
+	 * Creates new NIO connection and waits until it is connected and,
+	 * for secure connections, until the SSL handshake is done.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		try {
+			return createHttpConnectionAsync(httpRequest).join();
+		}
+		catch (final CompletionException cex) {
+			final Throwable cause = cex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Opens new connection to the request host. Addresses of the host are tried in order.
+	 * Host name is resolved in the calling thread, so consider using {@link CachingHostResolver}.
+	 */
+	@Override
+	public CompletableFuture<AsyncHttpConnection> createHttpConnectionAsync(final HttpRequest httpRequest) {
+		final CompletableFuture<AsyncHttpConnection> result = new CompletableFuture<>();
+
+		final InetAddress[] addresses;
+		try {
+			addresses = hostResolver.resolve(httpRequest.host());
+		}
+		catch (final IOException ioex) {
+			result.completeExceptionally(ioex);
+			return result;
+		}
+
+		connect(httpRequest, addresses, 0, null, result);
+
+		return result;
+	}
+
+	/**
+	 * Connects to the address with given index. On connection refused, the next address is tried.
+	 */
+	private void connect(
+			final HttpRequest httpRequest, final InetAddress[] addresses, final int index,
+			final IOException previousFailure, final CompletableFuture<AsyncHttpConnection> result) {
+
+		final NioHttpConnection connection;
+		try {
+			connection = createConnection(httpRequest);
+		}
+		catch (final IOException | RuntimeException ex) {
+			result.completeExceptionally(ex);
+			return;
+		}
+
+		connection.connect(new InetSocketAddress(addresses[index], httpRequest.port()), httpRequest.connectionTimeout())
+			.thenCompose(nothing -> connection.handshake())
+			.whenComplete((nothing, throwable) -> {
+				if (throwable == null) {
+					result.complete(connection);
+					return;
+				}
+				connection.close();
+
+				final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+
+				if (cause instanceof ConnectException && index + 1 < addresses.length) {
+					if (previousFailure != null) {
+						cause.addSuppressed(previousFailure);
+					}
+					connect(httpRequest, addresses, index + 1, (IOException) cause, result);
+					return;
+				}
+				if (previousFailure != null) {
+					cause.addSuppressed(previousFailure);
+				}
+				result.completeExceptionally(cause);
+			});
+	}
+
+	/**
+	 * Creates unconnected connection.
+	 */
+	protected NioHttpConnection createConnection(final HttpRequest httpRequest) throws IOException {
+		final SocketChannel channel = SocketChannel.open();
+
+		try {
+			channel.configureBlocking(false);
+
+			if (socketOptions != null) {
+				socketOptions.apply(channel.socket());
+			}
+
+			SSLEngine sslEngine = null;
+
+			if (httpRequest.protocol().equalsIgnoreCase("https")) {
+				sslEngine = resolveSslContext(httpRequest.trustAllCertificates())
+					.createSSLEngine(httpRequest.host(), httpRequest.port());
+				sslEngine.setUseClientMode(true);
+
+				if (httpRequest.verifyHttpsHost()) {
+					final SSLParameters sslParams = sslEngine.getSSLParameters();
+					sslParams.setEndpointIdentificationAlgorithm("HTTPS");
+					sslEngine.setSSLParameters(sslParams);
+				}
+			}
+
+			final NioHttpConnection connection = new NioHttpConnection(channel, nextLoop(), sslEngine);
+			connection.setTimeout(httpRequest.timeout());
+			return connection;
+		}
+		catch (final IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns SSL context for new secure connection.
+	 */
+	protected SSLContext resolveSslContext(final boolean trustAllCertificates) throws IOException {
+		if (sslContext != null) {
+			return sslContext;
+		}
+		try {
+			if (!trustAllCertificates) {
+				return SSLContext.getDefault();
+			}
+			synchronized (this) {
+				if (trustAllSslContext == null) {
+					final SSLContext context = SSLContext.getInstance(sslProtocol);
+					context.init(null, TrustManagers.TRUST_ALL_CERTS, null);
+					trustAllSslContext = context;
+				}
+				return trustAllSslContext;
+			}
+		}
+		catch (final NoSuchAlgorithmException | KeyManagementException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Returns next selector loop, creating all loops on first use.
+	 */
+	private NioSelectorLoop nextLoop() throws IOException {
+		final NioSelectorLoop[] loops;
+
+		synchronized (this) {
+			if (closed) {
+				throw new HttpException("NIO connection provider is closed");
+			}
+			if (this.loops == null) {
+				final NioSelectorLoop[] newLoops = new NioSelectorLoop[Math.max(ioThreads, 1)];
+				for (int i = 0; i < newLoops.length; i++) {
+					newLoops[i] = new NioSelectorLoop("jodd-http-nio-" + LOOP_COUNTER.incrementAndGet());
+				}
+				this.loops = newLoops;
+			}
+			loops = this.loops;
+		}
+
+		return loops[Math.abs(nextLoop.getAndIncrement() % loops.length)];
+	}
+
+	/**
+	 * Closes all selector loops and their connections.
+	 */
+	public void close() {
+		final NioSelectorLoop[] loops;
+
+		synchronized (this) {
+			closed = true;
+			loops = this.loops;
+			this.loops = null;
+		}
+
+		if (loops != null) {
+			for (final NioSelectorLoop loop : loops) {
+				loop.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,330 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Selector loop that runs in a single daemon thread and dispatches I/O readiness
+ * events of registered channels to their {@link Handler handlers}. All channel
+ * operations of a handler are executed in the loop thread, so handlers
+ * do not need any synchronization. Loop also runs {@link Timer timers},
+ * used for I/O timeouts; cancelled timers are removed right away, so
+ * completed operations do not leave their timeouts behind.
+ */
+class NioSelectorLoop implements Runnable {
+
+	/**
+	 * Handles readiness events of a registered channel.
+	 */
+	interface Handler {
+
+		/**
+		 * Invoked in the loop thread when channel is ready for some
+		 * of the requested operations.
+		 */
+		void ready(int readyOps);
+
+		/**
+		 * Invoked in the loop thread when the loop is closed.
+		 */
+		void failed(Throwable throwable);
+	}
+
+	/**
+	 * Task scheduled for a later execution in the loop thread.
+	 */
+	static class Timer {
+		private final NioSelectorLoop loop;
+		private final long deadline;
+		private final Runnable task;
+		private volatile boolean cancelled;
+		// position in the timers heap, accessed only in the loop thread
+		private int index = -1;
+
+		private Timer(final NioSelectorLoop loop, final long deadline, final Runnable task) {
+			this.loop = loop;
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		/**
+		 * Cancels the timer and removes it from the loop. May be invoked
+		 * from any thread; outside the loop thread, timer is removed by
+		 * the loop task.
+		 */
+		void cancel() {
+			cancelled = true;
+
+			if (Thread.currentThread() == loop.thread) {
+				loop.removeTimer(this);
+				return;
+			}
+			try {
+				loop.execute(() -> loop.removeTimer(this));
+			}
+			catch (final RejectedExecutionException ignore) {
+				// loop is closed, timers are not run anymore
+			}
+		}
+	}
+
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	// binary min-heap of timers by the deadline
+	private Timer[] timers = new Timer[16];
+	private int timersCount;
+	private volatile boolean closed;
+
+	NioSelectorLoop(final String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Executes the task in the loop thread. Checking and adding is atomic
+	 * with {@link #close()}, so an accepted task is always run, at the latest
+	 * by the final drain of the loop.
+	 */
+	synchronized void execute(final Runnable task) {
+		if (closed) {
+			throw new RejectedExecutionException("Selector loop is closed");
+		}
+		tasks.add(task);
+		if (Thread.currentThread() != thread) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Adds interest operations of a channel, registering the channel if needed.
+	 * Interest is cleared once the channel gets ready, so it has to be
+	 * requested again. Must be called in the loop thread.
+	 */
+	void interest(final SelectableChannel channel, final int ops, final Handler handler) throws ClosedChannelException {
+		final SelectionKey key = channel.keyFor(selector);
+
+		if (key == null) {
+			channel.register(selector, ops, handler);
+		}
+		else {
+			key.interestOps(key.interestOps() | ops);
+		}
+	}
+
+	/**
+	 * Schedules the task to run in the loop thread after the delay in milliseconds.
+	 * Must be called in the loop thread.
+	 */
+	Timer schedule(final long delay, final Runnable task) {
+		final Timer timer = new Timer(this, System.currentTimeMillis() + delay, task);
+		if (timersCount == timers.length) {
+			timers = Arrays.copyOf(timers, timersCount * 2);
+		}
+		siftUp(timersCount++, timer);
+		return timer;
+	}
+
+	/**
+	 * Removes the timer from the heap in O(log n). Does nothing
+	 * if timer is already removed.
+	 */
+	private void removeTimer(final Timer timer) {
+		final int index = timer.index;
+		if (index < 0) {
+			return;
+		}
+		timer.index = -1;
+
+		final Timer last = timers[--timersCount];
+		timers[timersCount] = null;
+
+		if (last != timer) {
+			siftDown(index, last);
+			if (timers[index] == last) {
+				siftUp(index, last);
+			}
+		}
+	}
+
+	private void siftUp(int index, final Timer timer) {
+		while (index > 0) {
+			final int parentIndex = (index - 1) >>> 1;
+			final Timer parent = timers[parentIndex];
+			if (timer.deadline >= parent.deadline) {
+				break;
+			}
+			timers[index] = parent;
+			parent.index = index;
+			index = parentIndex;
+		}
+		timers[index] = timer;
+		timer.index = index;
+	}
+
+	private void siftDown(int index, final Timer timer) {
+		final int half = timersCount >>> 1;
+		while (index < half) {
+			int childIndex = (index << 1) + 1;
+			Timer child = timers[childIndex];
+			final int rightIndex = childIndex + 1;
+			if (rightIndex < timersCount && timers[rightIndex].deadline < child.deadline) {
+				childIndex = rightIndex;
+				child = timers[rightIndex];
+			}
+			if (timer.deadline <= child.deadline) {
+				break;
+			}
+			timers[index] = child;
+			child.index = index;
+			index = childIndex;
+		}
+		timers[index] = timer;
+		timer.index = index;
+	}
+
+	@Override
+	public void run() {
+		while (!closed) {
+			try {
+				if (tasks.isEmpty()) {
+					selector.select(nextTimeout());
+				}
+				else {
+					// tasks added in the loop thread do not wake up the selector
+					selector.selectNow();
+				}
+			}
+			catch (final IOException | ClosedSelectorException ex) {
+				break;
+			}
+
+			runTasks();
+			runTimers();
+
+			final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+			while (iterator.hasNext()) {
+				final SelectionKey key = iterator.next();
+				iterator.remove();
+
+				if (!key.isValid()) {
+					continue;
+				}
+
+				final int readyOps = key.readyOps();
+				key.interestOps(key.interestOps() & ~readyOps);
+
+				((Handler) key.attachment()).ready(readyOps);
+			}
+		}
+
+		// loop is closed, fail all pending operations
+
+		runTasks();
+
+		final ClosedChannelException closedChannelException = new ClosedChannelException();
+
+		for (final SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			}
+			catch (final IOException ignore) {
+			}
+			((Handler) key.attachment()).failed(closedChannelException);
+		}
+
+		try {
+			selector.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+
+	/**
+	 * Returns select timeout until the next timer, or zero if there are no timers.
+	 */
+	private long nextTimeout() {
+		while (timersCount > 0 && timers[0].cancelled) {
+			// cancelled outside the loop thread, removal task is still pending
+			removeTimer(timers[0]);
+		}
+		if (timersCount == 0) {
+			return 0;
+		}
+		return Math.max(timers[0].deadline - System.currentTimeMillis(), 1);
+	}
+
+	private void runTimers() {
+		final long now = System.currentTimeMillis();
+
+		while (timersCount > 0 && timers[0].deadline <= now) {
+			final Timer timer = timers[0];
+			removeTimer(timer);
+			if (!timer.cancelled) {
+				try {
+					timer.task.run();
+				}
+				catch (final RuntimeException ignore) {
+					// timers handle their own failures
+				}
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			}
+			catch (final RuntimeException ignore) {
+				// tasks handle their own failures
+			}
+		}
+	}
+
+	/**
+	 * Closes the loop. All registered channels are closed.
+	 */
+	synchronized void close() {
+		closed = true;
+		selector.wakeup();
+	}
+}
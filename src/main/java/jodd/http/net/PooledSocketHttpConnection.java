@@ -0,0 +1,154 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.ProxyInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * {@link HttpConnection} leased from the {@link PooledSocketHttpConnectionProvider}.
+ * Wraps the real {@link SocketHttpConnection}; closing it closes the socket and
+ * frees the slot in the pool.
+ */
+public class PooledSocketHttpConnection implements HttpConnection {
+
+	private final PooledSocketHttpConnectionProvider pool;
+	private final SocketHttpConnection connection;
+	private final String route;
+	private volatile boolean closed;
+
+	/**
+	 * Sequence number of the last release to the pool, guarded by the pool.
+	 */
+	long releaseOrder;
+
+	PooledSocketHttpConnection(final PooledSocketHttpConnectionProvider pool, final SocketHttpConnection connection, final String route) {
+		this.pool = pool;
+		this.connection = connection;
+		this.route = route;
+	}
+
+	@Override
+	public void init() throws IOException {
+		connection.init();
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return connection.getOutputStream();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return connection.getInputStream();
+	}
+
+	/**
+	 * Closes the underlying socket and removes connection from the pool.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		connection.close();
+		pool.discard(this);
+	}
+
+	@Override
+	public void setTimeout(final int milliseconds) {
+		connection.setTimeout(milliseconds);
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		connection.markUsed(keepAliveTimeout, keepAliveMax);
+	}
+
+	@Override
+	public boolean isReusable() {
+		return !closed && connection.isReusable();
+	}
+
+	@Override
+	public boolean isReused() {
+		return connection.isReused();
+	}
+
+	@Override
+	public boolean isStale() {
+		return closed || connection.isStale();
+	}
+
+	@Override
+	public long getConnectTime() {
+		return connection.getConnectTime();
+	}
+
+	@Override
+	public long getHandshakeTime() {
+		return connection.getHandshakeTime();
+	}
+
+	@Override
+	public ProxyInfo forwardingProxy() {
+		return connection.forwardingProxy();
+	}
+
+	/**
+	 * Returns <code>true</code> if connection is closed.
+	 */
+	public boolean isClosed() {
+		return closed || connection.getSocket().isClosed();
+	}
+
+	/**
+	 * Returns the route key this connection belongs to.
+	 */
+	public String getRoute() {
+		return route;
+	}
+
+	/**
+	 * Returns wrapped socket connection.
+	 */
+	public SocketHttpConnection getSocketHttpConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns <code>Socket</code> used by this connection.
+	 */
+	public Socket getSocket() {
+		return connection.getSocket();
+	}
+}
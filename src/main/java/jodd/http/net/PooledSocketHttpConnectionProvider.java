@@ -0,0 +1,621 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Socket connection provider that keeps persistent connections in a pool
+ * and reuses them for subsequent requests on the same route. Route is
+ * defined by protocol, host, port and proxy (see {@link #resolveRoute(HttpRequest)}).
+ * Requests opened by this provider are marked as keep-alive. Once the
+ * response is read, connection is returned to the pool instead of being closed.
+ * Number of connections is limited both per route and in total; when limit
+ * is reached, caller waits for a connection to be released.
+ * <p>
+ * Since each leased connection serves one request, the per-route limit
+ * bounds the number of in-flight requests to a single host, acting as a
+ * bulkhead: a slow host can not take all the caller threads. Waiting is
+ * bounded by the {@link #setLeaseTimeout(int) lease timeout} and by the
+ * {@link #setMaxWaitingPerRoute(int) max number of waiting callers}; when either
+ * is exceeded, request is rejected with an {@link HttpException}.
+ * <p>
+ * Connections for a route may be opened ahead of time, see {@link #prewarm(HttpRequest, int)}.
+ * <p>
+ * With a proxy, pooled connection is the established proxy tunnel (HTTP CONNECT
+ * or SOCKS) to the target. Reusing it skips the proxy negotiation, which
+ * is otherwise done for every new connection.
+ * <p>
+ * Idle connections that the server is about to close, according to its
+ * "Keep-Alive" header, are not reused and are periodically closed
+ * by the shared {@link IdleConnectionReaper reaper}.
+ * <p>
+ * Provider is thread-safe and is meant to be shared. Call {@link #close()}
+ * when provider is not needed anymore.
+ */
+public class PooledSocketHttpConnectionProvider extends SocketHttpConnectionProvider {
+
+	protected int maxConnectionsPerRoute = 8;
+	protected int maxConnectionsTotal = 64;
+	protected int leaseTimeout = 0;
+	protected long reaperInterval = 1000;
+	protected int maxWaitingPerRoute = -1;
+
+	private final Map<String, Deque<PooledSocketHttpConnection>> idleConnections = new HashMap<>();
+	private final Map<String, Integer> routeConnectionsCount = new HashMap<>();
+	private final Set<PooledSocketHttpConnection> connections = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<String, Integer> routeWaitingCount = new HashMap<>();
+	private int pendingConnectionsCount;
+	private long releasesCount;
+	private long rejectedCount;
+	private boolean closed;
+	private ScheduledFuture<?> reaperFuture;
+
+	/**
+	 * Sets maximal number of connections (leased and idle) per single route.
+	 */
+	public PooledSocketHttpConnectionProvider setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+
+	/**
+	 * Returns maximal number of connections per route.
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * Sets maximal number of connections (leased and idle) in the pool.
+	 */
+	public PooledSocketHttpConnectionProvider setMaxConnectionsTotal(final int maxConnectionsTotal) {
+		this.maxConnectionsTotal = maxConnectionsTotal;
+		return this;
+	}
+
+	/**
+	 * Returns maximal number of connections in the pool.
+	 */
+	public int getMaxConnectionsTotal() {
+		return maxConnectionsTotal;
+	}
+
+	/**
+	 * Sets the time in milliseconds to wait for a connection when
+	 * pool limits are reached. A timeout value of zero is interpreted
+	 * as an infinite timeout.
+	 */
+	public PooledSocketHttpConnectionProvider setLeaseTimeout(final int milliseconds) {
+		this.leaseTimeout = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns lease timeout in milliseconds.
+	 */
+	public int getLeaseTimeout() {
+		return leaseTimeout;
+	}
+
+	/**
+	 * Sets maximal number of callers that may wait for a connection of a single
+	 * route. When the limit is reached, new callers are rejected immediately,
+	 * without waiting. Zero disables waiting; negative value means no limit (default).
+	 */
+	public PooledSocketHttpConnectionProvider setMaxWaitingPerRoute(final int maxWaitingPerRoute) {
+		this.maxWaitingPerRoute = maxWaitingPerRoute;
+		return this;
+	}
+
+	/**
+	 * Returns maximal number of waiting callers per route.
+	 */
+	public int getMaxWaitingPerRoute() {
+		return maxWaitingPerRoute;
+	}
+
+	/**
+	 * Sets the interval in milliseconds in which expired idle connections
+	 * are closed. Set to zero to disable the reaper.
+	 */
+	public PooledSocketHttpConnectionProvider setReaperInterval(final long milliseconds) {
+		this.reaperInterval = milliseconds;
+		return this;
+	}
+
+	/**
+	 * Returns reaper interval in milliseconds.
+	 */
+	public long getReaperInterval() {
+		return reaperInterval;
+	}
+
+	// ---------------------------------------------------------------- lease
+
+	/**
+	 * Returns idle connection from the pool for the request route, or creates
+	 * a new one if there is none. Stale idle connections are closed and skipped.
+	 * Request is marked as keep-alive.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		final String route = resolveRoute(httpRequest);
+
+		httpRequest.connectionKeepAlive(true);
+
+		final List<PooledSocketHttpConnection> discarded = new ArrayList<>();
+
+		while (true) {
+			final PooledSocketHttpConnection idleConnection;
+			try {
+				idleConnection = leaseIdleOrReserve(route, discarded);
+			}
+			finally {
+				closeAll(discarded);
+			}
+
+			if (idleConnection == null) {
+				break;
+			}
+			if (idleConnection.isStale()) {
+				idleConnection.close();
+				continue;
+			}
+
+			idleConnection.setTimeout(httpRequest.timeout());
+			return idleConnection;
+		}
+
+		// slot is reserved, open the new connection
+
+		return openConnection(httpRequest, route);
+	}
+
+	/**
+	 * Opens new connection in the reserved slot of the route.
+	 */
+	private PooledSocketHttpConnection openConnection(final HttpRequest httpRequest, final String route) throws IOException {
+		final SocketHttpConnection socketHttpConnection;
+		try {
+			socketHttpConnection = (SocketHttpConnection) super.createHttpConnection(httpRequest);
+		}
+		catch (final IOException | RuntimeException ex) {
+			cancelReservation(route);
+			throw ex;
+		}
+
+		final PooledSocketHttpConnection pooledConnection = new PooledSocketHttpConnection(this, socketHttpConnection, route);
+
+		synchronized (this) {
+			pendingConnectionsCount--;
+			connections.add(pooledConnection);
+
+			if (reaperFuture == null && reaperInterval > 0) {
+				reaperFuture = IdleConnectionReaper.register(this, reaperInterval);
+			}
+		}
+
+		return pooledConnection;
+	}
+
+	/**
+	 * Takes the most recently used idle connection of a route. If there is none,
+	 * reserves a slot for the new connection and returns <code>null</code>.
+	 * Waits when pool limits are reached. Connections removed from the pool
+	 * are added to the discarded list, to be closed outside the lock.
+	 */
+	private synchronized PooledSocketHttpConnection leaseIdleOrReserve(
+			final String route, final List<PooledSocketHttpConnection> discarded) {
+		final long deadline = leaseTimeout > 0 ? System.currentTimeMillis() + leaseTimeout : 0;
+
+		while (true) {
+			if (closed) {
+				throw new HttpException("Connection pool is closed");
+			}
+
+			final Deque<PooledSocketHttpConnection> idle = idleConnections.get(route);
+
+			while (idle != null && !idle.isEmpty()) {
+				final PooledSocketHttpConnection connection = idle.pollLast();
+
+				if (connection.isReusable()) {
+					return connection;
+				}
+				remove(connection);
+				discarded.add(connection);
+			}
+
+			final int routeCount = routeConnectionsCount.getOrDefault(route, 0);
+
+			if (routeCount < maxConnectionsPerRoute) {
+				if (totalCount() >= maxConnectionsTotal) {
+					final PooledSocketHttpConnection evicted = evictIdleConnection();
+					if (evicted != null) {
+						discarded.add(evicted);
+					}
+				}
+				if (totalCount() < maxConnectionsTotal) {
+					routeConnectionsCount.put(route, routeCount + 1);
+					pendingConnectionsCount++;
+					return null;
+				}
+			}
+
+			long waitTime = 0;
+			if (deadline != 0) {
+				waitTime = deadline - System.currentTimeMillis();
+				if (waitTime <= 0) {
+					rejectedCount++;
+					throw new HttpException("Timeout waiting for connection from pool: " + route);
+				}
+			}
+
+			final int waitingCount = routeWaitingCount.getOrDefault(route, 0);
+			if (maxWaitingPerRoute >= 0 && waitingCount >= maxWaitingPerRoute) {
+				rejectedCount++;
+				throw new HttpException("Too many requests waiting for connection from pool: " + route);
+			}
+
+			routeWaitingCount.put(route, waitingCount + 1);
+			try {
+				wait(waitTime);
+			}
+			catch (final InterruptedException iex) {
+				Thread.currentThread().interrupt();
+				throw new HttpException("Interrupted while waiting for connection from pool", iex);
+			}
+			finally {
+				final int count = routeWaitingCount.get(route) - 1;
+				if (count == 0) {
+					routeWaitingCount.remove(route);
+				}
+				else {
+					routeWaitingCount.put(route, count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reserves a slot for the new connection of a route, if pool limits allow it.
+	 * Does not wait and does not evict idle connections.
+	 */
+	private synchronized boolean reserve(final String route) {
+		if (closed) {
+			return false;
+		}
+		final int routeCount = routeConnectionsCount.getOrDefault(route, 0);
+
+		if (routeCount >= maxConnectionsPerRoute || totalCount() >= maxConnectionsTotal) {
+			return false;
+		}
+		routeConnectionsCount.put(route, routeCount + 1);
+		pendingConnectionsCount++;
+		return true;
+	}
+
+	/**
+	 * Frees the slot reserved for a connection that failed to open.
+	 */
+	private synchronized void cancelReservation(final String route) {
+		pendingConnectionsCount--;
+		decrementRouteCount(route);
+		notifyAll();
+	}
+
+	/**
+	 * Removes the least recently released idle connection, of any route,
+	 * from the pool to make room for a new one. Idle connections of a route
+	 * are ordered by release, so only the first one of each route is compared.
+	 * Returns removed connection, to be closed by the caller, or <code>null</code>.
+	 */
+	private PooledSocketHttpConnection evictIdleConnection() {
+		Deque<PooledSocketHttpConnection> oldest = null;
+
+		for (final Deque<PooledSocketHttpConnection> idle : idleConnections.values()) {
+			final PooledSocketHttpConnection connection = idle.peekFirst();
+			if (connection != null && (oldest == null || connection.releaseOrder < oldest.peekFirst().releaseOrder)) {
+				oldest = idle;
+			}
+		}
+		if (oldest == null) {
+			return null;
+		}
+
+		final PooledSocketHttpConnection connection = oldest.pollFirst();
+		remove(connection);
+		return connection;
+	}
+
+	private static void closeAll(final List<PooledSocketHttpConnection> connections) {
+		for (final PooledSocketHttpConnection connection : connections) {
+			connection.close();
+		}
+		connections.clear();
+	}
+
+	// ---------------------------------------------------------------- release
+
+	/**
+	 * Returns pooled connection back to the pool, so it can be reused
+	 * by the next request on the same route.
+	 */
+	@Override
+	public boolean releaseHttpConnection(final HttpConnection httpConnection) {
+		if (!(httpConnection instanceof PooledSocketHttpConnection)) {
+			return false;
+		}
+
+		final PooledSocketHttpConnection connection = (PooledSocketHttpConnection) httpConnection;
+
+		boolean reuse = false;
+
+		synchronized (this) {
+			if (!closed && connection.isReusable() && connections.contains(connection)) {
+				connection.releaseOrder = ++releasesCount;
+				idleConnections.computeIfAbsent(connection.getRoute(), r -> new ArrayDeque<>()).addLast(connection);
+				notifyAll();
+				reuse = true;
+			}
+		}
+
+		if (!reuse) {
+			connection.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Invoked when pooled connection is closed.
+	 */
+	synchronized void discard(final PooledSocketHttpConnection connection) {
+		final Deque<PooledSocketHttpConnection> idle = idleConnections.get(connection.getRoute());
+		if (idle != null) {
+			idle.remove(connection);
+		}
+		remove(connection);
+	}
+
+	private void remove(final PooledSocketHttpConnection connection) {
+		if (connections.remove(connection)) {
+			decrementRouteCount(connection.getRoute());
+			notifyAll();
+		}
+	}
+
+	private void decrementRouteCount(final String route) {
+		final int count = routeConnectionsCount.getOrDefault(route, 0) - 1;
+		if (count <= 0) {
+			routeConnectionsCount.remove(route);
+		}
+		else {
+			routeConnectionsCount.put(route, count);
+		}
+	}
+
+	private int totalCount() {
+		return connections.size() + pendingConnectionsCount;
+	}
+
+	// ---------------------------------------------------------------- prewarm
+
+	/**
+	 * Opens up to <code>count</code> new connections for the route of the given
+	 * request, one after another, and puts them in the pool as idle. Subsequent
+	 * requests on the route use them and do not pay the cost of connecting
+	 * and TLS handshake. Pool limits are respected: no idle connection is evicted
+	 * to make room. Returns number of opened connections.
+	 * @see #prewarm(HttpRequest, int, Executor)
+	 */
+	public int prewarm(final HttpRequest httpRequest, final int count) {
+		try {
+			return prewarm(httpRequest, count, Runnable::run).join();
+		}
+		catch (final CompletionException cex) {
+			final Throwable cause = cex.getCause();
+			if (cause instanceof HttpException) {
+				throw (HttpException) cause;
+			}
+			throw new HttpException(cause);
+		}
+	}
+
+	/**
+	 * Opens up to <code>count</code> new connections for the route of the given
+	 * request in parallel, using the executor. Returned future completes with the
+	 * number of opened connections once all of them are opened. It completes
+	 * exceptionally only when no connection could be opened because of an error.
+	 */
+	public CompletableFuture<Integer> prewarm(final HttpRequest httpRequest, final int count, final Executor executor) {
+		if (count < 0) {
+			throw new HttpException("Invalid prewarm count: " + count);
+		}
+		final String route = resolveRoute(httpRequest);
+
+		final List<CompletableFuture<Boolean>> futures = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			if (!reserve(route)) {
+				break;
+			}
+			final CompletableFuture<Boolean> future;
+			try {
+				future = CompletableFuture.supplyAsync(() -> {
+					final PooledSocketHttpConnection connection;
+					try {
+						connection = openConnection(httpRequest, route);
+					}
+					catch (final IOException ioex) {
+						throw new HttpException(ioex);
+					}
+					// prewarmed connection counts as used, so it is validated
+					// and retried on failure like any other pooled connection
+					connection.markUsed(-1, -1);
+
+					releaseHttpConnection(connection);
+					return Boolean.TRUE;
+				}, executor);
+			}
+			catch (final RuntimeException rex) {
+				cancelReservation(route);
+				throw rex;
+			}
+			futures.add(future);
+		}
+
+		return CompletableFuture
+			.allOf(futures.toArray(new CompletableFuture[0]))
+			.handle((nothing, throwable) -> {
+				int opened = 0;
+				for (final CompletableFuture<Boolean> future : futures) {
+					if (!future.isCompletedExceptionally()) {
+						opened++;
+					}
+				}
+				if (opened == 0 && throwable != null) {
+					throw throwable instanceof CompletionException
+						? (CompletionException) throwable : new CompletionException(throwable);
+				}
+				return opened;
+			});
+	}
+
+	// ---------------------------------------------------------------- stats
+
+	/**
+	 * Returns total number of open connections, both leased and idle.
+	 */
+	public synchronized int getConnectionsCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Returns number of idle connections.
+	 */
+	public synchronized int getIdleConnectionsCount() {
+		int count = 0;
+		for (final Deque<PooledSocketHttpConnection> idle : idleConnections.values()) {
+			count += idle.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns number of callers currently waiting for a connection.
+	 */
+	public synchronized int getWaitingCount() {
+		int count = 0;
+		for (final int waiting : routeWaitingCount.values()) {
+			count += waiting;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns number of requests rejected because the wait
+	 * for a connection timed out or the waiting limit was reached.
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	// ---------------------------------------------------------------- close
+
+	/**
+	 * Closes idle connections that are not {@link PooledSocketHttpConnection#isReusable() reusable}
+	 * anymore, i.e. the ones that the server is about to close.
+	 */
+	public void closeExpiredConnections() {
+		final List<PooledSocketHttpConnection> expired = new ArrayList<>();
+
+		synchronized (this) {
+			for (final Deque<PooledSocketHttpConnection> idle : idleConnections.values()) {
+				final Iterator<PooledSocketHttpConnection> iterator = idle.iterator();
+				while (iterator.hasNext()) {
+					final PooledSocketHttpConnection connection = iterator.next();
+					if (!connection.isReusable()) {
+						iterator.remove();
+						remove(connection);
+						expired.add(connection);
+					}
+				}
+			}
+		}
+
+		closeAll(expired);
+	}
+
+	/**
+	 * Closes all idle connections. Leased connections are not affected.
+	 */
+	public void closeIdleConnections() {
+		final List<PooledSocketHttpConnection> idle = new ArrayList<>();
+
+		synchronized (this) {
+			for (final Deque<PooledSocketHttpConnection> routeIdle : idleConnections.values()) {
+				idle.addAll(routeIdle);
+			}
+			idleConnections.clear();
+		}
+
+		closeAll(idle);
+	}
+
+	/**
+	 * Closes the pool and all idle connections. Leased connections
+	 * are closed once released.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			if (reaperFuture != null) {
+				reaperFuture.cancel(false);
+				reaperFuture = null;
+			}
+			notifyAll();
+		}
+		closeIdleConnections();
+	}
+}
@@ -26,11 +26,14 @@
 package jodd.http.net;
 
 import jodd.http.HttpConnection;
+import jodd.http.ProxyInfo;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 
 /**
  * Socket-based {@link jodd.http.HttpConnection}.
@@ -46,9 +49,13 @@ public class SocketHttpConnection implements HttpConnection {
 
 	@Override
 	public void init() throws IOException {
+		if (socketOptions != null) {
+			socketOptions.apply(socket);
+		}
 		if (timeout >= 0) {
 			socket.setSoTimeout(timeout);
 		}
+		initialized = true;
 	}
 
 	@Override
@@ -69,9 +76,29 @@ public class SocketHttpConnection implements HttpConnection {
 		}
 	}
 
+	/**
+	 * Sets the read timeout. Once the connection is initialized,
+	 * timeout applies immediately, even in the middle of the response.
+	 */
 	@Override
 	public void setTimeout(final int milliseconds) {
 		this.timeout = milliseconds;
+
+		if (initialized && milliseconds >= 0) {
+			try {
+				socket.setSoTimeout(milliseconds);
+			}
+			catch (final SocketException ignore) {
+				// socket is closed, next I/O fails anyway
+			}
+		}
+	}
+
+	/**
+	 * Sets socket options applied on {@link #init() initialization}.
+	 */
+	public void setSocketOptions(final SocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
 	}
 
 	/**
@@ -81,5 +108,161 @@ public class SocketHttpConnection implements HttpConnection {
 		return socket;
 	}
 
+	/**
+	 * Marks connection as made to the HTTP proxy that forwards the requests.
+	 */
+	public void setForwardingProxy(final ProxyInfo forwardingProxy) {
+		this.forwardingProxy = forwardingProxy;
+	}
+
+	@Override
+	public ProxyInfo forwardingProxy() {
+		return forwardingProxy;
+	}
+
+	/**
+	 * Records the time in nanoseconds spent to open the connection and for the TLS handshake.
+	 */
+	public void setOpenTimes(final long connectTime, final long handshakeTime) {
+		this.connectTime = connectTime;
+		this.handshakeTime = handshakeTime;
+	}
+
+	@Override
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	@Override
+	public long getHandshakeTime() {
+		return handshakeTime;
+	}
+
 	private int timeout;
+	private boolean initialized;
+	private SocketOptions socketOptions;
+	private ProxyInfo forwardingProxy;
+	private long connectTime = -1;
+	private long handshakeTime = -1;
+
+	// ---------------------------------------------------------------- keep-alive
+
+	private volatile long lastUsedTime = System.currentTimeMillis();
+	private volatile long keepAliveTimeout = -1;
+	private volatile int keepAliveMax = -1;
+	private long keepAliveMargin;
+	private long validateAfterInactivity;
+	private volatile boolean used;
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		this.used = true;
+		this.lastUsedTime = System.currentTimeMillis();
+		this.keepAliveTimeout = keepAliveTimeout;
+		this.keepAliveMax = keepAliveMax;
+	}
+
+	/**
+	 * Defines the time in milliseconds before the server keep-alive timeout
+	 * when connection is already considered as expired. Margin is never
+	 * larger than the half of the timeout.
+	 */
+	public void setKeepAliveMargin(final long milliseconds) {
+		this.keepAliveMargin = milliseconds;
+	}
+
+	/**
+	 * Returns the time when connection was used for the last time.
+	 */
+	public long getLastUsedTime() {
+		return lastUsedTime;
+	}
+
+	/**
+	 * Returns server keep-alive timeout in milliseconds, or <code>-1</code> if unknown.
+	 */
+	public long getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	/**
+	 * Returns the number of requests server still allows on this connection,
+	 * or <code>-1</code> if unknown.
+	 */
+	public int getKeepAliveMax() {
+		return keepAliveMax;
+	}
+
+	/**
+	 * Returns the time when connection expires, or <code>-1</code>
+	 * if server did not specify the keep-alive timeout.
+	 */
+	public long getExpirationTime() {
+		final long timeout = keepAliveTimeout;
+		if (timeout < 0) {
+			return -1;
+		}
+		return lastUsedTime + timeout - Math.min(keepAliveMargin, timeout / 2);
+	}
+
+	@Override
+	public boolean isReusable() {
+		if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+			return false;
+		}
+		if (keepAliveMax == 0) {
+			return false;
+		}
+		final long expirationTime = getExpirationTime();
+
+		return expirationTime == -1 || System.currentTimeMillis() < expirationTime;
+	}
+
+	@Override
+	public boolean isReused() {
+		return used;
+	}
+
+	/**
+	 * Defines the period of inactivity in milliseconds after which the
+	 * connection is {@link #isStale() checked} before being reused.
+	 * Connections used more recently are not checked.
+	 */
+	public void setValidateAfterInactivity(final long milliseconds) {
+		this.validateAfterInactivity = milliseconds;
+	}
+
+	/**
+	 * Checks if the peer has closed the connection, by reading from the socket
+	 * with the minimal timeout. Idle connection must not receive any data,
+	 * so both the end of stream and unexpected data mark the connection as stale.
+	 * Only timeout means that the connection is still alive.
+	 */
+	@Override
+	public boolean isStale() {
+		if (socket.isClosed() || socket.isInputShutdown()) {
+			return true;
+		}
+		if (System.currentTimeMillis() - lastUsedTime < validateAfterInactivity) {
+			return false;
+		}
+
+		try {
+			final int soTimeout = socket.getSoTimeout();
+			try {
+				socket.setSoTimeout(1);
+				socket.getInputStream().read();
+				return true;
+			}
+			catch (final SocketTimeoutException stex) {
+				return false;
+			}
+			finally {
+				socket.setSoTimeout(soTimeout);
+			}
+		}
+		catch (final IOException ioex) {
+			return true;
+		}
+	}
 }
\ No newline at end of file
@@ -30,19 +30,23 @@ import jodd.http.HttpConnectionProvider;
 import jodd.http.HttpException;
 import jodd.http.HttpRequest;
 import jodd.http.ProxyInfo;
-import jodd.http.Sockets;
 import jodd.util.StringUtil;
 
 import javax.net.SocketFactory;
+import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Socket factory for HTTP proxy.
@@ -52,6 +56,25 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 	protected ProxyInfo proxy = ProxyInfo.directProxy();
 	protected String secureEnabledProtocols = System.getProperty("https.protocols");
 	protected String sslProtocol = "TLSv1.1";
+	protected long keepAliveMargin = 1000;
+	protected long validateAfterInactivity = 1000;
+	protected KeyManager[] keyManagers;
+	protected TrustManager[] trustManagers;
+	protected SSLSocketFactory sslContextSocketFactory;
+	protected int sslSessionCacheSize = -1;
+	protected int sslSessionTimeout = -1;
+	protected HostResolver hostResolver = HostResolver.SYSTEM;
+	protected long connectionAttemptDelay = HappyEyeballsConnector.DEFAULT_ATTEMPT_DELAY;
+	protected SocketOptions socketOptions = new SocketOptions().tcpNoDelay(true);
+	protected boolean proxyForwarding;
+
+	private final AtomicLong fullHandshakesCount = new AtomicLong();
+	private final AtomicLong resumedHandshakesCount = new AtomicLong();
+
+	/**
+	 * SSL socket factories are expensive to create, so they are created once and cached.
+	 */
+	private final ConcurrentMap<String, SSLSocketFactory> sslSocketFactories = new ConcurrentHashMap<>();
 
 	/**
 	 * Defines proxy to use for created sockets.
@@ -61,6 +84,71 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 		proxy = proxyInfo;
 	}
 
+	/**
+	 * Enables forwarding of plain HTTP requests through the HTTP proxy. Instead of
+	 * opening a CONNECT tunnel for each target host, requests are sent with the
+	 * absolute URI directly to the proxy, so connections to the proxy are shared
+	 * between all target hosts. HTTPS requests are always tunneled.
+	 */
+	public SocketHttpConnectionProvider setProxyForwarding(final boolean proxyForwarding) {
+		this.proxyForwarding = proxyForwarding;
+		return this;
+	}
+
+	/**
+	 * Returns <code>true</code> if request is forwarded by the HTTP proxy.
+	 * @see #setProxyForwarding(boolean)
+	 */
+	protected boolean isProxyForwarded(final HttpRequest httpRequest) {
+		return proxyForwarding
+			&& proxy.getProxyType() == ProxyInfo.ProxyType.HTTP
+			&& !httpRequest.protocol().equalsIgnoreCase("https");
+	}
+
+	/**
+	 * Resolves the route key of the request, for providers that share connections.
+	 * Connections may be shared only between requests with the same route: route
+	 * includes the proxy and the TLS trust settings. Requests {@link #setProxyForwarding(boolean) forwarded}
+	 * by the proxy share the route regardless of the target host.
+	 */
+	protected String resolveRoute(final HttpRequest httpRequest) {
+		final StringBuilder route = new StringBuilder(64);
+
+		if (isProxyForwarded(httpRequest)) {
+			route.append("http://*");
+		}
+		else {
+			route.append(httpRequest.protocol().toLowerCase())
+				.append("://")
+				.append(httpRequest.host().toLowerCase())
+				.append(':')
+				.append(httpRequest.port());
+		}
+
+		if (proxy.getProxyType() != ProxyInfo.ProxyType.NONE) {
+			route.append(" via ")
+				.append(proxy.getProxyType())
+				.append("://");
+			if (proxy.getProxyUsername() != null) {
+				route.append(proxy.getProxyUsername()).append('@');
+			}
+			route.append(proxy.getProxyAddress())
+				.append(':')
+				.append(proxy.getProxyPort());
+		}
+
+		if (httpRequest.protocol().equalsIgnoreCase("https")) {
+			if (httpRequest.trustAllCertificates()) {
+				route.append(" trust-all");
+			}
+			if (!httpRequest.verifyHttpsHost()) {
+				route.append(" no-verify");
+			}
+		}
+
+		return route.toString();
+	}
+
 	/**
 	 * CSV of default enabled secured protocols. By default the value is
 	 * read from system property <code>https.protocols</code>.
@@ -81,6 +169,143 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 	 */
 	public SocketHttpConnectionProvider setSslProtocol(final String sslProtocol) {
 		this.sslProtocol = sslProtocol;
+		sslSocketFactories.clear();
+		return this;
+	}
+
+	/**
+	 * Uses pre-built SSL context for all secure connections. Trust defined by
+	 * the context takes precedence over requests {@link HttpRequest#trustAllCerts(boolean) trust-all} flag.
+	 * Set to <code>null</code> to use default SSL context.
+	 */
+	public SocketHttpConnectionProvider setSslContext(final SSLContext sslContext) {
+		this.sslContextSocketFactory = sslContext != null ? sslContext.getSocketFactory() : null;
+		return this;
+	}
+
+	/**
+	 * Sets key managers (i.e. client certificates) used for secure connections.
+	 */
+	public SocketHttpConnectionProvider setKeyManagers(final KeyManager... keyManagers) {
+		this.keyManagers = keyManagers;
+		sslSocketFactories.clear();
+		return this;
+	}
+
+	/**
+	 * Sets trust managers used for secure connections that do not trust all certificates.
+	 */
+	public SocketHttpConnectionProvider setTrustManagers(final TrustManager... trustManagers) {
+		this.trustManagers = trustManagers;
+		sslSocketFactories.clear();
+		return this;
+	}
+
+	/**
+	 * Sets the resolver of host names for direct connections and of the proxy host.
+	 * Proxied connections leave the name resolution of the target host to the proxy.
+	 * Use {@link CachingHostResolver} to avoid name lookups on every new connection.
+	 */
+	public SocketHttpConnectionProvider setHostResolver(final HostResolver hostResolver) {
+		this.hostResolver = hostResolver;
+		return this;
+	}
+
+	/**
+	 * Sets the delay, in milliseconds, after which the connection attempt to the
+	 * next resolved address of the host is started, while the previous attempts
+	 * are still pending. Default value is 250ms, as recommended by RFC 8305.
+	 */
+	public SocketHttpConnectionProvider setConnectionAttemptDelay(final long connectionAttemptDelay) {
+		this.connectionAttemptDelay = connectionAttemptDelay;
+		return this;
+	}
+
+	/**
+	 * Sets socket options applied to all sockets, including proxied and SSL ones.
+	 * By default, only <code>TCP_NODELAY</code> is enabled, so small writes of
+	 * request headers and body are not delayed. Set to <code>null</code> to keep
+	 * the platform defaults.
+	 */
+	public SocketHttpConnectionProvider setSocketOptions(final SocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+		return this;
+	}
+
+	/**
+	 * Returns socket options profile.
+	 */
+	public SocketOptions getSocketOptions() {
+		return socketOptions;
+	}
+
+	/**
+	 * Returns keep-alive margin in milliseconds.
+	 */
+	public long getKeepAliveMargin() {
+		return keepAliveMargin;
+	}
+
+	/**
+	 * Sets the time in milliseconds before the server's keep-alive timeout
+	 * when created connections stop being reused.
+	 * @see SocketHttpConnection#setKeepAliveMargin(long)
+	 */
+	public SocketHttpConnectionProvider setKeepAliveMargin(final long keepAliveMargin) {
+		this.keepAliveMargin = keepAliveMargin;
+		return this;
+	}
+
+	/**
+	 * Sets the maximal number of TLS sessions kept for resumption, in the SSL contexts
+	 * created by this provider. Sessions are cached per remote host and port.
+	 * Zero means no limit, negative value means JVM default.
+	 */
+	public SocketHttpConnectionProvider setSslSessionCacheSize(final int sslSessionCacheSize) {
+		this.sslSessionCacheSize = sslSessionCacheSize;
+		sslSocketFactories.clear();
+		return this;
+	}
+
+	/**
+	 * Sets the time in seconds after which cached TLS session may not be resumed anymore,
+	 * in the SSL contexts created by this provider. Zero means no limit,
+	 * negative value means JVM default.
+	 */
+	public SocketHttpConnectionProvider setSslSessionTimeout(final int seconds) {
+		this.sslSessionTimeout = seconds;
+		sslSocketFactories.clear();
+		return this;
+	}
+
+	/**
+	 * Returns number of full TLS handshakes performed by connections of this provider.
+	 */
+	public long getFullHandshakesCount() {
+		return fullHandshakesCount.get();
+	}
+
+	/**
+	 * Returns number of abbreviated TLS handshakes, when the previous session was resumed.
+	 */
+	public long getResumedHandshakesCount() {
+		return resumedHandshakesCount.get();
+	}
+
+	/**
+	 * Returns the period of inactivity after which connections are validated.
+	 */
+	public long getValidateAfterInactivity() {
+		return validateAfterInactivity;
+	}
+
+	/**
+	 * Sets the period of inactivity in milliseconds after which the idle
+	 * connection is checked for being stale before it is reused.
+	 * @see SocketHttpConnection#setValidateAfterInactivity(long)
+	 */
+	public SocketHttpConnectionProvider setValidateAfterInactivity(final long validateAfterInactivity) {
+		this.validateAfterInactivity = validateAfterInactivity;
 		return this;
 	}
 
@@ -95,6 +320,8 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 
 		final boolean https = httpRequest.protocol().equalsIgnoreCase("https");
 
+		final long start = System.nanoTime();
+
 		if (https) {
 			SSLSocket sslSocket = createSSLSocket(
 				httpRequest.host(),
@@ -105,21 +332,60 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 			);
 
 			httpConnection = new SocketHttpSecureConnection(sslSocket);
+			// wrapping SSL socket gets the options once connected
+			httpConnection.setSocketOptions(socketOptions);
+		}
+		else if (isProxyForwarded(httpRequest)) {
+			final Socket socket = connectSocket(
+				SocketFactory.getDefault(), proxy.getProxyAddress(), proxy.getProxyPort(), httpRequest.connectionTimeout());
+
+			httpConnection = new SocketHttpConnection(socket);
+			httpConnection.setForwardingProxy(proxy);
 		}
 		else {
 			Socket socket = createSocket(httpRequest.host(), httpRequest.port(), httpRequest.connectionTimeout());
 
 			httpConnection = new SocketHttpConnection(socket);
+			if (!resolvesHost()) {
+				// proxy socket factory connects on its own
+				httpConnection.setSocketOptions(socketOptions);
+			}
 		}
 
+		return initHttpConnection(httpConnection, httpRequest, start, System.nanoTime());
+	}
+
+	/**
+	 * Configures and initializes new connection for the request. Start and
+	 * connected times are <code>System.nanoTime()</code> before and after
+	 * the socket is connected. Connection is closed if initialization fails.
+	 */
+	protected SocketHttpConnection initHttpConnection(
+			final SocketHttpConnection httpConnection, final HttpRequest httpRequest,
+			final long start, final long connected) {
+
 		// prepare connection config
 
 		httpConnection.setTimeout(httpRequest.timeout());
+		httpConnection.setKeepAliveMargin(keepAliveMargin);
+		httpConnection.setValidateAfterInactivity(validateAfterInactivity);
 
 		try {
 			// additional socket initialization
 
 			httpConnection.init();
+
+			if (httpConnection instanceof SocketHttpSecureConnection) {
+				if (((SocketHttpSecureConnection) httpConnection).isSessionResumed()) {
+					resumedHandshakesCount.incrementAndGet();
+				} else {
+					fullHandshakesCount.incrementAndGet();
+				}
+				httpConnection.setOpenTimes(connected - start, System.nanoTime() - connected);
+			}
+			else {
+				httpConnection.setOpenTimes(connected - start, 0);
+			}
 		}
 		catch (Throwable throwable) {  			// @wjw_add
 			httpConnection.close();
@@ -131,22 +397,42 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 	}
 
 	/**
-	 * Creates a socket using socket factory.
+	 * Creates a socket using socket factory. Direct connections are made to the
+	 * addresses resolved by the {@link #setHostResolver(HostResolver) host resolver},
+	 * while proxy socket factories connect to the proxy on their own.
 	 */
 	protected Socket createSocket(final String host, final int port, final int connectionTimeout) throws IOException {
 		final SocketFactory socketFactory = resolveSocketFactory(proxy, false, false, connectionTimeout);
 
-		if (connectionTimeout < 0) {
+		if (!resolvesHost()) {
 			return socketFactory.createSocket(host, port);
 		}
-		else {
-			// creates unconnected socket
-			Socket socket = socketFactory.createSocket();
 
-			socket.connect(new InetSocketAddress(host, port), connectionTimeout);
+		return connectSocket(socketFactory, host, port, connectionTimeout);
+	}
 
-			return socket;
-		}
+	/**
+	 * Returns <code>true</code> if the host name is resolved by the provider
+	 * before connecting, i.e. for direct connections. Otherwise, the proxy
+	 * socket factory connects to the host.
+	 */
+	protected boolean resolvesHost() {
+		return proxy.getProxyType() == ProxyInfo.ProxyType.NONE;
+	}
+
+	/**
+	 * Connects a socket created by the socket factory to the host. All addresses
+	 * resolved by the {@link HostResolver} are tried, using the {@link HappyEyeballsConnector}.
+	 * Socket options are applied before connecting. Negative connection timeout means no timeout.
+	 */
+	protected Socket connectSocket(
+			final SocketFactory socketFactory, final String host,
+			final int port, final int connectionTimeout) throws IOException {
+
+		final InetAddress[] addresses = hostResolver.resolve(host);
+
+		return new HappyEyeballsConnector(socketFactory, connectionAttemptDelay, socketOptions)
+			.connect(addresses, port, Math.max(connectionTimeout, 0));
 	}
 
 	/**
@@ -160,28 +446,23 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 
 		final Socket socket;
 
-		if (connectionTimeout < 0) {
+		if (!resolvesHost()) {
+			// proxy socket factories connect with the connection timeout
 			socket = socketFactory.createSocket(host, port);
 		}
 		else {
-			// creates unconnected socket
-			// unfortunately, this does not work always
-
-//			sslSocket = (SSLSocket) socketFactory.createSocket();
-//			sslSocket.connect(new InetSocketAddress(host, port), connectionTimeout);
-
 			//
 			// Note: SSLSocketFactory has several create() methods.
 			// Those that take arguments all connect immediately
 			// and have no options for specifying a connection timeout.
 			//
 			// So, we have to create a socket and connect it (with a
-			// connection timeout), then have the SSLSocketFactory wrap
-			// the already-connected socket.
+			// connection timeout) to the resolved address, then have
+			// the SSLSocketFactory wrap the already-connected socket.
+			// Wrapping with the host name keeps the SNI and the host
+			// name verification working.
 			//
-			socket = Sockets.connect(host, port, connectionTimeout);
-			//sock.setSoTimeout(readTimeout);
-			//socket.connect(new InetSocketAddress(host, port), connectionTimeout);
+			socket = connectSocket(SocketFactory.getDefault(), host, port, connectionTimeout);
 
 			// continue to wrap this plain socket with ssl socket...
 		}
@@ -228,19 +509,55 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 
 	/**
 	 * Returns default SSL socket factory allowing setting trust managers.
+	 * Factories are cached per SSL protocol and trust-all flag, so the SSL
+	 * context is initialized only once. Sharing the context also shares its
+	 * TLS session cache, so the sessions get resumed on new connections.
 	 */
 	protected SSLSocketFactory getDefaultSSLSocketFactory(final boolean trustAllCertificates) throws IOException {
-		if (trustAllCertificates) {
-			try {
-				SSLContext sc = SSLContext.getInstance(sslProtocol);
-				sc.init(null, TrustManagers.TRUST_ALL_CERTS, new java.security.SecureRandom());
-				return sc.getSocketFactory();
+		if (sslContextSocketFactory != null) {
+			return sslContextSocketFactory;
+		}
+		final boolean useDefault = !trustAllCertificates && keyManagers == null && trustManagers == null;
+
+		final String key = useDefault ? "default" : (trustAllCertificates ? sslProtocol + ":trust-all" : sslProtocol);
+
+		SSLSocketFactory sslSocketFactory = sslSocketFactories.get(key);
+
+		if (sslSocketFactory == null) {
+			if (useDefault) {
+				sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+			}
+			else {
+				sslSocketFactory = createSSLContext(trustAllCertificates).getSocketFactory();
+			}
+
+			final SSLSocketFactory existing = sslSocketFactories.putIfAbsent(key, sslSocketFactory);
+			if (existing != null) {
+				sslSocketFactory = existing;
+			}
+		}
+
+		return sslSocketFactory;
+	}
+
+	/**
+	 * Creates new SSL context with provided key and trust managers.
+	 */
+	protected SSLContext createSSLContext(final boolean trustAllCertificates) throws IOException {
+		try {
+			final SSLContext sslContext = SSLContext.getInstance(sslProtocol);
+			sslContext.init(keyManagers, trustAllCertificates ? TrustManagers.TRUST_ALL_CERTS : trustManagers, null);
+
+			if (sslSessionCacheSize >= 0) {
+				sslContext.getClientSessionContext().setSessionCacheSize(sslSessionCacheSize);
 			}
-			catch (NoSuchAlgorithmException | KeyManagementException e) {
-				throw new IOException(e);
+			if (sslSessionTimeout >= 0) {
+				sslContext.getClientSessionContext().setSessionTimeout(sslSessionTimeout);
 			}
-		} else {
-			return (SSLSocketFactory) SSLSocketFactory.getDefault();
+			return sslContext;
+		}
+		catch (NoSuchAlgorithmException | KeyManagementException e) {
+			throw new IOException(e);
 		}
 	}
 
@@ -262,11 +579,11 @@ public class SocketHttpConnectionProvider implements HttpConnectionProvider {
 					return SocketFactory.getDefault();
 				}
 			case HTTP:
-				return new HTTPProxySocketFactory(proxy, connectionTimeout);
+				return new HTTPProxySocketFactory(proxy, connectionTimeout, hostResolver);
 			case SOCKS4:
-				return new Socks4ProxySocketFactory(proxy, connectionTimeout);
+				return new Socks4ProxySocketFactory(proxy, connectionTimeout, hostResolver);
 			case SOCKS5:
-				return new Socks5ProxySocketFactory(proxy, connectionTimeout);
+				return new Socks5ProxySocketFactory(proxy, connectionTimeout, hostResolver);
 			default:
 				throw new HttpException("Invalid proxy type " + proxy.getProxyType());
 		}
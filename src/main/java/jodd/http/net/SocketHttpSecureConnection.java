@@ -30,16 +30,50 @@ import java.io.IOException;
 
 public class SocketHttpSecureConnection extends SocketHttpConnection {
 	private final SSLSocket sslSocket;
+	private boolean handshakeDone;
+	private boolean sessionResumed;
 
 	public SocketHttpSecureConnection(final SSLSocket socket) {
 		super(socket);
 		this.sslSocket = socket;
 	}
 
+	/**
+	 * Creates connection over the socket that already completed the handshake.
+	 */
+	SocketHttpSecureConnection(final SSLSocket socket, final boolean sessionResumed) {
+		this(socket);
+		this.handshakeDone = true;
+		this.sessionResumed = sessionResumed;
+	}
+
 	@Override
 	public void init() throws IOException {
 		super.init();
 
+		if (!handshakeDone) {
+			sessionResumed = handshake(sslSocket);
+			handshakeDone = true;
+		}
+	}
+
+	/**
+	 * Performs the handshake and returns <code>true</code> if the previous session was resumed.
+	 */
+	static boolean handshake(final SSLSocket sslSocket) throws IOException {
+		final long handshakeStart = System.currentTimeMillis();
+
 		sslSocket.startHandshake();
+
+		// abbreviated handshake reuses the session created by some previous handshake
+		return sslSocket.getSession().getCreationTime() < handshakeStart;
+	}
+
+	/**
+	 * Returns <code>true</code> if previous TLS session was resumed during
+	 * the handshake, i.e. if abbreviated handshake was performed.
+	 */
+	public boolean isSessionResumed() {
+		return sessionResumed;
 	}
 }
\ No newline at end of file
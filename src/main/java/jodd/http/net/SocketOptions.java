@@ -0,0 +1,121 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Profile of socket options applied to every socket of a
+ * {@link SocketHttpConnectionProvider}: direct, proxied and SSL sockets alike.
+ * Options that are not set keep the platform defaults.
+ * <p>
+ * Options are applied before the provider connects the socket, as receive buffer
+ * sizes above 64K take part in the TCP window scale negotiation during the connect.
+ * Sockets connected elsewhere, i.e. by the proxy socket factories, and wrapping SSL
+ * sockets get the options once connected.
+ */
+public class SocketOptions {
+
+	private Boolean tcpNoDelay;
+	private Integer sendBufferSize;
+	private Integer receiveBufferSize;
+	private Boolean keepAlive;
+	private Integer soLinger;
+	private Integer trafficClass;
+
+	/**
+	 * Enables or disables <code>TCP_NODELAY</code>, i.e. disables or enables the Nagle's algorithm.
+	 */
+	public SocketOptions tcpNoDelay(final boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+
+	/**
+	 * Sets <code>SO_SNDBUF</code> size in bytes.
+	 */
+	public SocketOptions sendBufferSize(final int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+		return this;
+	}
+
+	/**
+	 * Sets <code>SO_RCVBUF</code> size in bytes.
+	 */
+	public SocketOptions receiveBufferSize(final int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+		return this;
+	}
+
+	/**
+	 * Enables or disables <code>SO_KEEPALIVE</code>.
+	 */
+	public SocketOptions keepAlive(final boolean keepAlive) {
+		this.keepAlive = keepAlive;
+		return this;
+	}
+
+	/**
+	 * Sets <code>SO_LINGER</code> time in seconds. Negative value disables the option.
+	 */
+	public SocketOptions soLinger(final int seconds) {
+		this.soLinger = seconds;
+		return this;
+	}
+
+	/**
+	 * Sets traffic class (i.e. type-of-service) of sent IP packets.
+	 */
+	public SocketOptions trafficClass(final int trafficClass) {
+		this.trafficClass = trafficClass;
+		return this;
+	}
+
+	/**
+	 * Applies all set options on the socket.
+	 */
+	public void apply(final Socket socket) throws SocketException {
+		if (tcpNoDelay != null) {
+			socket.setTcpNoDelay(tcpNoDelay);
+		}
+		if (sendBufferSize != null) {
+			socket.setSendBufferSize(sendBufferSize);
+		}
+		if (receiveBufferSize != null) {
+			socket.setReceiveBufferSize(receiveBufferSize);
+		}
+		if (keepAlive != null) {
+			socket.setKeepAlive(keepAlive);
+		}
+		if (soLinger != null) {
+			socket.setSoLinger(soLinger >= 0, Math.max(soLinger, 0));
+		}
+		if (trafficClass != null) {
+			socket.setTrafficClass(trafficClass);
+		}
+	}
+}
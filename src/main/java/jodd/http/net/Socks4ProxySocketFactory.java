@@ -44,10 +44,19 @@ public class Socks4ProxySocketFactory extends SocketFactory {
 
 	private final ProxyInfo proxy;
 	private final int connectionTimeout;
+	private final HostResolver hostResolver;
 
 	public Socks4ProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout) {
+		this(proxy, connectionTimeout, HostResolver.SYSTEM);
+	}
+
+	/**
+	 * Creates socket factory that resolves the proxy host with the given resolver.
+	 */
+	public Socks4ProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout, final HostResolver hostResolver) {
 		this.proxy = proxy;
 		this.connectionTimeout = connectionTimeout;
+		this.hostResolver = hostResolver;
 	}
 
 	@Override
@@ -85,7 +94,11 @@ public class Socks4ProxySocketFactory extends SocketFactory {
 		final String user = proxy.getProxyUsername();
 
 		try {
-			socket = Sockets.connect(proxyHost, proxyPort, connectionTimeout);
+			socket = Sockets.connect(hostResolver, proxyHost, proxyPort, connectionTimeout);
+			if (connectionTimeout > 0) {
+				// negotiation with the proxy is part of the connecting
+				socket.setSoTimeout(connectionTimeout);
+			}
 
 			final InputStream in = socket.getInputStream();
 			final OutputStream out = socket.getOutputStream();
@@ -141,6 +154,7 @@ public class Socks4ProxySocketFactory extends SocketFactory {
 			final byte[] temp = new byte[2];
 			in.read(temp, 0, 2);
 
+			socket.setSoTimeout(0);
 			return socket;
 		} catch (final RuntimeException rtex) {
 			closeSocket(socket);
@@ -45,10 +45,19 @@ public class Socks5ProxySocketFactory extends SocketFactory {
 
 	private final ProxyInfo proxy;
 	private final int connectionTimeout;
+	private final HostResolver hostResolver;
 
 	public Socks5ProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout) {
+		this(proxy, connectionTimeout, HostResolver.SYSTEM);
+	}
+
+	/**
+	 * Creates socket factory that resolves the proxy host with the given resolver.
+	 */
+	public Socks5ProxySocketFactory(final ProxyInfo proxy, final int connectionTimeout, final HostResolver hostResolver) {
 		this.proxy = proxy;
 		this.connectionTimeout = connectionTimeout;
+		this.hostResolver = hostResolver;
 	}
 
 	@Override
@@ -85,7 +94,11 @@ public class Socks5ProxySocketFactory extends SocketFactory {
 		final String passwd = proxy.getProxyPassword();
 
 		try {
-			socket = Sockets.connect(proxyAddress, proxyPort, connectionTimeout);
+			socket = Sockets.connect(hostResolver, proxyAddress, proxyPort, connectionTimeout);
+			if (connectionTimeout > 0) {
+				// negotiation with the proxy is part of the connecting
+				socket.setSoTimeout(connectionTimeout);
+			}
 
 			final InputStream in = socket.getInputStream();
 			final OutputStream out = socket.getOutputStream();
@@ -200,6 +213,7 @@ public class Socks5ProxySocketFactory extends SocketFactory {
 					break;
 				default:
 			}
+			socket.setSoTimeout(0);
 			return socket;
 		} catch (final RuntimeException rttex) {
 			closeSocket(socket);
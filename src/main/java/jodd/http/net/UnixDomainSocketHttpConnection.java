@@ -0,0 +1,276 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link HttpConnection} over a connected Unix domain socket channel.
+ * Channel is used in non-blocking mode, so the timeout can be applied
+ * to each read and write.
+ * @see UnixDomainSocketHttpConnectionProvider
+ */
+public class UnixDomainSocketHttpConnection implements HttpConnection {
+
+	protected final SocketChannel channel;
+	private final Selector selector;
+	private final SelectionKey selectionKey;
+	private final InputStream inputStream = new ChannelInputStream();
+	private final OutputStream outputStream = new ChannelOutputStream();
+
+	private int timeout;
+	private volatile boolean used;
+	private long connectTime = -1;
+
+	private volatile long lastUsedTime = System.currentTimeMillis();
+	private volatile long keepAliveTimeout = -1;
+	private volatile int keepAliveMax = -1;
+	private long keepAliveMargin;
+
+	public UnixDomainSocketHttpConnection(final SocketChannel channel) throws IOException {
+		this.channel = channel;
+		this.selector = Selector.open();
+
+		try {
+			channel.configureBlocking(false);
+			this.selectionKey = channel.register(selector, 0);
+		}
+		catch (final IOException ioex) {
+			selector.close();
+			throw ioex;
+		}
+	}
+
+	@Override
+	public void init() {
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	@Override
+	public void close() {
+		try {
+			selector.close();
+		}
+		catch (final IOException ignore) {
+		}
+		try {
+			channel.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+
+	@Override
+	public void setTimeout(final int milliseconds) {
+		this.timeout = milliseconds;
+	}
+
+	@Override
+	public void markUsed(final long keepAliveTimeout, final int keepAliveMax) {
+		this.used = true;
+		this.lastUsedTime = System.currentTimeMillis();
+		this.keepAliveTimeout = keepAliveTimeout;
+		this.keepAliveMax = keepAliveMax;
+	}
+
+	/**
+	 * Defines the time in milliseconds before the server keep-alive timeout
+	 * when connection is already considered as expired. Margin is never
+	 * larger than the half of the timeout.
+	 */
+	public void setKeepAliveMargin(final long milliseconds) {
+		this.keepAliveMargin = milliseconds;
+	}
+
+	/**
+	 * Returns the time when connection expires, or <code>-1</code>
+	 * if server did not specify the keep-alive timeout.
+	 */
+	public long getExpirationTime() {
+		final long timeout = keepAliveTimeout;
+		if (timeout < 0) {
+			return -1;
+		}
+		return lastUsedTime + timeout - Math.min(keepAliveMargin, timeout / 2);
+	}
+
+	/**
+	 * Returns <code>true</code> if channel is open and the server's
+	 * "Keep-Alive" timeout and max number of requests are not reached.
+	 */
+	@Override
+	public boolean isReusable() {
+		if (!channel.isOpen() || keepAliveMax == 0) {
+			return false;
+		}
+		final long expirationTime = getExpirationTime();
+
+		return expirationTime == -1 || System.currentTimeMillis() < expirationTime;
+	}
+
+	@Override
+	public boolean isReused() {
+		return used;
+	}
+
+	/**
+	 * Checks if the peer has closed the idle connection. Idle connection
+	 * must not receive any data, so both the end of stream and unexpected
+	 * data mark the connection as stale.
+	 */
+	@Override
+	public boolean isStale() {
+		if (!channel.isOpen()) {
+			return true;
+		}
+		try {
+			return channel.read(ByteBuffer.allocate(1)) != 0;
+		}
+		catch (final IOException ioex) {
+			return true;
+		}
+	}
+
+	/**
+	 * Records the time in nanoseconds spent to connect the channel.
+	 */
+	public void setConnectTime(final long connectTime) {
+		this.connectTime = connectTime;
+	}
+
+	@Override
+	public long getConnectTime() {
+		return connectTime;
+	}
+
+	@Override
+	public long getHandshakeTime() {
+		return 0;
+	}
+
+	/**
+	 * Returns the channel of this connection.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Waits until the channel is ready for the operation, or until the timeout expires.
+	 */
+	private void await(final int operation) throws IOException {
+		final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+		selectionKey.interestOps(operation);
+		try {
+			while (true) {
+				long waitTime = 0;
+				if (deadline != 0) {
+					waitTime = deadline - System.currentTimeMillis();
+					if (waitTime <= 0) {
+						throw new SocketTimeoutException(operation == SelectionKey.OP_READ ? "Read timed out" : "Write timed out");
+					}
+				}
+				if (selector.select(waitTime) > 0) {
+					selector.selectedKeys().clear();
+					return;
+				}
+			}
+		}
+		finally {
+			selectionKey.interestOps(0);
+		}
+	}
+
+	private class ChannelInputStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			final byte[] bytes = new byte[1];
+			final int read = read(bytes, 0, 1);
+			return read == -1 ? -1 : bytes[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (true) {
+				final int read = channel.read(buffer);
+				if (read != 0) {
+					return read;
+				}
+				await(SelectionKey.OP_READ);
+			}
+		}
+
+		@Override
+		public void close() {
+			UnixDomainSocketHttpConnection.this.close();
+		}
+	}
+
+	private class ChannelOutputStream extends OutputStream {
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (buffer.hasRemaining()) {
+				if (channel.write(buffer) == 0) {
+					await(SelectionKey.OP_WRITE);
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			UnixDomainSocketHttpConnection.this.close();
+		}
+	}
+}
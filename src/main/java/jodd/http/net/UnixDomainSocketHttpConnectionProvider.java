@@ -0,0 +1,182 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http.net;
+
+import jodd.http.HttpConnection;
+import jodd.http.HttpConnectionProvider;
+import jodd.http.HttpException;
+import jodd.http.HttpRequest;
+import jodd.http.ProxyInfo;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Connection provider that connects to a local server over the Unix domain socket,
+ * regardless of the request host and port. Useful for talking to sidecars
+ * and local daemons, as it skips the TCP stack. Request URL still defines
+ * the path and the "Host" header. Secure connections and proxies are
+ * not supported.
+ * <p>
+ * Unix domain socket channels are available since Java 16; they are looked
+ * up at runtime, so this class can be loaded on Java 8, too.
+ * See {@link #isSupported()}.
+ */
+public class UnixDomainSocketHttpConnectionProvider implements HttpConnectionProvider {
+
+	private static final ProtocolFamily UNIX = lookupUnixProtocolFamily();
+	private static final Method OPEN_CHANNEL = lookupMethod(SocketChannel.class, "open", ProtocolFamily.class);
+	private static final Method ADDRESS_OF = lookupAddressFactory();
+
+	/**
+	 * Returns <code>true</code> if JVM supports Unix domain socket channels.
+	 */
+	public static boolean isSupported() {
+		return UNIX != null && OPEN_CHANNEL != null && ADDRESS_OF != null;
+	}
+
+	protected final Path socketPath;
+	protected long keepAliveMargin = 1000;
+
+	public UnixDomainSocketHttpConnectionProvider(final Path socketPath) {
+		this.socketPath = socketPath;
+	}
+
+	public UnixDomainSocketHttpConnectionProvider(final String socketPath) {
+		this(Paths.get(socketPath));
+	}
+
+	/**
+	 * Returns the path of the socket file.
+	 */
+	public Path getSocketPath() {
+		return socketPath;
+	}
+
+	/**
+	 * Sets the time in milliseconds before the server's keep-alive timeout
+	 * when created connections stop being reused.
+	 * @see UnixDomainSocketHttpConnection#setKeepAliveMargin(long)
+	 */
+	public UnixDomainSocketHttpConnectionProvider setKeepAliveMargin(final long keepAliveMargin) {
+		this.keepAliveMargin = keepAliveMargin;
+		return this;
+	}
+
+	/**
+	 * Proxies are not supported.
+	 */
+	@Override
+	public void useProxy(final ProxyInfo proxyInfo) {
+		if (proxyInfo.getProxyType() != ProxyInfo.ProxyType.NONE) {
+			throw new HttpException("Proxy is not supported by Unix domain socket connection provider");
+		}
+	}
+
+	/**
+	 * Connects new channel to the socket file.
+	 */
+	@Override
+	public HttpConnection createHttpConnection(final HttpRequest httpRequest) throws IOException {
+		if (!isSupported()) {
+			throw new HttpException("Unix domain sockets are not supported by JVM: " + System.getProperty("java.version"));
+		}
+		if (httpRequest.protocol().equalsIgnoreCase("https")) {
+			throw new HttpException("Secure connections are not supported over Unix domain socket");
+		}
+
+		final SocketChannel channel = (SocketChannel) invoke(OPEN_CHANNEL, null, UNIX);
+
+		try {
+			final long start = System.nanoTime();
+			channel.connect((SocketAddress) invoke(ADDRESS_OF, null, socketPath));
+
+			final UnixDomainSocketHttpConnection httpConnection = new UnixDomainSocketHttpConnection(channel);
+			httpConnection.setConnectTime(System.nanoTime() - start);
+			httpConnection.setTimeout(httpRequest.timeout());
+			httpConnection.setKeepAliveMargin(keepAliveMargin);
+			httpConnection.init();
+			return httpConnection;
+		}
+		catch (final IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	private static Object invoke(final Method method, final Object target, final Object argument) throws IOException {
+		try {
+			return method.invoke(target, argument);
+		}
+		catch (final InvocationTargetException itex) {
+			final Throwable cause = itex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new HttpException(cause);
+		}
+		catch (final IllegalAccessException iaex) {
+			throw new HttpException(iaex);
+		}
+	}
+
+	private static ProtocolFamily lookupUnixProtocolFamily() {
+		try {
+			return StandardProtocolFamily.valueOf("UNIX");
+		}
+		catch (final IllegalArgumentException iaex) {
+			// older JVM
+			return null;
+		}
+	}
+
+	private static Method lookupAddressFactory() {
+		try {
+			return lookupMethod(Class.forName("java.net.UnixDomainSocketAddress"), "of", Path.class);
+		}
+		catch (final ClassNotFoundException cnfex) {
+			// older JVM
+			return null;
+		}
+	}
+
+	private static Method lookupMethod(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		}
+		catch (final NoSuchMethodException nsmex) {
+			// older JVM
+			return null;
+		}
+	}
+}
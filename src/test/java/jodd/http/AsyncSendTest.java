@@ -0,0 +1,315 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.NioHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncSendTest {
+
+	/**
+	 * Server that answers a single connection with a fixed response and keeps it open.
+	 */
+	static class RawServer implements AutoCloseable {
+		final ServerSocket serverSocket;
+		volatile Socket socket;
+		volatile int afterResponseRead;
+
+		RawServer(final String response) throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+			final Thread thread = new Thread(() -> {
+				try {
+					socket = serverSocket.accept();
+					final InputStream in = socket.getInputStream();
+					int matched = 0;
+					while (matched < 4) {
+						final int c = in.read();
+						if (c == -1) {
+							return;
+						}
+						matched = (c == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : 0;
+					}
+					if (response != null) {
+						socket.getOutputStream().write(response.getBytes(StandardCharsets.ISO_8859_1));
+						socket.getOutputStream().flush();
+					}
+					afterResponseRead = in.read();
+				}
+				catch (final IOException ignore) {
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		String url(final String path) {
+			return "http://localhost:" + serverSocket.getLocalPort() + path;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (socket != null) {
+				socket.close();
+			}
+			serverSocket.close();
+		}
+	}
+
+	private NioHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() {
+		provider = new NioHttpConnectionProvider().setIoThreads(1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+	}
+
+	@Test
+	void testManyParallelRequests() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+			for (int i = 0; i < 200; i++) {
+				futures.add(HttpRequest.get(server.url("/" + i)).withConnectionProvider(provider).sendAsync());
+			}
+
+			for (int i = 0; i < 200; i++) {
+				assertEquals("GET /" + i, futures.get(i).get(10, TimeUnit.SECONDS).bodyRaw());
+			}
+			assertEquals(200, server.requestsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testChunkedResponseAfterContinue() throws Exception {
+		try (RawServer server = new RawServer(
+			"HTTP/1.1 100 Continue\r\n\r\n" +
+			"HTTP/1.1 200 OK\r\n" +
+			"Transfer-Encoding: chunked\r\n" +
+			"\r\n" +
+			"5\r\nHello\r\n" +
+			"7\r\n, Jodd!\r\n" +
+			"0\r\n" +
+			"X-Trailer: yes\r\n" +
+			"\r\n")) {
+
+			final HttpResponse response = HttpRequest.get(server.url("/"))
+				.withConnectionProvider(provider)
+				.sendAsync()
+				.get(10, TimeUnit.SECONDS);
+
+			assertEquals(200, response.statusCode());
+			assertEquals("Hello, Jodd!", response.bodyText());
+		}
+	}
+
+	@Test
+	void testHeadResponseHasNoBody() throws Exception {
+		try (RawServer server = new RawServer(
+			"HTTP/1.1 200 OK\r\n" +
+			"Content-Length: 1000\r\n" +
+			"\r\n")) {
+
+			final HttpResponse response = HttpRequest.head(server.url("/"))
+				.withConnectionProvider(provider)
+				.sendAsync()
+				.get(10, TimeUnit.SECONDS);
+
+			assertEquals(200, response.statusCode());
+		}
+	}
+
+	@Test
+	void testRedirect() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+
+		try (RawServer redirect = new RawServer(
+			"HTTP/1.1 302 Found\r\n" +
+			"Location: " + server.url("/target") + "\r\n" +
+			"Content-Length: 0\r\n" +
+			"\r\n")) {
+
+			final HttpResponse response = HttpRequest.get(redirect.url("/"))
+				.withConnectionProvider(provider)
+				.followRedirects(true)
+				.sendAsync()
+				.get(10, TimeUnit.SECONDS);
+
+			assertEquals("GET /target", response.bodyRaw());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testTimeout() throws Exception {
+		try (RawServer server = new RawServer(null)) {
+			final CompletableFuture<HttpResponse> future = HttpRequest.get(server.url("/"))
+				.withConnectionProvider(provider)
+				.timeout(200)
+				.sendAsync();
+
+			final ExecutionException eex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+			assertTrue(eex.getCause() instanceof HttpException);
+			assertTrue(eex.getCause().getCause() instanceof SocketTimeoutException);
+		}
+	}
+
+	@Test
+	void testCancelClosesConnection() throws Exception {
+		try (RawServer server = new RawServer(null)) {
+			final CompletableFuture<HttpResponse> future = HttpRequest.get(server.url("/"))
+				.withConnectionProvider(provider)
+				.sendAsync();
+
+			for (int i = 0; i < 100 && server.socket == null; i++) {
+				Thread.sleep(20);
+			}
+			Thread.sleep(100);
+
+			assertTrue(future.cancel(true));
+
+			server.socket.setSoTimeout(5000);
+			for (int i = 0; i < 250 && server.afterResponseRead == 0; i++) {
+				Thread.sleep(20);
+			}
+			assertEquals(-1, server.afterResponseRead);
+		}
+	}
+
+	@Test
+	void testBlockingProviderFallback() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final HttpResponse response = HttpRequest.get(server.url("/blocking")).sendAsync().get(10, TimeUnit.SECONDS);
+
+			assertEquals("GET /blocking", response.bodyRaw());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testBlockingProviderRunsInGivenExecutor() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		final AtomicInteger tasks = new AtomicInteger();
+		final Executor executor = command -> {
+			tasks.incrementAndGet();
+			new Thread(command).start();
+		};
+		try {
+			final HttpResponse response = HttpRequest.get(server.url("/custom"))
+				.sendAsync(executor)
+				.get(10, TimeUnit.SECONDS);
+
+			assertEquals("GET /custom", response.bodyRaw());
+			assertEquals(1, tasks.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testAsyncProviderCompletesInGivenExecutor() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		final AtomicInteger tasks = new AtomicInteger();
+		final Executor executor = command -> {
+			tasks.incrementAndGet();
+			ForkJoinPool.commonPool().execute(command);
+		};
+		try {
+			final HttpResponse response = HttpRequest.get(server.url("/nio"))
+				.withConnectionProvider(provider)
+				.sendAsync(executor)
+				.get(10, TimeUnit.SECONDS);
+
+			assertEquals("GET /nio", response.bodyRaw());
+			assertEquals(1, tasks.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testVirtualThreads() throws Exception {
+		if (!HttpExecutors.isVirtualThreadsSupported()) {
+			assertThrows(HttpException.class, HttpExecutors::virtualThreads);
+			assertSame(ForkJoinPool.commonPool(), HttpExecutors.virtualThreadsOrCommonPool());
+			return;
+		}
+
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+			for (int i = 0; i < 200; i++) {
+				futures.add(HttpRequest.get(server.url("/" + i)).sendAsync(HttpExecutors.virtualThreads()));
+			}
+
+			for (int i = 0; i < 200; i++) {
+				assertEquals("GET /" + i, futures.get(i).get(10, TimeUnit.SECONDS).bodyRaw());
+			}
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.CachingHostResolver;
+import jodd.http.net.HostResolver;
+import jodd.http.net.SocketHttpConnectionProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingHostResolverTest {
+
+	static class CountingHostResolver implements HostResolver {
+		final AtomicInteger count = new AtomicInteger();
+		volatile InetAddress address = InetAddress.getLoopbackAddress();
+
+		@Override
+		public InetAddress[] resolve(final String host) throws UnknownHostException {
+			count.incrementAndGet();
+			if (host.endsWith(".invalid")) {
+				throw new UnknownHostException(host);
+			}
+			return new InetAddress[] {address};
+		}
+	}
+
+	@Test
+	void testAddressesAreCached() throws UnknownHostException {
+		final CountingHostResolver counting = new CountingHostResolver();
+		final CachingHostResolver resolver = new CachingHostResolver(counting);
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(InetAddress.getLoopbackAddress(), resolver.resolve("my-service.test")[0]);
+		}
+		resolver.resolve("MY-SERVICE.test");
+
+		assertEquals(1, counting.count.get());
+	}
+
+	@Test
+	void testExpiredAddressesAreResolvedAgain() throws Exception {
+		final CountingHostResolver counting = new CountingHostResolver();
+		final CachingHostResolver resolver = new CachingHostResolver(counting).setTtl(50).setRefreshAheadTime(0);
+
+		resolver.resolve("my-service.test");
+		Thread.sleep(100);
+		resolver.resolve("my-service.test");
+
+		assertEquals(2, counting.count.get());
+	}
+
+	@Test
+	void testFailedLookupIsCached() throws Exception {
+		final CountingHostResolver counting = new CountingHostResolver();
+		final CachingHostResolver resolver = new CachingHostResolver(counting).setNegativeTtl(50);
+
+		assertThrows(UnknownHostException.class, () -> resolver.resolve("nothing.invalid"));
+		assertThrows(UnknownHostException.class, () -> resolver.resolve("nothing.invalid"));
+		assertEquals(1, counting.count.get());
+
+		Thread.sleep(100);
+
+		assertThrows(UnknownHostException.class, () -> resolver.resolve("nothing.invalid"));
+		assertEquals(2, counting.count.get());
+	}
+
+	@Test
+	void testAddressesAreRefreshedAhead() throws Exception {
+		final CountingHostResolver counting = new CountingHostResolver();
+		final CachingHostResolver resolver = new CachingHostResolver(counting).setTtl(1000).setRefreshAheadTime(900);
+
+		final InetAddress first = resolver.resolve("my-service.test")[0];
+
+		counting.address = InetAddress.getByName("127.0.0.2");
+
+		// refresh starts at the half of the ttl
+		assertSame(first, resolver.resolve("my-service.test")[0]);
+		Thread.sleep(50);
+		assertEquals(1, counting.count.get());
+		Thread.sleep(500);
+
+		// stale address is returned while refreshing
+		assertSame(first, resolver.resolve("my-service.test")[0]);
+
+		for (int i = 0; i < 50 && counting.count.get() < 2; i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(20);
+
+		assertEquals(counting.address, resolver.resolve("my-service.test")[0]);
+	}
+
+	@Test
+	void testFreshAddressesAreNotRefreshed() throws Exception {
+		final CountingHostResolver counting = new CountingHostResolver();
+		// refresh-ahead longer than the ttl
+		final CachingHostResolver resolver = new CachingHostResolver(counting).setTtl(5000);
+
+		for (int i = 0; i < 10; i++) {
+			resolver.resolve("my-service.test");
+			Thread.sleep(10);
+		}
+
+		assertEquals(1, counting.count.get());
+	}
+
+	@Test
+	void testProviderUsesHostResolver() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final CountingHostResolver counting = new CountingHostResolver();
+			final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider()
+				.setHostResolver(new CachingHostResolver(counting));
+
+			for (int i = 0; i < 3; i++) {
+				final HttpResponse response = HttpRequest
+					.get("http://my-service.test:" + server.port() + "/hello")
+					.withConnectionProvider(provider)
+					.connectionTimeout(1000)
+					.send();
+
+				assertEquals("GET /hello", response.bodyRaw());
+			}
+
+			assertEquals(1, counting.count.get());
+			assertEquals(3, server.connectionsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
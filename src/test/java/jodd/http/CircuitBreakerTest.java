@@ -0,0 +1,195 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.CircuitBreaker;
+import jodd.http.net.CircuitBreakerHttpConnectionProvider;
+import jodd.http.net.CircuitBreakerOpenException;
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+	private KeepAliveTestServer server;
+	private PooledSocketHttpConnectionProvider pool;
+	private CircuitBreakerHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+		pool = new PooledSocketHttpConnectionProvider();
+		provider = new CircuitBreakerHttpConnectionProvider(pool)
+			.setFailureThreshold(2)
+			.setFailureRateThreshold(0)
+			.setOpenTime(200);
+	}
+
+	@AfterEach
+	void tearDown() {
+		pool.close();
+		server.stop();
+	}
+
+	private HttpRequest request(final String path) {
+		return HttpRequest.get(server.url(path)).timeout(100).withConnectionProvider(provider);
+	}
+
+	private void fail(final String path) {
+		server.responseDelay = 500;
+		final HttpException httpException = assertThrows(HttpException.class, () -> request(path).send());
+		assertTrue(httpException.getCause() instanceof IOException);
+		server.responseDelay = 0;
+	}
+
+	private CircuitBreaker circuitBreaker() {
+		return provider.getCircuitBreaker(request("/"));
+	}
+
+	@Test
+	void testOpensOnConsecutiveFailuresAndFailsFast() throws IOException {
+		provider.setFailureThreshold(3);
+
+		try (Socket dead = new Socket()) {
+			// bound, but not listening, so connections are refused
+			dead.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			final String url = "http://localhost:" + dead.getLocalPort() + "/down";
+
+			for (int i = 0; i < 3; i++) {
+				final HttpException httpException = assertThrows(HttpException.class,
+					() -> HttpRequest.get(url).withConnectionProvider(provider).send());
+				assertTrue(httpException.getCause() instanceof ConnectException);
+			}
+
+			final CircuitBreakerOpenException openException = assertThrows(CircuitBreakerOpenException.class,
+				() -> HttpRequest.get(url).withConnectionProvider(provider).send());
+
+			assertEquals(CircuitBreaker.State.OPEN, openException.getCircuitBreaker().getState());
+			assertEquals(1, openException.getCircuitBreaker().getRejectedCount());
+		}
+
+		// other routes are not affected
+		assertEquals(200, request("/up").send().statusCode());
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker().getState());
+	}
+
+	@Test
+	void testSuccessResetsConsecutiveFailures() {
+		fail("/one");
+		assertEquals(200, request("/two").send().statusCode());
+		fail("/three");
+
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker().getState());
+	}
+
+	@Test
+	void testSuccessfulProbeClosesBreaker() throws InterruptedException {
+		fail("/one");
+		fail("/two");
+
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker().getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> request("/three").send());
+		assertEquals(2, server.requestsCount.get());
+
+		Thread.sleep(250);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker().getState());
+
+		final HttpRequest probe = request("/probe").open();
+
+		// only one probe at a time
+		assertThrows(CircuitBreakerOpenException.class, () -> request("/four").send());
+
+		assertEquals(200, probe.send().statusCode());
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker().getState());
+		assertEquals(200, request("/five").send().statusCode());
+	}
+
+	@Test
+	void testFailedProbeOpensBreaker() throws InterruptedException {
+		fail("/one");
+		fail("/two");
+
+		Thread.sleep(250);
+		fail("/probe");
+
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker().getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> request("/three").send());
+	}
+
+	@Test
+	void testTimeoutsOnReusedConnectionsOpenBreaker() {
+		assertEquals(200, request("/warm").send().statusCode());
+
+		server.responseDelay = 500;
+		for (int i = 0; i < 2; i++) {
+			final HttpException httpException = assertThrows(HttpException.class,
+				() -> HttpRequest.post(server.url("/hung")).timeout(100).withConnectionProvider(provider).send());
+			assertTrue(httpException.getCause() instanceof IOException);
+		}
+		server.responseDelay = 0;
+
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker().getState());
+	}
+
+	@Test
+	void testStaleConnectionIsNotFailure() throws InterruptedException {
+		pool.setValidateAfterInactivity(60_000);
+		provider.setFailureThreshold(1);
+
+		assertEquals(200, request("/one").send().statusCode());
+
+		server.closeConnections();
+		Thread.sleep(100);
+
+		assertEquals(200, request("/two").send().statusCode());
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker().getState());
+		assertEquals(2, server.connectionsCount.get());
+	}
+
+	@Test
+	void testOpensOnFailureRate() {
+		provider.setFailureThreshold(0).setFailureRateThreshold(50).setWindowSize(4);
+
+		assertEquals(200, request("/one").send().statusCode());
+		fail("/two");
+		assertEquals(200, request("/three").send().statusCode());
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker().getState());
+
+		fail("/four");
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker().getState());
+	}
+}
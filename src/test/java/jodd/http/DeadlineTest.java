@@ -0,0 +1,243 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.NioHttpConnectionProvider;
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlineTest {
+
+	private KeepAliveTestServer server;
+	private ServerSocket tricklingServer;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+		tricklingServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+		final Thread thread = new Thread(this::trickle, "trickling-test-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		tricklingServer.close();
+		server.stop();
+	}
+
+	/**
+	 * Sends the response body one byte every 50ms, so the read timeout never expires.
+	 */
+	private void trickle() {
+		while (!tricklingServer.isClosed()) {
+			try (Socket socket = tricklingServer.accept()) {
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+				String line;
+				while ((line = reader.readLine()) != null && !line.isEmpty()) {
+					// skip request
+				}
+				final OutputStream out = socket.getOutputStream();
+				out.write("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+				for (int i = 0; i < 100; i++) {
+					out.write('x');
+					out.flush();
+					Thread.sleep(50);
+				}
+			}
+			catch (final IOException | InterruptedException ignore) {
+			}
+		}
+	}
+
+	private String tricklingUrl() {
+		return "http://localhost:" + tricklingServer.getLocalPort() + "/slow";
+	}
+
+	@Test
+	void testTricklingResponseIsCut() {
+		final long start = System.currentTimeMillis();
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get(tricklingUrl()).timeout(1000).deadline(300).send());
+
+		assertTrue(httpException.getMessage().startsWith("Deadline of 300ms exceeded"));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	@Test
+	void testStalledHandshakeIsCut() throws IOException {
+		// connection is established in the backlog, but server never handshakes
+		try (ServerSocket silentServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			final long start = System.currentTimeMillis();
+
+			final HttpException httpException = assertThrows(HttpException.class,
+				() -> HttpRequest.get("https://localhost:" + silentServer.getLocalPort() + "/").timeout(5000).deadline(300).send());
+
+			assertTrue(httpException.getMessage().startsWith("Deadline of 300ms exceeded"));
+			assertTrue(System.currentTimeMillis() - start < 2000);
+		}
+	}
+
+	@Test
+	void testConnectionIsKeptAfterResponse() throws InterruptedException {
+		final PooledSocketHttpConnectionProvider provider = new PooledSocketHttpConnectionProvider();
+
+		assertEquals(200, HttpRequest.get(server.url("/one")).withConnectionProvider(provider).deadline(100).send().statusCode());
+		Thread.sleep(200);
+		assertEquals(200, HttpRequest.get(server.url("/two")).withConnectionProvider(provider).deadline(100).send().statusCode());
+
+		assertEquals(1, server.connectionsCount.get());
+		provider.close();
+	}
+
+	@Test
+	void testDeadlineStopsRetries() {
+		final RetryPolicy retryPolicy = new RetryPolicy().maxAttempts(10).backoff(50, 50).jitter(false);
+		server.responseDelay = 1000;
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/retry")).timeout(100).deadline(400).retryPolicy(retryPolicy).send());
+
+		assertTrue(httpException.getMessage().startsWith("Deadline of 400ms exceeded"));
+		assertTrue(retryPolicy.retriesCount() < 9);
+	}
+
+	@Test
+	void testAsyncDeadline() {
+		final NioHttpConnectionProvider provider = new NioHttpConnectionProvider();
+		try {
+			final ExecutionException executionException = assertThrows(ExecutionException.class, () ->
+				HttpRequest.get(tricklingUrl()).withConnectionProvider(provider).deadline(300).sendAsync().get(2, TimeUnit.SECONDS));
+
+			assertEquals("Deadline of 300ms exceeded", executionException.getCause().getMessage());
+		}
+		finally {
+			provider.close();
+		}
+	}
+
+	@Test
+	void testConnectionTimeoutEndsBeforeDeadline() {
+		final Deadline deadline = new Deadline(1000);
+
+		assertTrue(deadline.connectionTimeout(5000) <= 1000);
+		assertEquals(100, deadline.connectionTimeout(100));
+		assertTrue(deadline.connectionTimeout(-1) > 0);
+		assertFalse(deadline.isExpired());
+
+		deadline.cancel();
+	}
+
+	@Test
+	void testTimer() throws InterruptedException {
+		// 8 buckets of 5ms: longer timeouts wait for more rounds
+		final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, 8, Runnable::run);
+		final List<Integer> expired = new CopyOnWriteArrayList<>();
+		final CountDownLatch latch = new CountDownLatch(3);
+
+		timer.newTimeout(() -> { expired.add(100); latch.countDown(); }, 100);
+		timer.newTimeout(() -> { expired.add(10); latch.countDown(); }, 10);
+		timer.newTimeout(() -> { expired.add(50); latch.countDown(); }, 50);
+		final HashedWheelTimer.Timeout cancelled = timer.newTimeout(() -> expired.add(-1), 30);
+
+		assertTrue(cancelled.cancel());
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		assertEquals(3, expired.size());
+		assertEquals(10, expired.get(0).intValue());
+		assertEquals(50, expired.get(1).intValue());
+		assertEquals(100, expired.get(2).intValue());
+		assertTrue(cancelled.isCancelled());
+	}
+
+	@Test
+	void testTimerRemovesCancelledTimeouts() throws InterruptedException {
+		final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, 8, Runnable::run);
+
+		final List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			timeouts.add(timer.newTimeout(() -> {}, 10_000));
+		}
+		Thread.sleep(50);
+		assertEquals(10, timer.scheduledCount());
+
+		timeouts.forEach(HashedWheelTimer.Timeout::cancel);
+		Thread.sleep(50);
+		assertEquals(0, timer.scheduledCount());
+	}
+
+	@Test
+	void testBlockingTaskDoesNotStopTimer() throws InterruptedException {
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, 8, executor);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch expired = new CountDownLatch(1);
+
+		try {
+			timer.newTimeout(() -> {
+				try {
+					blocked.await();
+				}
+				catch (final InterruptedException ignore) {
+				}
+			}, 10);
+			timer.newTimeout(expired::countDown, 50);
+
+			assertTrue(expired.await(2, TimeUnit.SECONDS));
+		}
+		finally {
+			blocked.countDown();
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.HappyEyeballsConnector;
+import jodd.http.net.SocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HappyEyeballsTest {
+
+	private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+	/**
+	 * Socket factory whose sockets never connect to the black-hole address.
+	 */
+	static class BlackHoleSocketFactory extends SocketFactory {
+		final InetAddress blackHole;
+		final CountDownLatch cancelled = new CountDownLatch(1);
+
+		BlackHoleSocketFactory(final InetAddress blackHole) {
+			this.blackHole = blackHole;
+		}
+
+		@Override
+		public Socket createSocket() {
+			return new Socket() {
+				final CountDownLatch closed = new CountDownLatch(1);
+
+				@Override
+				public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+					if (!((InetSocketAddress) endpoint).getAddress().equals(blackHole)) {
+						super.connect(endpoint, timeout);
+						return;
+					}
+					try {
+						if (!closed.await(timeout == 0 ? Long.MAX_VALUE : timeout, TimeUnit.MILLISECONDS)) {
+							throw new SocketTimeoutException("connect timed out");
+						}
+					}
+					catch (final InterruptedException iex) {
+						throw new SocketException("interrupted");
+					}
+					cancelled.countDown();
+					throw new SocketException("Socket closed");
+				}
+
+				@Override
+				public synchronized void close() throws IOException {
+					closed.countDown();
+					super.close();
+				}
+			};
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress host, final int port) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private ServerSocket serverSocket;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		serverSocket = new ServerSocket(0, 50, LOOPBACK);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		serverSocket.close();
+	}
+
+	@Test
+	void testUnresponsiveAddressIsSkipped() throws Exception {
+		final InetAddress blackHole = InetAddress.getByName("127.0.0.2");
+		final BlackHoleSocketFactory socketFactory = new BlackHoleSocketFactory(blackHole);
+
+		final long start = System.currentTimeMillis();
+
+		final Socket socket = new HappyEyeballsConnector(socketFactory, 50)
+			.connect(new InetAddress[] {blackHole, LOOPBACK}, serverSocket.getLocalPort(), 10_000);
+
+		try {
+			assertEquals(LOOPBACK, socket.getInetAddress());
+			assertTrue(System.currentTimeMillis() - start < 5_000);
+			assertTrue(socketFactory.cancelled.await(5, TimeUnit.SECONDS));
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	void testAllAddressesUnresponsive() throws Exception {
+		final InetAddress blackHole = InetAddress.getByName("127.0.0.2");
+		final BlackHoleSocketFactory socketFactory = new BlackHoleSocketFactory(blackHole);
+
+		assertThrows(SocketTimeoutException.class, () ->
+			new HappyEyeballsConnector(socketFactory, 50)
+				.connect(new InetAddress[] {blackHole, blackHole}, serverSocket.getLocalPort(), 300));
+	}
+
+	@Test
+	void testRefusedAddressFallsBack() throws Exception {
+		final InetAddress refused = InetAddress.getByName("127.0.0.3");
+
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider()
+			.setHostResolver(host -> new InetAddress[] {refused, LOOPBACK})
+			.setConnectionAttemptDelay(10_000);
+
+		final HttpRequest request = HttpRequest.get("http://my-service.test:" + serverSocket.getLocalPort())
+			.withConnectionProvider(provider)
+			.connectionTimeout(10_000)
+			.open();
+
+		try {
+			assertTrue(request.connection() != null);
+		}
+		finally {
+			request.connection().close();
+		}
+	}
+
+	@Test
+	void testDefaultConfigurationTriesAllAddresses() throws IOException {
+		final AtomicInteger connects = new AtomicInteger();
+
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider() {
+			@Override
+			protected Socket connectSocket(
+					final SocketFactory socketFactory, final String host,
+					final int port, final int connectionTimeout) throws IOException {
+				connects.incrementAndGet();
+				return super.connectSocket(socketFactory, host, port, connectionTimeout);
+			}
+		};
+
+		// no connection timeout and the system resolver
+		final HttpRequest request = HttpRequest.get("http://localhost:" + serverSocket.getLocalPort())
+			.withConnectionProvider(provider)
+			.open();
+
+		try {
+			assertEquals(1, connects.get());
+		}
+		finally {
+			request.connection().close();
+		}
+	}
+
+	@Test
+	void testSocketsConnectFallsBack() throws IOException {
+		final InetAddress refused = InetAddress.getByName("127.0.0.3");
+
+		try (Socket socket = Sockets.connect(host -> new InetAddress[] {refused, LOOPBACK}, "my-service.test", serverSocket.getLocalPort(), 0)) {
+			assertEquals(LOOPBACK, socket.getInetAddress());
+		}
+	}
+}
@@ -0,0 +1,194 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.LoadBalancingHttpConnectionProvider;
+import jodd.http.net.SocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedRequestTest {
+
+	private KeepAliveTestServer slow;
+	private KeepAliveTestServer fast;
+	private LoadBalancingHttpConnectionProvider provider;
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		slow = new KeepAliveTestServer();
+		slow.responseDelay = 2000;
+		fast = new KeepAliveTestServer();
+
+		// replicated backend: the original request goes to the slow replica, the hedge to the fast one
+		provider = new LoadBalancingHttpConnectionProvider();
+		provider.setEndpoints("backend", Arrays.asList(address(slow), address(fast)));
+
+		// attempts are blocking calls, they need a thread each
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+		provider.close();
+		slow.stop();
+		fast.stop();
+	}
+
+	private static InetSocketAddress address(final KeepAliveTestServer server) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+	}
+
+	@Test
+	void testHedgeWinsOverStalledBackend() throws Exception {
+		final HedgePolicy hedgePolicy = new HedgePolicy().delay(50);
+
+		final long start = System.currentTimeMillis();
+		final HttpResponse response = HttpRequest.get("http://backend/hello")
+			.withConnectionProvider(provider)
+			.hedge(hedgePolicy)
+			.sendAsync(executor)
+			.get();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("GET /hello", response.bodyRaw());
+		assertTrue(System.currentTimeMillis() - start < 1500);
+
+		assertEquals(1, hedgePolicy.hedgesCount());
+		assertEquals(1, hedgePolicy.hedgeWinsCount());
+		assertEquals(1, fast.requestsCount.get());
+
+		// the winning connection is returned to the pool
+		assertEquals(200, HttpRequest.get("http://backend/next").withConnectionProvider(provider).send().statusCode());
+		assertEquals(1, fast.connectionsCount.get());
+	}
+
+	@Test
+	void testHedgeWinDoesNotLowerDelay() throws Exception {
+		// lowest percentile: any shorter sample would lower the delay
+		final HedgePolicy hedgePolicy = new HedgePolicy().percentile(1, 20);
+		for (int i = 0; i < 20; i++) {
+			hedgePolicy.recordLatency(100);
+		}
+		assertEquals(100, hedgePolicy.hedgeDelay());
+
+		final HttpResponse response = HttpRequest.get("http://backend/hello")
+			.withConnectionProvider(provider)
+			.hedge(hedgePolicy)
+			.sendAsync(executor)
+			.get();
+
+		assertEquals(200, response.statusCode());
+		assertEquals(1, hedgePolicy.hedgeWinsCount());
+		assertTrue(hedgePolicy.hedgeDelay() >= 100);
+	}
+
+	@Test
+	void testFastResponseIsNotHedged() throws Exception {
+		final HedgePolicy hedgePolicy = new HedgePolicy().delay(1000);
+
+		final HttpResponse response = HttpRequest.get(fast.url("/hello"))
+			.hedge(hedgePolicy)
+			.sendAsync(executor)
+			.get();
+
+		assertEquals("GET /hello", response.bodyRaw());
+		assertEquals(0, hedgePolicy.hedgesCount());
+		assertEquals(1, fast.requestsCount.get());
+	}
+
+	@Test
+	void testNonIdempotentRequestIsNotHedged() throws Exception {
+		final HedgePolicy hedgePolicy = new HedgePolicy().delay(50);
+		slow.responseDelay = 300;
+
+		final HttpResponse response = HttpRequest.post("http://backend/post")
+			.withConnectionProvider(provider)
+			.hedge(hedgePolicy)
+			.sendAsync(executor)
+			.get();
+
+		assertEquals("POST /post", response.bodyRaw());
+		assertEquals(0, hedgePolicy.hedgesCount());
+		assertEquals(0, fast.requestsCount.get());
+	}
+
+	@Test
+	void testFailedRequest() throws IOException {
+		final HedgePolicy hedgePolicy = new HedgePolicy().delay(1000);
+
+		try (Socket dead = new Socket()) {
+			// bound, but not listening, so connections are refused
+			dead.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+			final ExecutionException executionException = assertThrows(ExecutionException.class, () ->
+				HttpRequest.get("http://localhost:" + dead.getLocalPort() + "/down")
+					.withConnectionProvider(new SocketHttpConnectionProvider())
+					.hedge(hedgePolicy)
+					.sendAsync(executor)
+					.get());
+
+			assertTrue(executionException.getCause() instanceof HttpException);
+			assertTrue(executionException.getCause().getCause() instanceof ConnectException);
+		}
+		assertEquals(0, hedgePolicy.hedgesCount());
+	}
+
+	@Test
+	void testAdaptiveDelay() {
+		final HedgePolicy hedgePolicy = new HedgePolicy().delay(100).percentile(95, 20);
+
+		for (int i = 1; i <= 19; i++) {
+			hedgePolicy.recordLatency(i);
+		}
+		assertEquals(100, hedgePolicy.hedgeDelay());
+
+		hedgePolicy.recordLatency(20);
+		assertEquals(19, hedgePolicy.hedgeDelay());
+
+		// old samples are replaced
+		for (int i = 0; i < 20; i++) {
+			hedgePolicy.recordLatency(500);
+		}
+		assertEquals(500, hedgePolicy.hedgeDelay());
+	}
+}
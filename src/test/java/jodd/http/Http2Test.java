@@ -0,0 +1,255 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.Http2HttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Http2Test {
+
+	private Http2TestServer server;
+	private Http2HttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new Http2TestServer();
+		provider = new Http2HttpConnectionProvider();
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+		server.stop();
+	}
+
+	@Test
+	void testGet() {
+		final HttpResponse response = HttpRequest.get(server.url("/hello?a=1"))
+			.header("Connection", "keep-alive")
+			.withConnectionProvider(provider)
+			.send();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("HTTP/2", response.httpVersion());
+		assertEquals("GET /hello?a=1", response.bodyText());
+		assertEquals("text/plain", response.header("Content-Type"));
+
+		final List<Map.Entry<String, String>> headers = server.requestHeaders.get(0);
+		assertTrue(headers.contains(entry(":authority", "localhost:" + server.port())));
+		assertTrue(headers.contains(entry(":scheme", "http")));
+		for (final Map.Entry<String, String> header : headers) {
+			assertFalse(header.getKey().equals("connection"));
+			assertFalse(header.getKey().equals("host"));
+		}
+	}
+
+	@Test
+	void testRequestsShareConnection() {
+		final ExecutorService executorService = Executors.newFixedThreadPool(20);
+		try {
+			final long start = System.currentTimeMillis();
+
+			final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(HttpRequest.get(server.url("/sleep/300/" + i)).withConnectionProvider(provider).sendAsync(executorService));
+			}
+			for (int i = 0; i < 20; i++) {
+				assertEquals("GET /sleep/300/" + i, futures.get(i).join().bodyText());
+			}
+
+			assertTrue(System.currentTimeMillis() - start < 3000);
+			assertEquals(1, server.connectionsCount.get());
+			assertEquals(20, server.streamsCount.get());
+			assertEquals(1, provider.getConnectionsCount());
+		}
+		finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	void testMaxConcurrentStreams() {
+		server.maxConcurrentStreams = 2;
+
+		HttpRequest.get(server.url("/first")).withConnectionProvider(provider).send();
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(HttpRequest.get(server.url("/sleep/300")).withConnectionProvider(provider).sendAsync(executorService));
+			}
+			for (final CompletableFuture<HttpResponse> future : futures) {
+				assertEquals(200, future.join().statusCode());
+			}
+		}
+		finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(2, server.connectionsCount.get());
+	}
+
+	@Test
+	void testLargeResponseWithSmallWindow() {
+		provider.setStreamWindowSize(16384).setConnectionWindowSize(65535);
+
+		final HttpResponse response = HttpRequest.get(server.url("/bytes/1000000")).withConnectionProvider(provider).send();
+
+		assertEquals(1000000, response.bodyBytes().length);
+	}
+
+	@Test
+	void testPostWithSmallServerWindow() {
+		server.initialWindowSize = 1000;
+
+		final byte[] body = new byte[200000];
+		Arrays.fill(body, (byte) 'a');
+
+		final HttpResponse response = HttpRequest.post(server.url("/upload"))
+			.body(body, "application/octet-stream")
+			.withConnectionProvider(provider)
+			.send();
+
+		assertEquals("POST /upload 200000", response.bodyText());
+	}
+
+	@Test
+	void testResponseWithoutContentLength() {
+		final HttpResponse response = HttpRequest.get(server.url("/chunked")).withConnectionProvider(provider).send();
+
+		assertEquals("GET /chunked", response.bodyText());
+		assertEquals("done", response.header("x-trailer"));
+	}
+
+	@Test
+	void testHead() {
+		final HttpResponse response = HttpRequest.head(server.url("/head")).withConnectionProvider(provider).send();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("", response.bodyRaw());
+
+		assertEquals("GET /next", HttpRequest.get(server.url("/next")).withConnectionProvider(provider).send().bodyText());
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testTimeoutResetsOnlyTheStream() {
+		final HttpException httpException = assertThrows(HttpException.class, () ->
+			HttpRequest.get(server.url("/sleep/2000")).timeout(200).withConnectionProvider(provider).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+
+		assertEquals("GET /next", HttpRequest.get(server.url("/next")).withConnectionProvider(provider).send().bodyText());
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testHttpsNegotiatesHttp2() throws Exception {
+		final Http2TestServer httpsServer = new Http2TestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		try {
+			for (int i = 0; i < 3; i++) {
+				final HttpResponse response = HttpRequest.get(httpsServer.url("/secure" + i))
+					.trustAllCerts(true)
+					.withConnectionProvider(provider)
+					.send();
+
+				assertEquals("HTTP/2", response.httpVersion());
+				assertEquals("GET /secure" + i, response.bodyText());
+			}
+			assertEquals(1, httpsServer.connectionsCount.get());
+		}
+		finally {
+			httpsServer.stop();
+		}
+	}
+
+	@Test
+	void testHttpsFallsBackToHttp11() throws Exception {
+		final KeepAliveTestServer httpsServer = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		try {
+			for (int i = 0; i < 2; i++) {
+				final HttpResponse response = HttpRequest.get(httpsServer.url("/old" + i))
+					.trustAllCerts(true)
+					.withConnectionProvider(provider)
+					.send();
+
+				assertEquals("HTTP/1.1", response.httpVersion());
+				assertEquals("GET /old" + i, response.bodyText());
+			}
+			assertEquals(0, provider.getConnectionsCount());
+			// the negotiated HTTP/1.1 connection is used by the first request
+			assertEquals(2, httpsServer.connectionsCount.get());
+		}
+		finally {
+			httpsServer.stop();
+		}
+	}
+
+	@Test
+	void testTrustAllConnectionIsNotShared() throws Exception {
+		final Http2TestServer httpsServer = new Http2TestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		try {
+			final HttpResponse response = HttpRequest.get(httpsServer.url("/trusted"))
+				.trustAllCerts(true)
+				.withConnectionProvider(provider)
+				.send();
+			assertEquals("HTTP/2", response.httpVersion());
+
+			// self-signed certificate must be verified on its own connection
+			assertThrows(HttpException.class, () -> HttpRequest.get(httpsServer.url("/verified"))
+				.withConnectionProvider(provider)
+				.send());
+
+			assertEquals(2, httpsServer.connectionsCount.get());
+		}
+		finally {
+			httpsServer.stop();
+		}
+	}
+
+	private static Map.Entry<String, String> entry(final String name, final String value) {
+		return new AbstractMap.SimpleImmutableEntry<>(name, value);
+	}
+}
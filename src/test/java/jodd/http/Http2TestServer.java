@@ -0,0 +1,444 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.HpackDecoder;
+import jodd.http.net.HpackEncoder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/2 server: h2c with prior knowledge, or TLS with ALPN.
+ * Responds with the request method and path; "/bytes/N" responds with N bytes,
+ * "/sleep/N" responds after N milliseconds, "/chunked" responds without the
+ * content length and with trailers. Body of POST requests is counted and the
+ * count is added to the response. Server honors flow control windows.
+ */
+public class Http2TestServer {
+
+	private final ServerSocket serverSocket;
+	private final String protocol;
+	private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+	public final AtomicInteger connectionsCount = new AtomicInteger();
+	public final AtomicInteger streamsCount = new AtomicInteger();
+	public final List<List<Map.Entry<String, String>>> requestHeaders = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Max concurrent streams advertised to the client.
+	 */
+	public volatile int maxConcurrentStreams = 100;
+	/**
+	 * Initial stream window advertised to the client.
+	 */
+	public volatile int initialWindowSize = 65535;
+
+	public Http2TestServer() throws IOException {
+		this(null);
+	}
+
+	public Http2TestServer(final SSLContext sslContext) throws IOException {
+		if (sslContext == null) {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		}
+		else {
+			serverSocket = sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			final SSLParameters sslParameters = ((SSLServerSocket) serverSocket).getSSLParameters();
+			try {
+				SSLParameters.class.getMethod("setApplicationProtocols", String[].class)
+					.invoke(sslParameters, (Object) new String[] {"h2"});
+			}
+			catch (final ReflectiveOperationException roex) {
+				throw new IOException(roex);
+			}
+			((SSLServerSocket) serverSocket).setSSLParameters(sslParameters);
+		}
+		protocol = sslContext == null ? "http" : "https";
+
+		final Thread thread = new Thread(this::acceptLoop, "http2-test-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	public String url(final String path) {
+		return protocol + "://localhost:" + port() + path;
+	}
+
+	public void stop() {
+		close(serverSocket);
+		for (final Socket socket : sockets) {
+			close(socket);
+		}
+	}
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (final IOException ioex) {
+				return;
+			}
+			connectionsCount.incrementAndGet();
+			sockets.add(socket);
+
+			final Thread thread = new Thread(() -> new Connection(socket).serve(), "http2-test-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private static void close(final Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+
+	/**
+	 * Single server connection.
+	 */
+	private class Connection {
+		private final Socket socket;
+		private OutputStream out;
+		private final HpackDecoder decoder = new HpackDecoder();
+		private final HpackEncoder encoder = new HpackEncoder();
+		private final Map<Integer, Stream> streams = new HashMap<>();
+		private long sendWindow = 65535;
+		private int peerInitialWindowSize = 65535;
+		private int received;
+
+		private Connection(final Socket socket) {
+			this.socket = socket;
+		}
+
+		private class Stream {
+			final int id;
+			List<Map.Entry<String, String>> headers;
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			long sendWindow = peerInitialWindowSize;
+
+			Stream(final int id) {
+				this.id = id;
+			}
+		}
+
+		private void serve() {
+			try {
+				final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out = socket.getOutputStream();
+
+				final byte[] preface = new byte[24];
+				in.readFully(preface);
+				if (!new String(preface, StandardCharsets.ISO_8859_1).equals("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n")) {
+					return;
+				}
+
+				final byte[] settings = new byte[12];
+				putSetting(settings, 0, 3, maxConcurrentStreams);
+				putSetting(settings, 6, 4, initialWindowSize);
+				writeFrame(4, 0, 0, settings, settings.length);
+
+				final byte[] header = new byte[9];
+				ByteArrayOutputStream headerBlock = null;
+				int headerStreamId = 0;
+				boolean headerEndStream = false;
+
+				while (true) {
+					in.readFully(header);
+					final int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+					final int type = header[3];
+					final int flags = header[4];
+					final int streamId = getInt(header, 5) & 0x7FFFFFFF;
+					final byte[] payload = new byte[length];
+					in.readFully(payload);
+
+					switch (type) {
+						case 0: {
+							// DATA
+							final Stream stream;
+							synchronized (this) {
+								stream = streams.get(streamId);
+							}
+							stream.body.write(payload, 0, payload.length);
+							received += length;
+							if (length > 0) {
+								writeWindowUpdate(0, length);
+								if ((flags & 1) == 0) {
+									writeWindowUpdate(streamId, length);
+								}
+							}
+							if ((flags & 1) != 0) {
+								respondLater(stream);
+							}
+							break;
+						}
+						case 1:
+							// HEADERS, no padding or priority from the client
+							headerBlock = new ByteArrayOutputStream();
+							headerBlock.write(payload, 0, payload.length);
+							headerStreamId = streamId;
+							headerEndStream = (flags & 1) != 0;
+							if ((flags & 4) != 0) {
+								onHeaders(headerStreamId, headerBlock.toByteArray(), headerEndStream);
+							}
+							break;
+						case 9:
+							// CONTINUATION
+							headerBlock.write(payload, 0, payload.length);
+							if ((flags & 4) != 0) {
+								onHeaders(headerStreamId, headerBlock.toByteArray(), headerEndStream);
+							}
+							break;
+						case 3:
+							// RST_STREAM
+							synchronized (this) {
+								streams.remove(streamId);
+							}
+							break;
+						case 4:
+							// SETTINGS
+							if ((flags & 1) == 0) {
+								synchronized (this) {
+									for (int i = 0; i < length; i += 6) {
+										final int id = ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+										if (id == 4) {
+											final int value = getInt(payload, i + 2);
+											for (final Stream stream : streams.values()) {
+												stream.sendWindow += value - peerInitialWindowSize;
+											}
+											peerInitialWindowSize = value;
+										}
+									}
+									notifyAll();
+								}
+								writeFrame(4, 1, 0, new byte[0], 0);
+							}
+							break;
+						case 6:
+							// PING
+							if ((flags & 1) == 0) {
+								writeFrame(6, 1, 0, payload, payload.length);
+							}
+							break;
+						case 7:
+							// GOAWAY
+							return;
+						case 8:
+							// WINDOW_UPDATE
+							synchronized (this) {
+								final int increment = getInt(payload, 0) & 0x7FFFFFFF;
+								if (streamId == 0) {
+									sendWindow += increment;
+								}
+								else if (streams.containsKey(streamId)) {
+									streams.get(streamId).sendWindow += increment;
+								}
+								notifyAll();
+							}
+							break;
+						default:
+					}
+				}
+			}
+			catch (final IOException ignore) {
+			}
+			finally {
+				close(socket);
+			}
+		}
+
+		private void onHeaders(final int streamId, final byte[] block, final boolean endStream) throws IOException {
+			final Stream stream = new Stream(streamId);
+			stream.headers = decoder.decode(block, 0, block.length);
+			requestHeaders.add(stream.headers);
+			streamsCount.incrementAndGet();
+
+			synchronized (this) {
+				streams.put(streamId, stream);
+			}
+			if (endStream) {
+				respondLater(stream);
+			}
+		}
+
+		private void respondLater(final Stream stream) {
+			final Thread thread = new Thread(() -> {
+				try {
+					respond(stream);
+				}
+				catch (final IOException | InterruptedException ignore) {
+				}
+			}, "http2-test-stream");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void respond(final Stream stream) throws IOException, InterruptedException {
+			String method = null;
+			String path = null;
+			for (final Map.Entry<String, String> field : stream.headers) {
+				if (field.getKey().equals(":method")) {
+					method = field.getValue();
+				}
+				if (field.getKey().equals(":path")) {
+					path = field.getValue();
+				}
+			}
+
+			byte[] body;
+			if (path.startsWith("/bytes/")) {
+				body = new byte[Integer.parseInt(path.substring(7))];
+				Arrays.fill(body, (byte) 'x');
+			}
+			else {
+				if (path.startsWith("/sleep/")) {
+					Thread.sleep(Long.parseLong(path.substring(7).split("/")[0]));
+				}
+				String text = method + " " + path;
+				if (stream.body.size() > 0) {
+					text += " " + stream.body.size();
+				}
+				body = text.getBytes(StandardCharsets.ISO_8859_1);
+			}
+
+			final boolean chunked = path.equals("/chunked");
+
+			final List<Map.Entry<String, String>> fields = new ArrayList<>();
+			fields.add(field(":status", "200"));
+			fields.add(field("content-type", "text/plain"));
+			if (!chunked) {
+				fields.add(field("content-length", String.valueOf(body.length)));
+			}
+			final byte[] block = encoder.encode(fields);
+
+			final boolean head = method.equals("HEAD");
+
+			writeFrame(1, 4 | (head ? 1 : 0), stream.id, block, block.length);
+			if (head) {
+				return;
+			}
+
+			int offset = 0;
+			while (offset < body.length) {
+				final int chunk;
+				synchronized (this) {
+					while (sendWindow <= 0 || stream.sendWindow <= 0) {
+						wait();
+					}
+					chunk = (int) Math.min(body.length - offset, Math.min(16384, Math.min(sendWindow, stream.sendWindow)));
+					sendWindow -= chunk;
+					stream.sendWindow -= chunk;
+				}
+				final boolean last = offset + chunk == body.length && !chunked;
+				writeFrame(0, last ? 1 : 0, stream.id, Arrays.copyOfRange(body, offset, offset + chunk), chunk);
+				offset += chunk;
+			}
+
+			if (chunked) {
+				final byte[] trailers = encoder.encode(Arrays.asList(field("x-trailer", "done")));
+				writeFrame(1, 4 | 1, stream.id, trailers, trailers.length);
+			}
+			else if (body.length == 0) {
+				writeFrame(0, 1, stream.id, new byte[0], 0);
+			}
+
+			synchronized (this) {
+				streams.remove(stream.id);
+			}
+		}
+
+		private void writeWindowUpdate(final int streamId, final int increment) throws IOException {
+			final byte[] payload = new byte[4];
+			putInt(payload, 0, increment);
+			writeFrame(8, 0, streamId, payload, 4);
+		}
+
+		private void writeFrame(final int type, final int flags, final int streamId, final byte[] payload, final int length) throws IOException {
+			final byte[] frame = new byte[9 + length];
+			frame[0] = (byte) (length >>> 16);
+			frame[1] = (byte) (length >>> 8);
+			frame[2] = (byte) length;
+			frame[3] = (byte) type;
+			frame[4] = (byte) flags;
+			putInt(frame, 5, streamId);
+			System.arraycopy(payload, 0, frame, 9, length);
+
+			synchronized (out) {
+				out.write(frame);
+				out.flush();
+			}
+		}
+	}
+
+	private static Map.Entry<String, String> field(final String name, final String value) {
+		return new AbstractMap.SimpleImmutableEntry<>(name, value);
+	}
+
+	private static void putSetting(final byte[] buffer, final int offset, final int id, final int value) {
+		buffer[offset] = (byte) (id >>> 8);
+		buffer[offset + 1] = (byte) id;
+		putInt(buffer, offset + 2, value);
+	}
+
+	private static void putInt(final byte[] buffer, final int offset, final int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	private static int getInt(final byte[] buffer, final int offset) {
+		return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+			| ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,150 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.Http2HttpConnectionProvider;
+import jodd.http.net.NioHttpConnectionProvider;
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpConnectionMetricsTest {
+
+	private KeepAliveTestServer server;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	void testNewAndReusedConnection() {
+		final PooledSocketHttpConnectionProvider provider = new PooledSocketHttpConnectionProvider();
+		try {
+			final HttpRequest request = HttpRequest.get(server.url("/bytes/1000")).withConnectionProvider(provider);
+			final HttpConnectionMetrics metrics = request.send().metrics();
+
+			assertEquals(request.toString().getBytes().length, metrics.getBytesWritten());
+			assertTrue(metrics.getBytesRead() > 1000);
+			assertTrue(metrics.getConnectTime() > 0);
+			assertEquals(0, metrics.getHandshakeTime());
+			assertTrue(metrics.getTimeToFirstByte() > 0);
+			assertTrue(metrics.getTransferTime() >= 0);
+			assertFalse(metrics.isConnectionReused());
+
+			final HttpConnectionMetrics reusedMetrics = HttpRequest.get(server.url("/bytes/10")).withConnectionProvider(provider).send().metrics();
+
+			assertTrue(reusedMetrics.isConnectionReused());
+			assertEquals(0, reusedMetrics.getConnectTime());
+			assertTrue(reusedMetrics.getBytesRead() > 10);
+			assertTrue(reusedMetrics.getBytesRead() < metrics.getBytesRead());
+		}
+		finally {
+			provider.close();
+		}
+	}
+
+	@Test
+	void testHandshakeTime() throws Exception {
+		final KeepAliveTestServer httpsServer = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		final PooledSocketHttpConnectionProvider provider = new PooledSocketHttpConnectionProvider();
+		provider.setSslProtocol("TLSv1.2");
+		try {
+			final HttpConnectionMetrics metrics = HttpRequest.get(httpsServer.url("/secure"))
+				.trustAllCerts(true)
+				.withConnectionProvider(provider)
+				.send()
+				.metrics();
+
+			assertTrue(metrics.getHandshakeTime() > 0);
+			assertTrue(metrics.getConnectTime() > 0);
+		}
+		finally {
+			provider.close();
+			httpsServer.stop();
+		}
+	}
+
+	@Test
+	void testTimeToFirstByte() throws IOException {
+		final Http2TestServer http2Server = new Http2TestServer();
+		final Http2HttpConnectionProvider provider = new Http2HttpConnectionProvider();
+		try {
+			final HttpConnectionMetrics metrics = HttpRequest.get(http2Server.url("/sleep/200"))
+				.withConnectionProvider(provider)
+				.send()
+				.metrics();
+
+			assertTrue(metrics.getTimeToFirstByte() >= TimeUnit.MILLISECONDS.toNanos(200));
+			assertTrue(metrics.getTransferTime() < TimeUnit.MILLISECONDS.toNanos(200));
+		}
+		finally {
+			provider.close();
+			http2Server.stop();
+		}
+	}
+
+	@Test
+	void testAsyncExchange() {
+		final NioHttpConnectionProvider provider = new NioHttpConnectionProvider();
+		try {
+			final HttpConnectionMetrics metrics = HttpRequest.get(server.url("/bytes/100"))
+				.withConnectionProvider(provider)
+				.sendAsync()
+				.join()
+				.metrics();
+
+			assertTrue(metrics.getBytesWritten() > 0);
+			assertTrue(metrics.getBytesRead() > 100);
+			assertTrue(metrics.getConnectTime() >= 0);
+			assertEquals(0, metrics.getHandshakeTime());
+			assertTrue(metrics.getTimeToFirstByte() > 0);
+		}
+		finally {
+			provider.close();
+		}
+	}
+
+	@Test
+	void testParsedResponseHasNoMetrics() {
+		assertNull(HttpResponse.readFrom(new ByteArrayInputStream("HTTP/1.1 200 OK\r\n\r\n".getBytes())).metrics());
+	}
+}
@@ -0,0 +1,165 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpPipelineTest {
+
+	private KeepAliveTestServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		server = new KeepAliveTestServer();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	void testResponsesInOrderOnSingleConnection() {
+		final HttpPipeline pipeline = new HttpPipeline();
+		for (int i = 0; i < 50; i++) {
+			pipeline.add(HttpRequest.get(server.url("/" + i)));
+		}
+
+		final List<HttpResponse> responses = pipeline.send();
+
+		assertEquals(50, responses.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals("GET /" + i, responses.get(i).bodyRaw());
+		}
+		assertEquals(1, server.connectionsCount.get());
+		assertEquals(50, server.requestsCount.get());
+	}
+
+	@Test
+	void testLargeResponsesAreNotLost() {
+		final HttpPipeline pipeline = new HttpPipeline().depth(4);
+		for (int i = 0; i < 10; i++) {
+			pipeline.add(HttpRequest.get(server.url("/bytes/" + (10000 + i))));
+		}
+
+		final List<HttpResponse> responses = pipeline.send();
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(10000 + i, responses.get(i).bodyRaw().length());
+		}
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testHeadResponseHasNoBody() {
+		final List<HttpResponse> responses = new HttpPipeline()
+			.add(HttpRequest.head(server.url("/head")))
+			.add(HttpRequest.get(server.url("/get")))
+			.send();
+
+		assertEquals("", responses.get(0).bodyRaw());
+		assertEquals("GET /get", responses.get(1).bodyRaw());
+	}
+
+	@Test
+	void testRemainingRequestsAreSentOnNewConnection() {
+		server.maxRequestsPerConnection = 4;
+
+		final HttpPipeline pipeline = new HttpPipeline();
+		for (int i = 0; i < 10; i++) {
+			pipeline.add(HttpRequest.get(server.url("/" + i)));
+		}
+
+		final List<HttpResponse> responses = pipeline.send();
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("GET /" + i, responses.get(i).bodyRaw());
+		}
+		assertEquals(3, server.connectionsCount.get());
+	}
+
+	@Test
+	void testLastRequestKeepsConnection() {
+		final HttpRequest last = HttpRequest.get(server.url("/last")).connectionKeepAlive(true);
+
+		final List<HttpResponse> responses = new HttpPipeline()
+			.add(HttpRequest.get(server.url("/first")))
+			.add(last)
+			.send();
+
+		assertNull(responses.get(0).getHttpRequest().connection());
+		assertNotNull(last.connection());
+
+		final HttpResponse next = HttpRequest.get(server.url("/next")).keepAlive(responses.get(1), false).send();
+
+		assertEquals("GET /next", next.bodyRaw());
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testConnectionIsReleasedToPool() {
+		final PooledSocketHttpConnectionProvider provider = new PooledSocketHttpConnectionProvider();
+		try {
+			new HttpPipeline()
+				.add(HttpRequest.get(server.url("/a")).withConnectionProvider(provider))
+				.add(HttpRequest.get(server.url("/b")).connectionKeepAlive(true))
+				.send();
+
+			final HttpResponse response = HttpRequest.get(server.url("/c"))
+				.connectionKeepAlive(true)
+				.withConnectionProvider(provider)
+				.send();
+
+			assertEquals("GET /c", response.bodyRaw());
+			assertEquals(1, server.connectionsCount.get());
+		}
+		finally {
+			provider.close();
+		}
+	}
+
+	@Test
+	void testInvalidRequests() {
+		assertThrows(HttpException.class, () -> new HttpPipeline()
+			.add(HttpRequest.post(server.url("/post")))
+			.send());
+
+		assertThrows(HttpException.class, () -> new HttpPipeline()
+			.add(HttpRequest.get(server.url("/one")))
+			.add(HttpRequest.get("http://127.0.0.1:" + server.port() + "/two"))
+			.send());
+	}
+}
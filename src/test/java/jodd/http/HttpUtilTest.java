@@ -78,6 +78,21 @@ class HttpUtilTest {
 		assertEquals(null, HttpUtil.extractHeaderParameter(contentType, "na", ';'));
 	}
 
+	@Test
+	void testKeepAliveParameters() {
+		String keepAlive = "timeout=5, max=100";
+
+		assertEquals("5", HttpUtil.extractKeepAliveTimeout(keepAlive));
+		assertEquals("100", HttpUtil.extractKeepAliveMax(keepAlive));
+
+		keepAlive = "max=100,timeout=5";
+
+		assertEquals("5", HttpUtil.extractKeepAliveTimeout(keepAlive));
+		assertEquals("100", HttpUtil.extractKeepAliveMax(keepAlive));
+
+		assertNull(HttpUtil.extractKeepAliveMax("timeout=5"));
+	}
+
 	@Test
 	void testDefaultPort() {
 		HttpRequest request;
@@ -26,8 +26,10 @@
 package jodd.http;
 
 import jodd.http.net.SSLSocketHttpConnectionProvider;
+import jodd.http.net.SocketHttpConnectionProvider;
 import org.junit.jupiter.api.Test;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.net.InetAddress;
@@ -35,6 +37,8 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class HttpsFactoryTest {
@@ -95,4 +99,35 @@ class HttpsFactoryTest {
 
 		assertTrue(atomicBoolean.get());
 	}
+
+	static class TestSocketHttpConnectionProvider extends SocketHttpConnectionProvider {
+		SSLSocketFactory sslSocketFactory(final boolean trustAll) throws IOException {
+			return getDefaultSSLSocketFactory(trustAll);
+		}
+	}
+
+	@Test
+	void testSSLSocketFactoryIsCached() throws Exception {
+		final TestSocketHttpConnectionProvider provider = new TestSocketHttpConnectionProvider();
+
+		final SSLSocketFactory trustAllFactory = provider.sslSocketFactory(true);
+
+		assertSame(trustAllFactory, provider.sslSocketFactory(true));
+		assertSame(provider.sslSocketFactory(false), provider.sslSocketFactory(false));
+		assertNotSame(trustAllFactory, provider.sslSocketFactory(false));
+
+		provider.setSslProtocol("TLSv1.2");
+
+		final SSLSocketFactory trustAllFactory2 = provider.sslSocketFactory(true);
+		assertNotSame(trustAllFactory, trustAllFactory2);
+		assertSame(trustAllFactory2, provider.sslSocketFactory(true));
+
+		final SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+		sslContext.init(null, null, null);
+		provider.setSslContext(sslContext);
+
+		final SSLSocketFactory contextFactory = provider.sslSocketFactory(true);
+		assertSame(contextFactory, provider.sslSocketFactory(false));
+		assertNotSame(trustAllFactory2, contextFactory);
+	}
 }
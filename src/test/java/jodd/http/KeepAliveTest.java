@@ -36,6 +36,7 @@ import java.io.OutputStream;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -217,4 +218,63 @@ class KeepAliveTest {
 		browser.close();
 		assertNull(request.connection());	// connection closed
 	}
+
+	@Test
+	void testKeepAliveWithExpiredConnection() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		server.extraHeaders = "Keep-Alive: timeout=1, max=2\r\n";
+
+		try {
+			HttpRequest request = HttpRequest.get(server.url("/one")).connectionKeepAlive(true);
+			HttpResponse response = request.send();
+			final HttpConnection connection = request.connection();
+			assertTrue(connection.isReusable());
+
+			// max is not reached yet
+			request = HttpRequest.get(server.url("/two"));
+			response = request.keepAlive(response, true).send();
+			assertSame(connection, request.connection());
+
+			server.extraHeaders = "Keep-Alive: timeout=1, max=0\r\n";
+			request = HttpRequest.get(server.url("/three"));
+			response = request.keepAlive(response, true).send();
+			assertFalse(request.connection().isReusable());
+
+			// max is reached, new connection is opened
+			request = HttpRequest.get(server.url("/four"));
+			response = request.keepAlive(response, true).send();
+			assertNotSame(connection, request.connection());
+			assertEquals(2, server.connectionsCount.get());
+
+			response.close();
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testHeadResponseOnKeepAliveConnection() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+
+		try {
+			// response has the content length, but no body
+			HttpRequest request = HttpRequest.head(server.url("/one")).connectionKeepAlive(true).timeout(2000);
+			HttpResponse response = request.send();
+			final HttpConnection connection = request.connection();
+			assertEquals(200, response.statusCode());
+			assertEquals("", response.bodyRaw());
+
+			request = HttpRequest.get(server.url("/two"));
+			response = request.keepAlive(response, true).send();
+			assertSame(connection, request.connection());
+			assertEquals("GET /two", response.bodyRaw());
+			assertEquals(1, server.connectionsCount.get());
+
+			response.close();
+		}
+		finally {
+			server.stop();
+		}
+	}
 }
@@ -0,0 +1,311 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Simple HTTP/1.1 server that keeps connections open between the requests.
+ * Responds with the request method and path, or with N bytes for the
+ * "/bytes/N" path. Closes the connection when request has
+ * "Connection: Close" header, or when max number of requests per
+ * connection is reached. Optionally, serves HTTPS.
+ */
+public class KeepAliveTestServer {
+
+	private final ServerSocket serverSocket;
+	private final String protocol;
+	private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+	public final AtomicInteger connectionsCount = new AtomicInteger();
+	public final AtomicInteger requestsCount = new AtomicInteger();
+
+	/**
+	 * Additional raw header lines added to each response.
+	 */
+	public volatile String extraHeaders = "";
+
+	/**
+	 * Max number of requests served on a single connection, 0 for no limit.
+	 */
+	public volatile int maxRequestsPerConnection;
+
+	/**
+	 * Delay in milliseconds before each response is sent.
+	 */
+	public volatile int responseDelay;
+
+	/**
+	 * Delay in milliseconds before each byte of the response body,
+	 * so the body trickles in, while the headers are sent at once.
+	 */
+	public volatile int bodyByteDelay;
+
+	public KeepAliveTestServer() throws IOException {
+		this(null);
+	}
+
+	public KeepAliveTestServer(final SSLContext sslContext) throws IOException {
+		if (sslContext == null) {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		}
+		else {
+			serverSocket = sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		}
+		protocol = sslContext == null ? "http" : "https";
+
+		final Thread thread = new Thread(this::acceptLoop, "keep-alive-test-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	public String url(final String path) {
+		return protocol + "://localhost:" + port() + path;
+	}
+
+	/**
+	 * Creates server SSL context with the self-signed certificate for "localhost".
+	 */
+	public static SSLContext createSslContext(final String protocol) throws Exception {
+		final char[] password = "joddjodd".toCharArray();
+
+		final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		try (InputStream in = KeepAliveTestServer.class.getResourceAsStream("localhost.p12")) {
+			keyStore.load(in, password);
+		}
+
+		final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, password);
+
+		final SSLContext sslContext = SSLContext.getInstance(protocol);
+		sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+		return sslContext;
+	}
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (final IOException ioex) {
+				return;
+			}
+			connectionsCount.incrementAndGet();
+			sockets.add(socket);
+
+			final Thread thread = new Thread(() -> serve(socket), "keep-alive-test-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try {
+			final InputStream in = new BufferedInputStream(socket.getInputStream());
+			final OutputStream out = socket.getOutputStream();
+
+			int connectionRequests = 0;
+
+			while (true) {
+				final String requestLine = readLine(in);
+				if (requestLine == null || requestLine.isEmpty()) {
+					break;
+				}
+
+				int contentLength = 0;
+				boolean close = false;
+
+				while (true) {
+					final String line = readLine(in);
+					if (line == null || line.isEmpty()) {
+						break;
+					}
+					final String lowerLine = line.toLowerCase();
+					if (lowerLine.startsWith("content-length:")) {
+						contentLength = Integer.parseInt(line.substring(15).trim());
+					}
+					if (lowerLine.startsWith("connection:") && lowerLine.contains("close")) {
+						close = true;
+					}
+				}
+
+				for (int i = 0; i < contentLength; i++) {
+					in.read();
+				}
+
+				requestsCount.incrementAndGet();
+				connectionRequests++;
+
+				if (maxRequestsPerConnection > 0 && connectionRequests >= maxRequestsPerConnection) {
+					close = true;
+				}
+
+				final String[] tokens = requestLine.split(" ");
+				final String body = tokens[1].startsWith("/bytes/")
+					? repeat('x', Integer.parseInt(tokens[1].substring(7)))
+					: tokens[0] + " " + tokens[1];
+
+				final String headers =
+					"HTTP/1.1 200 OK\r\n" +
+					"Content-Type: text/plain\r\n" +
+					"Content-Length: " + body.length() + "\r\n" +
+					(close ? "Connection: close\r\n" : "Connection: keep-alive\r\n") +
+					extraHeaders +
+					"\r\n";
+				final String responseBody = tokens[0].equals("HEAD") ? "" : body;
+
+				if (responseDelay > 0) {
+					try {
+						Thread.sleep(responseDelay);
+					}
+					catch (final InterruptedException iex) {
+						break;
+					}
+				}
+
+				if (bodyByteDelay > 0) {
+					out.write(headers.getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					if (!trickle(out, responseBody)) {
+						break;
+					}
+				}
+				else {
+					out.write((headers + responseBody).getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+				}
+
+				if (close) {
+					lingeringClose(socket, in);
+					break;
+				}
+			}
+		}
+		catch (final IOException ignore) {
+		}
+		finally {
+			close(socket);
+		}
+	}
+
+	/**
+	 * Discards pipelined requests before closing, so the client
+	 * receives the responses instead of a connection reset.
+	 */
+	private static void lingeringClose(final Socket socket, final InputStream in) throws IOException {
+		if (socket instanceof SSLSocket) {
+			return;
+		}
+		socket.shutdownOutput();
+		socket.setSoTimeout(1000);
+		while (in.read() != -1) {
+			// discard
+		}
+	}
+
+	private boolean trickle(final OutputStream out, final String body) throws IOException {
+		for (int i = 0; i < body.length(); i++) {
+			try {
+				Thread.sleep(bodyByteDelay);
+			}
+			catch (final InterruptedException iex) {
+				return false;
+			}
+			out.write(body.charAt(i));
+			out.flush();
+		}
+		return true;
+	}
+
+	private static String repeat(final char c, final int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			final int c = in.read();
+			if (c == -1) {
+				return line.size() == 0 ? null : line.toString("ISO-8859-1");
+			}
+			if (c == '\n') {
+				break;
+			}
+			if (c != '\r') {
+				line.write(c);
+			}
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	/**
+	 * Closes all client connections, but keeps the server running.
+	 */
+	public void closeConnections() {
+		for (final Socket socket : sockets) {
+			close(socket);
+		}
+		sockets.clear();
+	}
+
+	public void stop() {
+		close(serverSocket);
+		closeConnections();
+	}
+
+	private static void close(final Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+}
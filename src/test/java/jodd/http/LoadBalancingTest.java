@@ -0,0 +1,192 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.LoadBalancingHttpConnectionProvider;
+import jodd.http.net.LoadBalancingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingTest {
+
+	private final List<KeepAliveTestServer> servers = new ArrayList<>();
+	private LoadBalancingHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		final List<InetSocketAddress> endpoints = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			final KeepAliveTestServer server = new KeepAliveTestServer();
+			servers.add(server);
+			endpoints.add(address(server));
+		}
+		provider = new LoadBalancingHttpConnectionProvider();
+		provider.setEndpoints("backend", endpoints);
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+		servers.forEach(KeepAliveTestServer::stop);
+	}
+
+	private static InetSocketAddress address(final KeepAliveTestServer server) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+	}
+
+	private HttpResponse send(final String path) {
+		return HttpRequest.get("http://backend" + path).withConnectionProvider(provider).send();
+	}
+
+	@Test
+	void testRoundRobinWithPooledConnections() {
+		for (int i = 0; i < 9; i++) {
+			final HttpResponse response = send("/hello" + i);
+
+			assertEquals(200, response.statusCode());
+			assertEquals("GET /hello" + i, response.bodyRaw());
+		}
+
+		for (final KeepAliveTestServer server : servers) {
+			assertEquals(3, server.requestsCount.get());
+			assertEquals(1, server.connectionsCount.get());
+			assertEquals(0, provider.getEndpoint(address(server)).getInFlight());
+		}
+		assertEquals(3, provider.getIdleConnectionsCount());
+	}
+
+	@Test
+	void testLeastInFlight() {
+		provider.setStrategy(LoadBalancingStrategy.leastInFlight());
+
+		final List<HttpRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			requests.add(HttpRequest.get("http://backend/open" + i).withConnectionProvider(provider).open());
+		}
+
+		for (final KeepAliveTestServer server : servers) {
+			assertEquals(1, provider.getEndpoint(address(server)).getInFlight());
+		}
+
+		requests.forEach(HttpRequest::send);
+
+		for (final KeepAliveTestServer server : servers) {
+			assertEquals(1, server.requestsCount.get());
+			assertEquals(0, provider.getEndpoint(address(server)).getInFlight());
+		}
+	}
+
+	@Test
+	void testPowerOfTwoChoicesAvoidsBusyEndpoint() {
+		servers.remove(2).stop();
+		provider.setEndpoints("backend", Arrays.asList(address(servers.get(0)), address(servers.get(1))));
+		provider.setStrategy(LoadBalancingStrategy.powerOfTwoChoices());
+
+		final HttpRequest busy = HttpRequest.get("http://backend/busy").withConnectionProvider(provider).open();
+
+		for (int i = 0; i < 5; i++) {
+			send("/free");
+		}
+		busy.send();
+
+		final int busyRequests = Math.min(servers.get(0).requestsCount.get(), servers.get(1).requestsCount.get());
+		assertEquals(1, busyRequests);
+		assertEquals(6, servers.get(0).requestsCount.get() + servers.get(1).requestsCount.get());
+	}
+
+	/**
+	 * Returns address that refuses connections: the port is bound, but not listening,
+	 * so it can't be taken by another server while the test runs.
+	 */
+	private Socket deadEndpoint() throws IOException {
+		final Socket socket = new Socket();
+		socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		return socket;
+	}
+
+	@Test
+	void testFailedEndpointIsEjected() throws IOException {
+		provider.setMaxFailures(1);
+
+		try (Socket dead = deadEndpoint()) {
+			final InetSocketAddress deadAddress = (InetSocketAddress) dead.getLocalSocketAddress();
+			provider.setEndpoints("backend", Arrays.asList(deadAddress, address(servers.get(1)), address(servers.get(2))));
+
+			for (int i = 0; i < 6; i++) {
+				assertEquals(200, send("/hello").statusCode());
+			}
+
+			assertTrue(provider.getEndpoint(deadAddress).isEjected());
+			assertFalse(provider.getEndpoint(address(servers.get(1))).isEjected());
+			assertEquals(6, servers.get(1).requestsCount.get() + servers.get(2).requestsCount.get());
+		}
+	}
+
+	@Test
+	void testEjectedEndpointIsUsedWhenAllAreEjected() throws IOException {
+		provider.setMaxFailures(1);
+
+		try (Socket dead = deadEndpoint()) {
+			final InetSocketAddress deadAddress = (InetSocketAddress) dead.getLocalSocketAddress();
+			provider.setEndpoints("backend", Collections.singletonList(deadAddress));
+
+			assertThrows(HttpException.class, () -> send("/down"));
+			assertTrue(provider.getEndpoint(deadAddress).isEjected());
+
+			final HttpException httpException = assertThrows(HttpException.class, () -> send("/down"));
+			assertTrue(httpException.getCause() instanceof ConnectException);
+		}
+	}
+
+	@Test
+	void testInvalidEndpoints() {
+		assertThrows(HttpException.class, () -> provider.setEndpoints("other", Collections.emptyList()));
+		assertThrows(HttpException.class, () -> provider.setEndpoints("other",
+			Collections.singletonList(InetSocketAddress.createUnresolved("backend-1", 8080))));
+
+		provider.setHostResolver(host -> new InetAddress[0]);
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get("http://other/").withConnectionProvider(provider).send());
+		assertEquals("No endpoints for host: other", httpException.getMessage());
+	}
+}
@@ -0,0 +1,148 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.NioHttpConnection;
+import jodd.http.net.NioHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioConnectionTest {
+
+	private NioHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() {
+		provider = new NioHttpConnectionProvider();
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+	}
+
+	@Test
+	void testGet() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final HttpRequest request = HttpRequest.get(server.url("/hello")).withConnectionProvider(provider).open();
+
+			assertTrue(request.connection() instanceof NioHttpConnection);
+
+			final HttpResponse response = request.send();
+
+			assertEquals(200, response.statusCode());
+			assertEquals("GET /hello", response.bodyRaw());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testKeepAlive() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			HttpRequest request = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).connectionKeepAlive(true);
+			HttpResponse response = request.send();
+			assertEquals("GET /one", response.bodyRaw());
+
+			request = HttpRequest.post(server.url("/two")).body("payload").keepAlive(response, true);
+			response = request.send();
+			assertEquals("POST /two", response.bodyRaw());
+
+			assertEquals(1, server.connectionsCount.get());
+			assertEquals(2, server.requestsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testLargeBodies() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final char[] chars = new char[300_000];
+			Arrays.fill(chars, 'a');
+
+			final HttpResponse response = HttpRequest.post(server.url("/bytes/500000"))
+				.body(new String(chars))
+				.withConnectionProvider(provider)
+				.send();
+
+			assertEquals(500_000, response.bodyRaw().length());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testHttps() throws Exception {
+		for (final String protocol : new String[] {"TLSv1.2", "TLSv1.3"}) {
+			final KeepAliveTestServer server = new KeepAliveTestServer(KeepAliveTestServer.createSslContext(protocol));
+			try {
+				HttpRequest request = HttpRequest.get(server.url("/tls")).trustAllCerts(true)
+					.withConnectionProvider(provider).connectionKeepAlive(true);
+				HttpResponse response = request.send();
+				assertEquals("GET /tls", response.bodyRaw());
+
+				request = HttpRequest.get(server.url("/bytes/100000")).keepAlive(response, true);
+				response = request.send();
+				assertEquals(100_000, response.bodyRaw().length());
+
+				assertEquals(1, server.connectionsCount.get());
+			}
+			finally {
+				server.stop();
+			}
+		}
+	}
+
+	@Test
+	void testReadTimeout() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			final HttpRequest request = HttpRequest.get("http://localhost:" + serverSocket.getLocalPort() + "/")
+				.withConnectionProvider(provider)
+				.timeout(200);
+
+			final HttpException httpException = assertThrows(HttpException.class, request::send);
+			assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+		}
+	}
+}
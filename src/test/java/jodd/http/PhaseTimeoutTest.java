@@ -0,0 +1,109 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhaseTimeoutTest {
+
+	private KeepAliveTestServer server;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	void testHeadersTimeout() {
+		server.responseDelay = 500;
+		final long start = System.currentTimeMillis();
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/slow")).timeout(2000).headersTimeout(100).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+		assertTrue(System.currentTimeMillis() - start < 450);
+
+		assertEquals(200, HttpRequest.get(server.url("/slow")).timeout(2000).send().statusCode());
+	}
+
+	@Test
+	void testTricklingBodyWithinIdleTimeout() {
+		server.bodyByteDelay = 30;
+
+		// the whole body takes longer than both timeouts, but no gap does
+		final HttpResponse httpResponse = HttpRequest.get(server.url("/bytes/20"))
+			.headersTimeout(100)
+			.bodyIdleTimeout(200)
+			.send();
+
+		assertEquals(200, httpResponse.statusCode());
+		assertEquals(20, httpResponse.bodyRaw().length());
+	}
+
+	@Test
+	void testBodyIdleTimeout() {
+		server.bodyByteDelay = 300;
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/bytes/5")).timeout(2000).bodyIdleTimeout(100).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+	}
+
+	@Test
+	void testReadTimeoutIsRestored() {
+		final HttpResponse first = HttpRequest.get(server.url("/one"))
+			.connectionKeepAlive(true)
+			.headersTimeout(100)
+			.bodyIdleTimeout(100)
+			.send();
+
+		assertEquals(200, first.statusCode());
+
+		// the reused connection has no read timeout again
+		server.responseDelay = 300;
+		final HttpResponse second = HttpRequest.get(server.url("/two")).keepAlive(first, false).send();
+
+		assertEquals(200, second.statusCode());
+		assertEquals("GET /two", second.bodyRaw());
+		assertEquals(1, server.connectionsCount.get());
+	}
+}
@@ -0,0 +1,358 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledConnectionTest {
+
+	private KeepAliveTestServer server;
+	private PooledSocketHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+		provider = new PooledSocketHttpConnectionProvider();
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+		server.stop();
+	}
+
+	@Test
+	void testConnectionIsReused() {
+		for (int i = 0; i < 5; i++) {
+			final HttpRequest request = HttpRequest.get(server.url("/hello" + i)).withConnectionProvider(provider);
+			final HttpResponse response = request.send();
+
+			assertEquals(200, response.statusCode());
+			assertEquals("GET /hello" + i, response.bodyRaw());
+			assertTrue(request.isConnectionPersistent());
+			assertNull(request.connection());
+		}
+
+		assertEquals(1, server.connectionsCount.get());
+		assertEquals(5, server.requestsCount.get());
+		assertEquals(1, provider.getConnectionsCount());
+		assertEquals(1, provider.getIdleConnectionsCount());
+	}
+
+	@Test
+	void testClosedResponseIsNotPooled() {
+		final HttpRequest request = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).open();
+		request.connectionKeepAlive(false);
+		request.send();
+
+		assertEquals(0, provider.getConnectionsCount());
+
+		HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+
+		assertEquals(2, server.connectionsCount.get());
+		assertEquals(1, provider.getIdleConnectionsCount());
+	}
+
+	@Test
+	void testRouteLimit() {
+		provider.setMaxConnectionsPerRoute(1).setLeaseTimeout(100);
+
+		final HttpRequest request1 = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).open();
+
+		assertThrows(HttpException.class, () -> HttpRequest.get(server.url("/two")).withConnectionProvider(provider).open());
+
+		request1.send();
+
+		HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testWaitingLimitRejectsFast() throws Exception {
+		provider.setMaxConnectionsPerRoute(1).setMaxWaitingPerRoute(1);
+
+		final HttpRequest request1 = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).open();
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<HttpResponse> waiting = executor.submit(() -> HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send());
+
+			while (provider.getWaitingCount() == 0) {
+				Thread.sleep(10);
+			}
+
+			final long start = System.currentTimeMillis();
+			assertThrows(HttpException.class, () -> HttpRequest.get(server.url("/three")).withConnectionProvider(provider).open());
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			assertEquals(1, provider.getRejectedCount());
+
+			request1.send();
+
+			assertEquals("GET /two", waiting.get().bodyRaw());
+			assertEquals(0, provider.getWaitingCount());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testRouteIsolation() throws IOException {
+		provider.setMaxConnectionsPerRoute(1).setMaxWaitingPerRoute(0);
+
+		final HttpRequest request1 = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).open();
+
+		assertThrows(HttpException.class, () -> HttpRequest.get(server.url("/two")).withConnectionProvider(provider).open());
+
+		final KeepAliveTestServer otherServer = new KeepAliveTestServer();
+		try {
+			assertEquals("GET /other", HttpRequest.get(otherServer.url("/other")).withConnectionProvider(provider).send().bodyRaw());
+		}
+		finally {
+			otherServer.stop();
+		}
+
+		request1.send();
+		assertEquals(1, provider.getRejectedCount());
+	}
+
+	@Test
+	void testTotalLimitEvictsIdleConnection() {
+		provider.setMaxConnectionsTotal(1);
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+		HttpRequest.get("http://127.0.0.1:" + server.port() + "/two").withConnectionProvider(provider).send();
+
+		assertEquals(2, server.connectionsCount.get());
+		assertEquals(1, provider.getConnectionsCount());
+	}
+
+	@Test
+	void testEvictsLeastRecentlyReleasedConnection() throws IOException {
+		provider.setMaxConnectionsTotal(2);
+
+		final String hostA = server.url("/a");
+		final String hostB = "http://127.0.0.1:" + server.port() + "/b";
+		final KeepAliveTestServer otherServer = new KeepAliveTestServer();
+		try {
+			HttpRequest.get(hostA).withConnectionProvider(provider).send();
+			HttpRequest.get(hostB).withConnectionProvider(provider).send();
+
+			// evicts A, released before B
+			HttpRequest.get(otherServer.url("/c")).withConnectionProvider(provider).send();
+			HttpRequest.get(hostB).withConnectionProvider(provider).send();
+			assertEquals(2, server.connectionsCount.get());
+
+			// evicts C, released before B
+			HttpRequest.get(hostA).withConnectionProvider(provider).send();
+			HttpRequest.get(hostB).withConnectionProvider(provider).send();
+			assertEquals(3, server.connectionsCount.get());
+			assertEquals(2, provider.getIdleConnectionsCount());
+
+			HttpRequest.get(otherServer.url("/c")).withConnectionProvider(provider).send();
+			assertEquals(2, otherServer.connectionsCount.get());
+		}
+		finally {
+			otherServer.stop();
+		}
+	}
+
+	@Test
+	void testExpiringConnectionIsNotReused() throws InterruptedException {
+		server.extraHeaders = "Keep-Alive: timeout=1, max=100\r\n";
+		provider.setReaperInterval(0);
+
+		final HttpResponse response = HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+		assertEquals(1, response.keepAliveTimeout());
+		assertEquals(100, response.keepAliveMax());
+
+		HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+		assertEquals(1, server.connectionsCount.get());
+
+		Thread.sleep(600);
+
+		HttpRequest.get(server.url("/three")).withConnectionProvider(provider).send();
+		assertEquals(2, server.connectionsCount.get());
+		assertEquals(1, provider.getConnectionsCount());
+	}
+
+	@Test
+	void testReaperClosesExpiredConnections() throws InterruptedException {
+		server.extraHeaders = "Keep-Alive: timeout=1\r\n";
+		provider.setReaperInterval(50);
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+		assertEquals(1, provider.getIdleConnectionsCount());
+
+		Thread.sleep(800);
+
+		assertEquals(0, provider.getIdleConnectionsCount());
+		assertEquals(0, provider.getConnectionsCount());
+	}
+
+	@Test
+	void testExhaustedMaxIsNotReused() {
+		server.extraHeaders = "Keep-Alive: timeout=100, max=0\r\n";
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+		assertEquals(0, provider.getConnectionsCount());
+
+		HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+		assertEquals(2, server.connectionsCount.get());
+	}
+
+	@Test
+	void testStaleConnectionIsNotReused() throws InterruptedException {
+		provider.setValidateAfterInactivity(0);
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+
+		server.closeConnections();
+		Thread.sleep(100);
+
+		final HttpResponse response = HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+
+		assertEquals("GET /two", response.bodyRaw());
+		assertEquals(2, server.connectionsCount.get());
+		assertEquals(2, server.requestsCount.get());
+	}
+
+	@Test
+	void testIdempotentRequestIsRetriedOnDeadConnection() throws InterruptedException {
+		provider.setValidateAfterInactivity(60_000);
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+
+		server.closeConnections();
+		Thread.sleep(100);
+
+		final HttpResponse response = HttpRequest.get(server.url("/two")).withConnectionProvider(provider).send();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("GET /two", response.bodyRaw());
+		assertEquals(2, server.connectionsCount.get());
+	}
+
+	@Test
+	void testTimedOutRequestIsNotRetried() {
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+
+		server.responseDelay = 500;
+
+		final long start = System.currentTimeMillis();
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/two")).withConnectionProvider(provider).timeout(200).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+		assertTrue(System.currentTimeMillis() - start < 400);
+		assertEquals(1, server.connectionsCount.get());
+		assertEquals(2, server.requestsCount.get());
+	}
+
+	@Test
+	void testNonIdempotentRequestIsNotRetried() throws InterruptedException {
+		provider.setValidateAfterInactivity(60_000);
+
+		HttpRequest.get(server.url("/one")).withConnectionProvider(provider).send();
+
+		server.closeConnections();
+		Thread.sleep(100);
+
+		try {
+			final HttpResponse response = HttpRequest.post(server.url("/two")).withConnectionProvider(provider).send();
+			assertEquals(0, response.statusCode());
+		}
+		catch (final HttpException ignore) {
+			// dead connection may fail on write as well
+		}
+
+		assertEquals(1, server.connectionsCount.get());
+		assertEquals(1, server.requestsCount.get());
+		assertEquals(0, provider.getConnectionsCount());
+	}
+
+	@Test
+	void testPrewarmedConnectionsAreUsed() {
+		assertEquals(3, provider.prewarm(HttpRequest.get(server.url("/")), 3));
+		assertEquals(3, provider.getIdleConnectionsCount());
+
+		for (int i = 0; i < 3; i++) {
+			final HttpResponse response = HttpRequest.get(server.url("/hello")).withConnectionProvider(provider).send();
+			assertEquals("GET /hello", response.bodyRaw());
+		}
+
+		assertEquals(3, server.connectionsCount.get());
+		assertEquals(3, server.requestsCount.get());
+	}
+
+	@Test
+	void testPrewarmInParallelRespectsRouteLimit() {
+		provider.setMaxConnectionsPerRoute(4);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final int opened = provider.prewarm(HttpRequest.get(server.url("/")), 10, executor).join();
+
+			assertEquals(4, opened);
+			assertEquals(4, provider.getIdleConnectionsCount());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testInvalidPrewarmCount() {
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> provider.prewarm(HttpRequest.get(server.url("/")), -1));
+
+		assertEquals("Invalid prewarm count: -1", httpException.getMessage());
+	}
+
+	@Test
+	void testPrewarmFailure() throws IOException {
+		final int port = server.port();
+		server.stop();
+
+		assertThrows(HttpException.class, () -> provider.prewarm(HttpRequest.get("http://localhost:" + port), 2));
+		assertEquals(0, provider.getConnectionsCount());
+	}
+}
@@ -0,0 +1,164 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import jodd.http.net.SocketHttpConnectionProvider;
+import jodd.util.Base64;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProxyForwardingTest {
+
+	private ProxyTestServer proxy;
+	private KeepAliveTestServer server1;
+	private KeepAliveTestServer server2;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		proxy = new ProxyTestServer();
+		server1 = new KeepAliveTestServer();
+		server2 = new KeepAliveTestServer();
+	}
+
+	@AfterEach
+	void tearDown() {
+		proxy.stop();
+		server1.stop();
+		server2.stop();
+	}
+
+	@Test
+	void testHostsShareProxyConnection() {
+		final PooledSocketHttpConnectionProvider provider = new PooledSocketHttpConnectionProvider();
+		provider.useProxy(proxy.proxyInfo());
+		provider.setProxyForwarding(true);
+
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertEquals("GET /one", HttpRequest.get(server1.url("/one")).withConnectionProvider(provider).send().bodyRaw());
+				assertEquals("GET /two", HttpRequest.get(server2.url("/two")).withConnectionProvider(provider).send().bodyRaw());
+			}
+
+			assertEquals(1, proxy.connectionsCount.get());
+			assertEquals(0, proxy.connectCount.get());
+			assertEquals(1, provider.getConnectionsCount());
+			assertEquals("GET " + server1.url("/one") + " HTTP/1.1", proxy.forwardedRequests.get(0));
+			assertEquals("GET " + server2.url("/two") + " HTTP/1.1", proxy.forwardedRequests.get(1));
+		}
+		finally {
+			provider.close();
+		}
+	}
+
+	@Test
+	void testQueryAndBody() {
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider();
+		provider.useProxy(proxy.proxyInfo());
+		provider.setProxyForwarding(true);
+
+		final HttpResponse response = HttpRequest.post(server1.url("/form"))
+			.query("a", "1")
+			.body("hello")
+			.withConnectionProvider(provider)
+			.send();
+
+		assertEquals("POST /form?a=1", response.bodyRaw());
+		assertEquals("POST " + server1.url("/form?a=1") + " HTTP/1.1", proxy.forwardedRequests.get(0));
+	}
+
+	@Test
+	void testProxyCredentials() {
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider();
+		provider.useProxy(ProxyInfo.httpProxy("localhost", proxy.port(), "user", "secret"));
+		provider.setProxyForwarding(true);
+
+		HttpRequest.get(server1.url("/auth")).withConnectionProvider(provider).send();
+
+		assertEquals("Basic " + Base64.encodeToString("user:secret"), proxy.proxyAuthorizations.get(0));
+	}
+
+	@Test
+	void testRequestProxyCredentialsAreNotDuplicated() {
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider();
+		provider.useProxy(ProxyInfo.httpProxy("localhost", proxy.port(), "user", "secret"));
+		provider.setProxyForwarding(true);
+
+		HttpRequest.get(server1.url("/auth"))
+			.header("Proxy-Authorization", "Bearer token")
+			.withConnectionProvider(provider)
+			.send();
+
+		assertEquals(1, proxy.proxyAuthorizations.size());
+		assertEquals("Bearer token", proxy.proxyAuthorizations.get(0));
+	}
+
+	@Test
+	void testHttpsIsTunneled() throws Exception {
+		final KeepAliveTestServer httpsServer = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider().setSslProtocol("TLSv1.2");
+		provider.useProxy(proxy.proxyInfo());
+		provider.setProxyForwarding(true);
+
+		try {
+			final HttpResponse response = HttpRequest.get(httpsServer.url("/secure"))
+				.trustAllCerts(true)
+				.withConnectionProvider(provider)
+				.send();
+
+			assertEquals("GET /secure", response.bodyRaw());
+			assertEquals(1, proxy.connectCount.get());
+			assertEquals(0, proxy.forwardedRequests.size());
+		}
+		finally {
+			httpsServer.stop();
+		}
+	}
+
+	@Test
+	void testPipelineThroughProxy() {
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider();
+		provider.useProxy(proxy.proxyInfo());
+		provider.setProxyForwarding(true);
+
+		final List<HttpResponse> responses = new HttpPipeline()
+			.add(HttpRequest.get(server1.url("/a")).withConnectionProvider(provider))
+			.add(HttpRequest.get(server1.url("/b")).withConnectionProvider(provider))
+			.add(HttpRequest.get(server1.url("/c")).withConnectionProvider(provider))
+			.send();
+
+		assertEquals("GET /c", responses.get(2).bodyRaw());
+		assertEquals("GET " + server1.url("/b") + " HTTP/1.1", proxy.forwardedRequests.get(1));
+		assertEquals(1, proxy.connectionsCount.get());
+	}
+}
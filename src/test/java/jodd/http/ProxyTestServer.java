@@ -0,0 +1,265 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simple HTTP proxy that supports CONNECT tunnels. Tunnel bytes are
+ * copied in both directions until either side closes the connection.
+ * Requests with the absolute URI are forwarded to the target, one by one,
+ * over a new target connection; client connection is kept alive.
+ */
+public class ProxyTestServer {
+
+	private final ServerSocket serverSocket;
+	private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+	public final AtomicInteger connectionsCount = new AtomicInteger();
+	public final AtomicInteger connectCount = new AtomicInteger();
+	public final List<String> forwardedRequests = new CopyOnWriteArrayList<>();
+	public final List<String> proxyAuthorizations = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Response sent to CONNECT requests, without the final empty line.
+	 */
+	public volatile String connectResponse = "HTTP/1.1 200 Connection established\r\n";
+
+	public ProxyTestServer() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+		final Thread thread = new Thread(this::acceptLoop, "proxy-test-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	public ProxyInfo proxyInfo() {
+		return ProxyInfo.httpProxy("localhost", port(), null, null);
+	}
+
+	public void stop() {
+		close(serverSocket);
+		for (final Socket socket : sockets) {
+			close(socket);
+		}
+	}
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (final IOException ioex) {
+				return;
+			}
+			connectionsCount.incrementAndGet();
+			sockets.add(socket);
+
+			final Thread thread = new Thread(() -> serve(socket), "proxy-test-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try {
+			final InputStream in = socket.getInputStream();
+			final OutputStream out = socket.getOutputStream();
+
+			String requestLine = readLine(in);
+			List<String> headers = readHeaders(in);
+
+			while (requestLine != null && !requestLine.startsWith("CONNECT ")) {
+				forward(requestLine, headers, in, out);
+
+				requestLine = readLine(in);
+				headers = readHeaders(in);
+			}
+			if (requestLine == null) {
+				close(socket);
+				return;
+			}
+
+			final String[] tokens = requestLine.split(" ");
+			connectCount.incrementAndGet();
+
+			final String response = connectResponse;
+			out.write((response + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			if (!response.startsWith("HTTP/1.1 200")) {
+				close(socket);
+				return;
+			}
+
+			final int colon = tokens[1].lastIndexOf(':');
+			final Socket target = new Socket(tokens[1].substring(0, colon), Integer.parseInt(tokens[1].substring(colon + 1)));
+			sockets.add(target);
+
+			final Thread thread = new Thread(() -> copy(target, socket), "proxy-test-tunnel");
+			thread.setDaemon(true);
+			thread.start();
+
+			copy(socket, target);
+		}
+		catch (final IOException ignore) {
+			close(socket);
+		}
+	}
+
+	/**
+	 * Forwards single request in the origin form to the target and copies the response back.
+	 */
+	private void forward(final String requestLine, final List<String> headers, final InputStream in, final OutputStream out) throws IOException {
+		forwardedRequests.add(requestLine);
+
+		final String[] tokens = requestLine.split(" ");
+		final URI uri = URI.create(tokens[1]);
+		final String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + '?' + uri.getRawQuery();
+
+		final StringBuilder request = new StringBuilder();
+		request.append(tokens[0]).append(' ').append(path).append(' ').append(tokens[2]).append("\r\n");
+
+		int contentLength = 0;
+		for (final String header : headers) {
+			final String lowerHeader = header.toLowerCase();
+			if (lowerHeader.startsWith("proxy-authorization:")) {
+				proxyAuthorizations.add(header.substring(20).trim());
+				continue;
+			}
+			if (lowerHeader.startsWith("content-length:")) {
+				contentLength = Integer.parseInt(header.substring(15).trim());
+			}
+			request.append(header).append("\r\n");
+		}
+		request.append("\r\n");
+
+		try (Socket target = new Socket(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort())) {
+			final OutputStream targetOut = target.getOutputStream();
+			targetOut.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+			for (int i = 0; i < contentLength; i++) {
+				targetOut.write(in.read());
+			}
+			targetOut.flush();
+
+			final InputStream targetIn = target.getInputStream();
+			final StringBuilder response = new StringBuilder(readLine(targetIn)).append("\r\n");
+			int responseLength = 0;
+			for (final String header : readHeaders(targetIn)) {
+				if (header.toLowerCase().startsWith("content-length:")) {
+					responseLength = Integer.parseInt(header.substring(15).trim());
+				}
+				if (!header.toLowerCase().startsWith("connection:")) {
+					response.append(header).append("\r\n");
+				}
+			}
+			response.append("Connection: keep-alive\r\n\r\n");
+
+			out.write(response.toString().getBytes(StandardCharsets.ISO_8859_1));
+			if (!tokens[0].equals("HEAD")) {
+				for (int i = 0; i < responseLength; i++) {
+					out.write(targetIn.read());
+				}
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Copies bytes until the end of input, then closes both sockets.
+	 */
+	private static void copy(final Socket from, final Socket to) {
+		try {
+			final InputStream in = from.getInputStream();
+			final OutputStream out = to.getOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				out.flush();
+			}
+		}
+		catch (final IOException ignore) {
+		}
+		finally {
+			close(from);
+			close(to);
+		}
+	}
+
+	private static List<String> readHeaders(final InputStream in) throws IOException {
+		final List<String> headers = new ArrayList<>();
+		while (true) {
+			final String line = readLine(in);
+			if (line == null || line.isEmpty()) {
+				return headers;
+			}
+			headers.add(line);
+		}
+	}
+
+	private static String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			final int c = in.read();
+			if (c == -1) {
+				return line.size() == 0 ? null : line.toString("ISO-8859-1");
+			}
+			if (c == '\n') {
+				break;
+			}
+			if (c != '\r') {
+				line.write(c);
+			}
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	private static void close(final Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+}
@@ -0,0 +1,146 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.PooledSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyTunnelTest {
+
+	private ProxyTestServer proxy;
+	private PooledSocketHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		proxy = new ProxyTestServer();
+		provider = new PooledSocketHttpConnectionProvider();
+		provider.useProxy(proxy.proxyInfo());
+	}
+
+	@AfterEach
+	void tearDown() {
+		provider.close();
+		proxy.stop();
+	}
+
+	@Test
+	void testTunnelIsReused() throws IOException {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			for (int i = 0; i < 5; i++) {
+				final HttpResponse response = HttpRequest.get(server.url("/tunnel" + i)).withConnectionProvider(provider).send();
+				assertEquals("GET /tunnel" + i, response.bodyRaw());
+			}
+
+			assertEquals(1, proxy.connectCount.get());
+			assertEquals(1, server.connectionsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testSecureTunnelIsReused() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		provider.setSslProtocol("TLSv1.2");
+		try {
+			for (int i = 0; i < 5; i++) {
+				final HttpResponse response = HttpRequest.get(server.url("/secure" + i))
+					.trustAllCerts(true)
+					.withConnectionProvider(provider)
+					.send();
+				assertEquals("GET /secure" + i, response.bodyRaw());
+			}
+
+			assertEquals(1, proxy.connectCount.get());
+			assertEquals(1, server.connectionsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testTunnelPerRoute() throws IOException {
+		final KeepAliveTestServer server1 = new KeepAliveTestServer();
+		final KeepAliveTestServer server2 = new KeepAliveTestServer();
+		try {
+			for (int i = 0; i < 3; i++) {
+				HttpRequest.get(server1.url("/one")).withConnectionProvider(provider).send();
+				HttpRequest.get(server2.url("/two")).withConnectionProvider(provider).send();
+			}
+
+			assertEquals(2, proxy.connectCount.get());
+		}
+		finally {
+			server1.stop();
+			server2.stop();
+		}
+	}
+
+	@Test
+	void testLongProxyResponse() throws IOException {
+		final StringBuilder response = new StringBuilder("HTTP/1.1 200 Connection established\r\n");
+		for (int i = 0; i < 50; i++) {
+			response.append("X-Proxy-Header-").append(i).append(": some value of the proxy header\r\n");
+		}
+		proxy.connectResponse = response.toString();
+
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			assertEquals("GET /long", HttpRequest.get(server.url("/long")).withConnectionProvider(provider).send().bodyRaw());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testRejectedConnect() throws IOException {
+		proxy.connectResponse = "HTTP/1.1 407 Proxy Authentication Required\r\nContent-Length: 0\r\n";
+
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final HttpException httpException = assertThrows(HttpException.class, () ->
+				HttpRequest.get(server.url("/rejected")).withConnectionProvider(provider).send());
+
+			assertTrue(httpException.getMessage().contains("407"));
+			assertEquals(0, server.connectionsCount.get());
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+	private KeepAliveTestServer server;
+	private Socket dead;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = new KeepAliveTestServer();
+
+		// bound, but not listening, so connections are refused
+		dead = new Socket();
+		dead.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		dead.close();
+		server.stop();
+	}
+
+	private String deadUrl() {
+		return "http://localhost:" + dead.getLocalPort() + "/down";
+	}
+
+	@Test
+	void testBackoff() {
+		final RetryPolicy retryPolicy = new RetryPolicy().backoff(100, 300).jitter(false);
+
+		assertEquals(100, retryPolicy.backoff(1));
+		assertEquals(200, retryPolicy.backoff(2));
+		assertEquals(300, retryPolicy.backoff(3));
+
+		retryPolicy.jitter(true);
+		for (int i = 0; i < 10; i++) {
+			final long backoff = retryPolicy.backoff(2);
+			assertTrue(backoff >= 0 && backoff <= 200);
+		}
+	}
+
+	@Test
+	void testConnectFailureIsRetriedForAnyMethod() {
+		final RetryPolicy retryPolicy = new RetryPolicy().maxAttempts(3).backoff(1, 1);
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.post(deadUrl()).retryPolicy(retryPolicy).send());
+
+		assertTrue(httpException.getCause() instanceof ConnectException);
+		assertEquals(2, retryPolicy.retriesCount());
+	}
+
+	@Test
+	void testOnlyIdempotentRequestIsRetriedAfterSend() {
+		final RetryPolicy retryPolicy = new RetryPolicy().maxAttempts(3).backoff(1, 1);
+		server.responseDelay = 500;
+
+		final HttpException httpException = assertThrows(HttpException.class,
+			() -> HttpRequest.post(server.url("/post")).timeout(100).retryPolicy(retryPolicy).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+		assertEquals(0, retryPolicy.retriesCount());
+		assertEquals(1, server.requestsCount.get());
+
+		assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/get")).timeout(100).retryPolicy(retryPolicy).send());
+
+		assertEquals(2, retryPolicy.retriesCount());
+		assertEquals(4, server.requestsCount.get());
+
+		retryPolicy.retryIdempotent(false);
+
+		assertThrows(HttpException.class,
+			() -> HttpRequest.get(server.url("/get")).timeout(100).retryPolicy(retryPolicy).send());
+
+		assertEquals(2, retryPolicy.retriesCount());
+	}
+
+	@Test
+	void testRetrySucceeds() {
+		final RetryPolicy retryPolicy = new RetryPolicy().backoff(300, 300).jitter(false);
+		server.responseDelay = 500;
+
+		// server recovers while the first request is waiting for the response
+		final Thread recovery = new Thread(() -> {
+			try {
+				while (server.requestsCount.get() == 0) {
+					Thread.sleep(10);
+				}
+				Thread.sleep(50);
+			}
+			catch (final InterruptedException ignore) {
+			}
+			server.responseDelay = 0;
+		});
+		recovery.start();
+
+		final HttpResponse response = HttpRequest.get(server.url("/flaky")).timeout(100).retryPolicy(retryPolicy).send();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("GET /flaky", response.bodyRaw());
+		assertEquals(1, retryPolicy.retriesCount());
+	}
+
+	@Test
+	void testBudgetLimitsRetries() {
+		final RetryPolicy retryPolicy = new RetryPolicy().maxAttempts(3).backoff(1, 1).budget(0, 1);
+
+		assertThrows(HttpException.class, () -> HttpRequest.get(deadUrl()).retryPolicy(retryPolicy).send());
+		assertThrows(HttpException.class, () -> HttpRequest.get(deadUrl()).retryPolicy(retryPolicy).send());
+
+		assertEquals(1, retryPolicy.retriesCount());
+		assertEquals(2, retryPolicy.budgetExhaustedCount());
+	}
+}
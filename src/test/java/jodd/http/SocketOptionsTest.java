@@ -0,0 +1,165 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.HappyEyeballsConnector;
+import jodd.http.net.SocketHttpConnection;
+import jodd.http.net.SocketHttpConnectionProvider;
+import jodd.http.net.SocketOptions;
+import org.junit.jupiter.api.Test;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SocketOptionsTest {
+
+	@Test
+	void testTcpNoDelayIsEnabledByDefault() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final HttpRequest request = HttpRequest.get(server.url("/"))
+				.withConnectionProvider(new SocketHttpConnectionProvider())
+				.open();
+
+			final Socket socket = ((SocketHttpConnection) request.connection()).getSocket();
+
+			assertTrue(socket.getTcpNoDelay());
+
+			request.connection().close();
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testSocketOptionsAreApplied() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			assertSocketOptions(HttpRequest.get(server.url("/")));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testSocketOptionsAreAppliedOnSslSocket() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+		try {
+			assertSocketOptions(HttpRequest.get(server.url("/")).trustAllCerts(true));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testBufferSizesAreSetBeforeConnect() throws Exception {
+		final AtomicInteger receiveBufferSize = new AtomicInteger();
+
+		final SocketFactory socketFactory = new SocketFactory() {
+			@Override
+			public Socket createSocket() {
+				return new Socket() {
+					@Override
+					public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+						receiveBufferSize.set(getReceiveBufferSize());
+						super.connect(endpoint, timeout);
+					}
+				};
+			}
+
+			@Override
+			public Socket createSocket(final String host, final int port) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Socket createSocket(final InetAddress host, final int port) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		final KeepAliveTestServer server = new KeepAliveTestServer();
+		try {
+			final HappyEyeballsConnector connector = new HappyEyeballsConnector(socketFactory,
+				HappyEyeballsConnector.DEFAULT_ATTEMPT_DELAY, new SocketOptions().receiveBufferSize(128 * 1024));
+
+			try (Socket socket = connector.connect(new InetAddress[] {InetAddress.getLoopbackAddress()}, server.port(), 1000)) {
+				assertTrue(socket.isConnected());
+				assertTrue(receiveBufferSize.get() >= 128 * 1024);
+			}
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	private void assertSocketOptions(final HttpRequest request) throws Exception {
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider()
+			.setSslProtocol("TLSv1.2")
+			.setSocketOptions(new SocketOptions()
+				.tcpNoDelay(false)
+				.keepAlive(true)
+				.soLinger(3)
+				.sendBufferSize(32 * 1024));
+
+		request.withConnectionProvider(provider).open();
+
+		final Socket socket = ((SocketHttpConnection) request.connection()).getSocket();
+
+		try {
+			assertFalse(socket.getTcpNoDelay());
+			assertTrue(socket.getKeepAlive());
+			assertEquals(3, socket.getSoLinger());
+			assertTrue(socket.getSendBufferSize() >= 32 * 1024);
+
+			assertEquals(200, request.send().statusCode());
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.SocketHttpConnectionProvider;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TlsSessionResumptionTest {
+
+	@Test
+	void testSessionIsResumedWithTls12() throws Exception {
+		assertSessionIsResumed("TLSv1.2");
+	}
+
+	@Test
+	void testSessionIsResumedWithTls13() throws Exception {
+		assertSessionIsResumed("TLSv1.3");
+	}
+
+	private void assertSessionIsResumed(final String protocol) throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer(KeepAliveTestServer.createSslContext(protocol));
+
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider()
+			.setSslProtocol(protocol)
+			.setSslSessionCacheSize(100)
+			.setSslSessionTimeout(60);
+
+		try {
+			for (int i = 0; i < 3; i++) {
+				final HttpResponse response = HttpRequest.get(server.url("/tls" + i))
+					.trustAllCerts(true)
+					.withConnectionProvider(provider)
+					.send();
+
+				assertEquals("GET /tls" + i, response.bodyRaw());
+			}
+
+			assertEquals(3, server.connectionsCount.get());
+			assertEquals(1, provider.getFullHandshakesCount());
+			assertEquals(2, provider.getResumedHandshakesCount());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testExpiredSessionIsNotResumed() throws Exception {
+		final KeepAliveTestServer server = new KeepAliveTestServer(KeepAliveTestServer.createSslContext("TLSv1.2"));
+
+		final SocketHttpConnectionProvider provider = new SocketHttpConnectionProvider()
+			.setSslProtocol("TLSv1.2")
+			.setSslSessionCacheSize(1)
+			.setSslSessionTimeout(1);
+
+		try {
+			HttpRequest.get(server.url("/one")).trustAllCerts(true).withConnectionProvider(provider).send();
+
+			Thread.sleep(1100);
+
+			HttpRequest.get(server.url("/two")).trustAllCerts(true).withConnectionProvider(provider).send();
+
+			assertEquals(2, provider.getFullHandshakesCount());
+			assertEquals(0, provider.getResumedHandshakesCount());
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
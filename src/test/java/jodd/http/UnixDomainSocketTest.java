@@ -0,0 +1,127 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import jodd.http.net.UnixDomainSocketHttpConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UnixDomainSocketTest {
+
+	private UnixDomainSocketTestServer server;
+	private UnixDomainSocketHttpConnectionProvider provider;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		assumeTrue(UnixDomainSocketHttpConnectionProvider.isSupported());
+
+		server = new UnixDomainSocketTestServer();
+		provider = new UnixDomainSocketHttpConnectionProvider(server.socketPath());
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testGet() {
+		final HttpResponse response = HttpRequest.get("http://sidecar/hello?a=1").withConnectionProvider(provider).send();
+
+		assertEquals(200, response.statusCode());
+		assertEquals("GET /hello?a=1", response.bodyRaw());
+		assertEquals(1, server.connectionsCount.get());
+	}
+
+	@Test
+	void testPost() {
+		final HttpResponse response = HttpRequest.post("http://sidecar/upload")
+			.body("hello sidecar")
+			.withConnectionProvider(provider)
+			.send();
+
+		assertEquals("POST /upload 13", response.bodyRaw());
+	}
+
+	@Test
+	void testKeepAlive() {
+		final HttpRequest request = HttpRequest.get("http://sidecar/one").connectionKeepAlive(true);
+		HttpResponse response = request.withConnectionProvider(provider).send();
+		assertEquals("GET /one", response.bodyRaw());
+
+		for (int i = 0; i < 3; i++) {
+			response = HttpRequest.get("http://sidecar/next" + i).keepAlive(response, true).send();
+			assertEquals("GET /next" + i, response.bodyRaw());
+		}
+
+		assertEquals(1, server.connectionsCount.get());
+		assertEquals(4, server.requestsCount.get());
+	}
+
+	@Test
+	void testKeepAliveMaxIsHonored() {
+		server.extraHeaders = "Keep-Alive: timeout=5, max=1\r\n";
+		HttpResponse response = HttpRequest.get("http://sidecar/one").connectionKeepAlive(true).withConnectionProvider(provider).send();
+		assertTrue(response.getHttpRequest().connection().isReusable());
+
+		server.extraHeaders = "Keep-Alive: timeout=5, max=0\r\n";
+		response = HttpRequest.get("http://sidecar/two").keepAlive(response, true).send();
+		assertFalse(response.getHttpRequest().connection().isReusable());
+
+		// server allows no more requests, new channel is connected
+		response = HttpRequest.get("http://sidecar/three").keepAlive(response, true).send();
+		assertEquals("GET /three", response.bodyRaw());
+		assertEquals(2, server.connectionsCount.get());
+
+		response.close();
+	}
+
+	@Test
+	void testTimeout() {
+		final HttpException httpException = assertThrows(HttpException.class, () ->
+			HttpRequest.get("http://sidecar/sleep/1000").timeout(100).withConnectionProvider(provider).send());
+
+		assertTrue(httpException.getCause() instanceof SocketTimeoutException);
+	}
+
+	@Test
+	void testHttpsIsNotSupported() {
+		assertThrows(HttpException.class, () ->
+			HttpRequest.get("https://sidecar/secure").withConnectionProvider(provider).send());
+	}
+}
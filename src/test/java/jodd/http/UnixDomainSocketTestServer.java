@@ -0,0 +1,190 @@
+// Copyright (c) 2003-present, Jodd Team (http://jodd.org)
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice,
+// this list of conditions and the following disclaimer.
+//
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+
+package jodd.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simple HTTP/1.1 server on the Unix domain socket that keeps connections
+ * open between the requests. Responds with the request method, path and
+ * the body size, if any. The "/sleep/N" path responds after N milliseconds.
+ * Requires Java 16; classes are looked up at runtime.
+ */
+public class UnixDomainSocketTestServer {
+
+	private final Path directory;
+	private final Path socketPath;
+	private final ServerSocketChannel serverChannel;
+
+	public final AtomicInteger connectionsCount = new AtomicInteger();
+	public final AtomicInteger requestsCount = new AtomicInteger();
+
+	/**
+	 * Additional raw header lines added to each response.
+	 */
+	public volatile String extraHeaders = "";
+
+	public UnixDomainSocketTestServer() throws Exception {
+		directory = Files.createTempDirectory("jodd-http");
+		socketPath = directory.resolve("test.sock");
+
+		serverChannel = (ServerSocketChannel) ServerSocketChannel.class
+			.getMethod("open", ProtocolFamily.class)
+			.invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+
+		final SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+			.getMethod("of", Path.class)
+			.invoke(null, socketPath);
+		serverChannel.bind(address);
+
+		final Thread thread = new Thread(this::acceptLoop, "unix-domain-socket-test-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public Path socketPath() {
+		return socketPath;
+	}
+
+	public void stop() throws IOException {
+		close(serverChannel);
+		Files.deleteIfExists(socketPath);
+		Files.deleteIfExists(directory);
+	}
+
+	private void acceptLoop() {
+		while (serverChannel.isOpen()) {
+			final SocketChannel channel;
+			try {
+				channel = serverChannel.accept();
+			}
+			catch (final IOException ioex) {
+				return;
+			}
+			connectionsCount.incrementAndGet();
+
+			final Thread thread = new Thread(() -> serve(channel), "unix-domain-socket-test-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void serve(final SocketChannel channel) {
+		try {
+			final InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+			final OutputStream out = Channels.newOutputStream(channel);
+
+			while (true) {
+				final String requestLine = readLine(in);
+				if (requestLine == null || requestLine.isEmpty()) {
+					break;
+				}
+
+				int contentLength = 0;
+				while (true) {
+					final String line = readLine(in);
+					if (line == null || line.isEmpty()) {
+						break;
+					}
+					if (line.toLowerCase().startsWith("content-length:")) {
+						contentLength = Integer.parseInt(line.substring(15).trim());
+					}
+				}
+				for (int i = 0; i < contentLength; i++) {
+					in.read();
+				}
+				requestsCount.incrementAndGet();
+
+				final String[] tokens = requestLine.split(" ");
+				if (tokens[1].startsWith("/sleep/")) {
+					Thread.sleep(Long.parseLong(tokens[1].substring(7)));
+				}
+
+				String body = tokens[0] + " " + tokens[1];
+				if (contentLength > 0) {
+					body += " " + contentLength;
+				}
+
+				final String response =
+					"HTTP/1.1 200 OK\r\n" +
+					"Content-Type: text/plain\r\n" +
+					"Content-Length: " + body.length() + "\r\n" +
+					"Connection: keep-alive\r\n" +
+					extraHeaders +
+					"\r\n" +
+					body;
+
+				out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+			}
+		}
+		catch (final IOException | InterruptedException ignore) {
+		}
+		finally {
+			close(channel);
+		}
+	}
+
+	private String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			final int c = in.read();
+			if (c == -1) {
+				return line.size() == 0 ? null : line.toString("ISO-8859-1");
+			}
+			if (c == '\n') {
+				break;
+			}
+			if (c != '\r') {
+				line.write(c);
+			}
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	private static void close(final Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (final IOException ignore) {
+		}
+	}
+}